@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster;
+
+import java.util.List;
+
+import com.weibo.api.motan.core.extension.Scope;
+import com.weibo.api.motan.core.extension.Spi;
+
+/**
+ * 
+ * 合并scatter-gather调用中各个节点返回的结果。
+ *
+ */
+@Spi(scope = Scope.SINGLETON)
+public interface Merger {
+
+    /**
+     * @param results 各个节点返回的非null结果，至少有一个
+     */
+    Object merge(List<Object> results);
+
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.Future;
+import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.MethodSettings;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+
+/**
+ * 
+ * 同时向多个referer发起异步请求的ha strategy基类（hedging、forking）。
+ * 
+ * <pre>
+ * 		1) 调用方本身是异步调用，或者该方法不需要并行请求时，只请求第一个referer；
+ * 		2) 并行请求期间强制referer走异步调用，结束后恢复调用方的设置；
+ * 		3) 拿到结果后只cancel落败的请求；整体超时或全部失败时不cancel未返回的请求，由请求自身超时，
+ * 		   避免慢节点的超时被当作主动取消而不计入熔断统计。
+ * </pre>
+ *
+ */
+public abstract class AbstractParallelHaStrategy<T> extends AbstractHaStrategy<T> {
+
+    protected ThreadLocal<List<Referer<T>>> referersHolder = new ThreadLocal<List<Referer<T>>>() {
+        @Override
+        protected java.util.List<com.weibo.api.motan.rpc.Referer<T>> initialValue() {
+            return new ArrayList<Referer<T>>();
+        }
+    };
+
+    @Override
+    public Response call(Request request, LoadBalance<T> loadBalance) {
+        List<Referer<T>> referers = selectReferers(request, loadBalance);
+        if (referers.isEmpty()) {
+            throw new MotanServiceException(String.format("%s No referers for request:%s, loadbalance:%s", getClass().getSimpleName(),
+                    request, loadBalance));
+        }
+
+        MethodSettings methodSettings = referers.get(0).getUrl().getMethodSettings(request.getMethodName(), request.getParamtersDesc());
+        Object async = RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX);
+        if (Boolean.TRUE.equals(async) || !isParallel(referers, methodSettings)) {
+            request.setRetries(0);
+            return referers.get(0).call(request);
+        }
+
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        try {
+            return parallelCall(request, referers, methodSettings);
+        } finally {
+            RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, async);
+        }
+    }
+
+    /**
+     * 该方法是否需要并行请求
+     */
+    protected abstract boolean isParallel(List<Referer<T>> referers, MethodSettings methodSettings);
+
+    /**
+     * 并行请求，此时referer返回的是ResponseFuture
+     */
+    protected abstract Response parallelCall(Request request, List<Referer<T>> referers, MethodSettings methodSettings);
+
+    protected void watch(final ResponseFuture future, final BlockingQueue<ResponseFuture> completed, List<ResponseFuture> pending) {
+        pending.add(future);
+        future.addListener(new FutureListener() {
+            @Override
+            public void operationComplete(Future f) throws Exception {
+                completed.offer(future);
+            }
+        });
+    }
+
+    /**
+     * 已经拿到结果时cancel落败的请求
+     */
+    protected void cancelLosers(List<ResponseFuture> losers) {
+        for (ResponseFuture future : losers) {
+            future.cancel();
+        }
+    }
+
+    /**
+     * 没有拿到结果：抛出最后一个失败请求的异常，没有失败的请求时抛出超时异常。未返回的请求由其自身超时，不在此处cancel。
+     */
+    protected RuntimeException failure(Request request, Exception lastException, long start) {
+        if (lastException instanceof RuntimeException) {
+            return (RuntimeException) lastException;
+        }
+        return new MotanServiceException(getClass().getSimpleName() + " request timeout: " + MotanFrameworkUtil.toString(request)
+                + " cost=" + (System.currentTimeMillis() - start), MotanErrorMsgConstant.SERVICE_TIMEOUT);
+    }
+
+    protected List<Referer<T>> selectReferers(Request request, LoadBalance<T> loadBalance) {
+        List<Referer<T>> referers = referersHolder.get();
+        referers.clear();
+        loadBalance.selectToHolder(request, referers);
+        return referers;
+    }
+}
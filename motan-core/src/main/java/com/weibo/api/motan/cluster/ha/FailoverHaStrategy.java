@@ -21,15 +21,18 @@ import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.core.extension.SpiMeta;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.MethodSettings;
 import com.weibo.api.motan.rpc.Referer;
 import com.weibo.api.motan.rpc.Request;
 import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
 import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.ExceptionUtil;
 import com.weibo.api.motan.util.LoggerUtil;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Failover ha strategy.
@@ -40,6 +43,8 @@ import java.util.List;
 @SpiMeta(name = "failover")
 public class FailoverHaStrategy<T> extends AbstractHaStrategy<T> {
 
+    private static final int MAX_RETRY_BURST = 10;
+
     protected ThreadLocal<List<Referer<T>>> referersHolder = new ThreadLocal<List<Referer<T>>>() {
         @Override
         protected java.util.List<com.weibo.api.motan.rpc.Referer<T>> initialValue() {
@@ -47,23 +52,46 @@ public class FailoverHaStrategy<T> extends AbstractHaStrategy<T> {
         }
     };
 
+    // 整个cluster共享的重试预算，避免故障时重试把请求量成倍放大
+    private volatile RequestBudget retryBudget;
+
+    @Override
+    public void setUrl(URL url) {
+        super.setUrl(url);
+        int ratio = url.getIntParameter(URLParamType.retryRatio.getName(), URLParamType.retryRatio.getIntValue());
+        if (ratio < 0) {
+            retryBudget = null;
+        } else if (retryBudget == null || retryBudget.getRatio() != ratio) {
+            retryBudget = new RequestBudget(ratio, MAX_RETRY_BURST);
+        }
+    }
+
     @Override
     public Response call(Request request, LoadBalance<T> loadBalance) {
+        long startTime = System.currentTimeMillis();
+        RequestBudget budget = retryBudget;
+        if (budget != null) {
+            budget.deposit();
+        }
 
         List<Referer<T>> referers = selectReferers(request, loadBalance);
         if (referers.isEmpty()) {
             throw new MotanServiceException(String.format("FailoverHaStrategy No referers for request:%s, loadbalance:%s", request,
                     loadBalance));
         }
-        URL refUrl = referers.get(0).getUrl();
         // 先使用method的配置
-        int tryCount =
-                refUrl.getMethodParameter(request.getMethodName(), request.getParamtersDesc(), URLParamType.retries.getName(),
-                        URLParamType.retries.getIntValue());
+        MethodSettings methodSettings = referers.get(0).getUrl().getMethodSettings(request.getMethodName(), request.getParamtersDesc());
+        int tryCount = methodSettings.getRetries();
         // 如果有问题，则设置为不重试
         if (tryCount < 0) {
             tryCount = 0;
         }
+        int timeout = 0, backoff = 0, minRemaining = 0;
+        if (tryCount > 0) {
+            timeout = methodSettings.getRequestTimeout();
+            backoff = methodSettings.getRetryBackoff();
+            minRemaining = methodSettings.getRetryMinRemainingTime();
+        }
 
         for (int i = 0; i <= tryCount; i++) {
             Referer<T> refer = referers.get(i % referers.size());
@@ -78,12 +106,43 @@ public class FailoverHaStrategy<T> extends AbstractHaStrategy<T> {
                     throw e;
                 }
                 LoggerUtil.warn(String.format("FailoverHaStrategy Call false for request:%s error=%s", request, e.getMessage()));
+
+                // 有上游传递的deadline时，取两者中更早的一个
+                long remaining = Math.min(timeout - (System.currentTimeMillis() - startTime),
+                        RpcContext.getContext().getRemainingTime());
+                if (minRemaining >= 0 && remaining <= minRemaining) {
+                    LoggerUtil.warn(String.format("FailoverHaStrategy no retry for request:%s, remaining time:%dms", request, remaining));
+                    throw e;
+                }
+                if (budget != null && !budget.tryAcquire()) {
+                    LoggerUtil.warn(String.format("FailoverHaStrategy no retry for request:%s, retry budget exhausted", request));
+                    throw e;
+                }
+                if (backoff > 0) {
+                    backoff(backoff, i, minRemaining >= 0 ? remaining - minRemaining : Long.MAX_VALUE);
+                }
             }
         }
 
         throw new MotanFrameworkException("FailoverHaStrategy.call should not come here!");
     }
 
+    /**
+     * full jitter退避：在 [0, base * 2^retries) 中随机等待，且不超过剩余时间
+     */
+    private void backoff(int base, int retries, long maxWait) {
+        long bound = (long) base << Math.min(retries, 10);
+        long wait = Math.min(ThreadLocalRandom.current().nextInt((int) Math.min(bound, Integer.MAX_VALUE)), maxWait);
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     protected List<Referer<T>> selectReferers(Request request, LoadBalance<T> loadBalance) {
         List<Referer<T>> referers = referersHolder.get();
         referers.clear();
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.MethodSettings;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.util.ExceptionUtil;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 
+ * Forking ha strategy.
+ * 
+ * <pre>
+ * 		1) 同时异步请求loadbalance选出的前 forks 个referer，返回第一个成功的结果（正常结果或业务异常）；
+ * 		2) forks 为方法级配置，小于2时该方法只请求一个referer；
+ * 		3) forkCancel 为true时，拿到结果后cancel其他未返回的请求；
+ * 		4) 会成倍增加请求量，只适用于对延迟敏感的幂等（只读）方法；调用方本身是异步调用时不做并行请求。
+ * </pre>
+ *
+ */
+@SpiMeta(name = "forking")
+public class ForkingHaStrategy<T> extends AbstractParallelHaStrategy<T> {
+
+    @Override
+    protected boolean isParallel(List<Referer<T>> referers, MethodSettings methodSettings) {
+        return Math.min(methodSettings.getForks(), referers.size()) >= 2;
+    }
+
+    @Override
+    protected Response parallelCall(Request request, List<Referer<T>> referers, MethodSettings methodSettings) {
+        int forks = Math.min(methodSettings.getForks(), referers.size());
+        int timeout = methodSettings.getRequestTimeout();
+        boolean cancel = methodSettings.isForkCancel();
+        long start = System.currentTimeMillis();
+        BlockingQueue<ResponseFuture> completed = new LinkedBlockingQueue<ResponseFuture>();
+        List<ResponseFuture> pending = new ArrayList<ResponseFuture>(forks);
+        Exception lastException = null;
+
+        for (int i = 0; i < forks; i++) {
+            Response response;
+            try {
+                request.setRetries(i);
+                response = referers.get(i).call(request);
+            } catch (RuntimeException e) {
+                if (ExceptionUtil.isBizException(e)) {
+                    cancel(pending, cancel);
+                    throw e;
+                }
+                LoggerUtil.warn(String.format("ForkingHaStrategy call false for request:%s error=%s", request, e.getMessage()));
+                lastException = e;
+                continue;
+            }
+            if (response instanceof ResponseFuture) {
+                watch((ResponseFuture) response, completed, pending);
+            } else {
+                cancel(pending, cancel);
+                return response;
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            long remain = timeout - (System.currentTimeMillis() - start);
+            if (remain <= 0) {
+                break;
+            }
+            ResponseFuture done = null;
+            try {
+                done = completed.poll(remain, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (done == null) {
+                continue;
+            }
+            pending.remove(done);
+            if (done.isSuccess() || ExceptionUtil.isBizException(done.getException())) {
+                cancel(pending, cancel);
+                return new DefaultResponse(done);
+            }
+            lastException = done.getException();
+        }
+
+        throw failure(request, lastException, start);
+    }
+
+    private void cancel(List<ResponseFuture> losers, boolean cancel) {
+        if (cancel) {
+            cancelLosers(losers);
+        }
+    }
+}
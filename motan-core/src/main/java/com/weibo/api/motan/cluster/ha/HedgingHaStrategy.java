@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.MethodSettings;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.ExceptionUtil;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+
+/**
+ * 
+ * Hedged request ha strategy.
+ * 
+ * <pre>
+ * 		1) 先异步请求第一个referer，若在 hedgeDelay 内没有返回（或已经失败），再向另一个referer发起一次对冲请求；
+ * 		2) 取先返回的结果（正常结果或业务异常），另一个请求被cancel；
+ * 		3) hedgeDelay 为方法级配置，0 表示使用该方法最近调用耗时的p95，小于0表示该方法不做对冲；
+ * 		4) 对冲请求受 hedgeRatio（百分比）的令牌桶预算限制，避免慢节点或故障时请求量翻倍；
+ * 		5) 只适用于幂等（只读）方法；调用方本身是异步调用时不做对冲。
+ * </pre>
+ *
+ */
+@SpiMeta(name = "hedge")
+public class HedgingHaStrategy<T> extends AbstractParallelHaStrategy<T> {
+
+    // 至少要有这么多耗时样本才使用p95，否则使用requestTimeout的一半
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final int MAX_HEDGE_BURST = 10;
+
+    private volatile RequestBudget hedgeBudget;
+
+    private ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+
+    @Override
+    public void setUrl(URL url) {
+        super.setUrl(url);
+        int ratio = url.getIntParameter(URLParamType.hedgeRatio.getName(), URLParamType.hedgeRatio.getIntValue());
+        if (hedgeBudget == null || hedgeBudget.getRatio() != ratio) {
+            hedgeBudget = new RequestBudget(ratio, MAX_HEDGE_BURST);
+        }
+    }
+
+    @Override
+    public Response call(Request request, LoadBalance<T> loadBalance) {
+        RequestBudget budget = hedgeBudget;
+        if (budget != null) {
+            budget.deposit();
+        }
+        return super.call(request, loadBalance);
+    }
+
+    @Override
+    protected boolean isParallel(List<Referer<T>> referers, MethodSettings methodSettings) {
+        return referers.size() >= 2 && methodSettings.getHedgeDelay() >= 0;
+    }
+
+    @Override
+    protected Response parallelCall(Request request, List<Referer<T>> referers, MethodSettings methodSettings) {
+        int hedgeDelay = methodSettings.getHedgeDelay();
+        int timeout = methodSettings.getRequestTimeout();
+        LatencyWindow latency = getLatencyWindow(request);
+        if (hedgeDelay == 0) {
+            hedgeDelay = latency.p95(timeout / 2);
+        }
+        return hedgeCall(request, referers, hedgeDelay, timeout, hedgeBudget, latency);
+    }
+
+    private Response hedgeCall(Request request, List<Referer<T>> referers, int hedgeDelay, int timeout, RequestBudget budget,
+            LatencyWindow latency) {
+        long start = System.currentTimeMillis();
+        BlockingQueue<ResponseFuture> completed = new LinkedBlockingQueue<ResponseFuture>();
+        List<ResponseFuture> pending = new ArrayList<ResponseFuture>(2);
+
+        request.setRetries(0);
+        Response first = referers.get(0).call(request);
+        if (!(first instanceof ResponseFuture)) {
+            return first;
+        }
+        watch((ResponseFuture) first, completed, pending);
+
+        boolean hedged = false;
+        Exception lastException = null;
+        long waitTime = hedgeDelay;
+        while (!pending.isEmpty() || !hedged) {
+            ResponseFuture done = null;
+            try {
+                done = waitTime > 0 ? completed.poll(waitTime, TimeUnit.MILLISECONDS) : completed.poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (done != null) {
+                pending.remove(done);
+                if (done.isSuccess() || ExceptionUtil.isBizException(done.getException())) {
+                    latency.record(System.currentTimeMillis() - start);
+                    cancelLosers(pending);
+                    return new DefaultResponse(done);
+                }
+                lastException = done.getException();
+            }
+
+            long remain = timeout - (System.currentTimeMillis() - start);
+            if (!hedged && remain > 0) {
+                // 超过hedgeDelay仍未返回，或者第一个请求已经失败，发起对冲请求
+                hedged = true;
+                if (budget != null && budget.tryAcquire()) {
+                    Response second = callHedge(request, referers.get(1));
+                    if (second instanceof ResponseFuture) {
+                        watch((ResponseFuture) second, completed, pending);
+                    } else if (second != null) {
+                        cancelLosers(pending);
+                        return second;
+                    }
+                }
+            } else if (remain <= 0) {
+                break;
+            }
+            waitTime = remain;
+        }
+
+        throw failure(request, lastException, start);
+    }
+
+    private Response callHedge(Request request, Referer<T> referer) {
+        try {
+            request.setRetries(1);
+            return referer.call(request);
+        } catch (RuntimeException e) {
+            LoggerUtil.warn(String.format("HedgingHaStrategy hedge call false for request:%s error=%s", request, e.getMessage()));
+            return null;
+        }
+    }
+
+    private LatencyWindow getLatencyWindow(Request request) {
+        String key = MotanFrameworkUtil.getFullMethodString(request);
+        LatencyWindow window = latencies.get(key);
+        if (window == null) {
+            latencies.putIfAbsent(key, new LatencyWindow());
+            window = latencies.get(key);
+        }
+        return window;
+    }
+
+    /**
+     * 最近若干次调用耗时的滑动窗口，用于估算p95。并发写入时允许少量样本被覆盖。
+     */
+    static class LatencyWindow {
+        private static final int SIZE = 128;
+        private static final int RECOMPUTE_INTERVAL = 32;
+
+        private final long[] samples = new long[SIZE];
+        private final AtomicInteger count = new AtomicInteger(0);
+        private volatile int p95 = -1;
+
+        void record(long cost) {
+            int c = count.getAndIncrement();
+            samples[(c & Integer.MAX_VALUE) % SIZE] = cost;
+            if ((c + 1) % RECOMPUTE_INTERVAL == 0) {
+                int n = Math.min(c + 1, SIZE);
+                long[] copy = Arrays.copyOf(samples, n);
+                Arrays.sort(copy);
+                p95 = (int) copy[(int) Math.ceil(n * 0.95) - 1];
+            }
+        }
+
+        int p95(int defaultValue) {
+            int value = p95;
+            if (value < 0 || count.get() < MIN_LATENCY_SAMPLES) {
+                return defaultValue;
+            }
+            return Math.max(value, 1);
+        }
+    }
+}
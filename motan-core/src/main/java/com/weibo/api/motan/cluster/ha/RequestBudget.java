@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * 额外请求（重试、对冲等）的令牌桶预算。
+ * 
+ * <pre>
+ * 		每个正常请求按 ratio% 存入令牌，每个额外请求消耗一个令牌，令牌数不超过 maxBurst 个，
+ * 		从而把额外请求限制在总请求量的 ratio% 以内，避免故障时请求量被成倍放大。
+ * </pre>
+ *
+ */
+public class RequestBudget {
+
+    private static final long SCALE = 100;
+
+    private final long depositPerRequest;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    /**
+     * @param ratio 额外请求占正常请求的百分比，<=0 表示不允许额外请求
+     * @param maxBurst 最多可累积的额外请求个数
+     */
+    public RequestBudget(int ratio, int maxBurst) {
+        this.depositPerRequest = Math.max(ratio, 0);
+        this.maxTokens = Math.max(maxBurst, 1) * SCALE;
+        this.tokens = new AtomicLong(depositPerRequest > 0 ? maxTokens : 0);
+    }
+
+    /**
+     * 每个正常请求调用一次，存入令牌
+     */
+    public void deposit() {
+        if (depositPerRequest <= 0) {
+            return;
+        }
+        for (;;) {
+            long current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+            long next = Math.min(current + depositPerRequest, maxTokens);
+            if (tokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 尝试为一个额外请求取得令牌
+     * 
+     * @return 是否允许发起额外请求
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public int getRatio() {
+        return (int) depositPerRequest;
+    }
+}
@@ -16,7 +16,11 @@
 
 package com.weibo.api.motan.cluster.loadbalance;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.weibo.api.motan.cluster.LoadBalance;
 import com.weibo.api.motan.exception.MotanServiceException;
@@ -29,6 +33,11 @@ import com.weibo.api.motan.util.MotanFrameworkUtil;
  * 
  * loadbalance
  * 
+ * <pre>
+ * 子类通过 isSelectable(referer) 判断节点能否被选中，配置了slowStartWindow时，
+ * 新加入或由不可用恢复为可用的referer在预热期内按逐步增长的概率被选中，避免冷启动节点立即承接全量流量。
+ * </pre>
+ * 
  * @author fishermen
  * @version V1.0 created at: 2013-5-22
  */
@@ -36,10 +45,21 @@ import com.weibo.api.motan.util.MotanFrameworkUtil;
 public abstract class AbstractLoadBalance<T> implements LoadBalance<T> {
     public static final int MAX_REFERER_COUNT = 10;
 
+    // 预热开始时的权重比例
+    static final double SLOW_START_MIN_FACTOR = 0.1;
+    private static final long UNAVAILABLE = -1L;
+
     private List<Referer<T>> referers;
 
+    // 处于预热期的referer的预热开始时间，UNAVAILABLE表示已观察到不可用，恢复时开始预热
+    private final ConcurrentHashMap<Referer<T>, Long> slowStarts = new ConcurrentHashMap<Referer<T>, Long>();
+    private volatile long slowStartWindow;
+    private volatile boolean exponentialCurve;
+
     @Override
     public void onRefresh(List<Referer<T>> referers) {
+        List<Referer<T>> oldReferers = this.referers;
+        refreshSlowStart(oldReferers, referers);
         // 只能引用替换，不能进行referers update。
         this.referers = referers;
     }
@@ -51,6 +71,9 @@ public abstract class AbstractLoadBalance<T> implements LoadBalance<T> {
         Referer<T> ref = null;
         if (referers.size() > 1) {
             ref = doSelect(request);
+            if (ref == null && !slowStarts.isEmpty()) {
+                ref = selectWarming(referers);
+            }
 
         } else if (referers.size() == 1) {
             ref = referers.get(0).isAvailable() ? referers.get(0) : null;
@@ -73,6 +96,12 @@ public abstract class AbstractLoadBalance<T> implements LoadBalance<T> {
 
         if (referers.size() > 1) {
             doSelectToHolder(request, refersHolder);
+            if (refersHolder.isEmpty() && !slowStarts.isEmpty()) {
+                Referer<T> ref = selectWarming(referers);
+                if (ref != null) {
+                    refersHolder.add(ref);
+                }
+            }
 
         } else if (referers.size() == 1 && referers.get(0).isAvailable()) {
             refersHolder.add(referers.get(0));
@@ -87,6 +116,98 @@ public abstract class AbstractLoadBalance<T> implements LoadBalance<T> {
         return referers;
     }
 
+    /**
+     * 设置预热参数，由cluster根据url中的 slowStartWindow、slowStartCurve 配置
+     */
+    public void setSlowStart(long slowStartWindow, String slowStartCurve) {
+        this.slowStartWindow = slowStartWindow;
+        this.exponentialCurve = "exponential".equals(slowStartCurve);
+    }
+
+    /**
+     * 节点是否可被选中。子类在选择节点时应使用此方法代替 referer.isAvailable()，以便统一支持预热。
+     */
+    protected boolean isSelectable(Referer<T> referer) {
+        if (slowStartWindow <= 0) {
+            return referer.isAvailable();
+        }
+        if (!referer.isAvailable()) {
+            Long start = slowStarts.get(referer);
+            if (start == null || start != UNAVAILABLE) {
+                slowStarts.put(referer, UNAVAILABLE);
+            }
+            return false;
+        }
+        if (slowStarts.isEmpty()) {
+            return true;
+        }
+        Long start = slowStarts.get(referer);
+        if (start == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (start == UNAVAILABLE) {
+            // 由不可用恢复为可用，开始预热
+            if (slowStarts.replace(referer, UNAVAILABLE, now)) {
+                LoggerUtil.info(this.getClass().getSimpleName() + " referer recover, start slow start: " + referer.desc());
+            }
+            start = now;
+        }
+        double factor = getSlowStartFactor(now - start);
+        if (factor >= 1) {
+            slowStarts.remove(referer, start);
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < factor;
+    }
+
+    /**
+     * 预热期已过去elapsed毫秒时的权重比例，取值范围 [SLOW_START_MIN_FACTOR, 1]
+     */
+    double getSlowStartFactor(long elapsed) {
+        long window = slowStartWindow;
+        if (window <= 0 || elapsed >= window) {
+            return 1;
+        }
+        double progress = elapsed <= 0 ? 0 : (double) elapsed / window;
+        if (exponentialCurve) {
+            return SLOW_START_MIN_FACTOR * Math.pow(1 / SLOW_START_MIN_FACTOR, progress);
+        }
+        return SLOW_START_MIN_FACTOR + (1 - SLOW_START_MIN_FACTOR) * progress;
+    }
+
+    private void refreshSlowStart(List<Referer<T>> oldReferers, List<Referer<T>> referers) {
+        if (slowStartWindow <= 0 || referers == null) {
+            slowStarts.clear();
+            return;
+        }
+        Set<Referer<T>> current = new HashSet<Referer<T>>(referers);
+        slowStarts.keySet().retainAll(current);
+        // 首次refresh时所有节点同时加入，无需预热
+        if (oldReferers == null || oldReferers.isEmpty()) {
+            return;
+        }
+        Set<Referer<T>> old = new HashSet<Referer<T>>(oldReferers);
+        long now = System.currentTimeMillis();
+        for (Referer<T> referer : current) {
+            if (!old.contains(referer)) {
+                slowStarts.put(referer, now);
+            }
+        }
+    }
+
+    /**
+     * 所有可用节点都因预热未被选中时，选择第一个可用节点
+     */
+    private Referer<T> selectWarming(List<Referer<T>> referers) {
+        for (Referer<T> referer : referers) {
+            if (referer.isAvailable()) {
+                return referer;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void setWeightString(String weightString) {
         LoggerUtil.info("ignore weightString:" + weightString);
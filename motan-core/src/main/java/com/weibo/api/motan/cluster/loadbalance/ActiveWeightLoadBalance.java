@@ -60,7 +60,7 @@ public class ActiveWeightLoadBalance<T> extends AbstractLoadBalance<T> {
             Referer<T> temp = referers.get((startIndex + currentCursor) % refererSize);
             currentCursor++;
 
-            if (!temp.isAvailable()) {
+            if (!isSelectable(temp)) {
                 continue;
             }
 
@@ -91,7 +91,7 @@ public class ActiveWeightLoadBalance<T> extends AbstractLoadBalance<T> {
             Referer<T> temp = referers.get((startIndex + currentCursor) % refererSize);
             currentCursor++;
 
-            if (!temp.isAvailable()) {
+            if (!isSelectable(temp)) {
                 continue;
             }
 
@@ -67,16 +67,18 @@ public class ConfigurableWeightLoadBalance<T> extends ActiveWeightLoadBalance<T>
 
         RefererListCacheHolder<T> h = this.holder;
         Referer<T> r = h.next();
-        if (!r.isAvailable()) {
+        boolean selectable = isSelectable(r);
+        if (!selectable) {
             int retryTimes = getReferers().size() - 1;
             for (int i = 0; i < retryTimes; i++) {
                 r = h.next();
-                if (r.isAvailable()) {
+                if (isSelectable(r)) {
+                    selectable = true;
                     break;
                 }
             }
         }
-        if (r.isAvailable()) {
+        if (selectable) {
             return r;
         } else {
             noAvailableReferer();
@@ -94,7 +96,7 @@ public class ConfigurableWeightLoadBalance<T> extends ActiveWeightLoadBalance<T>
         int i = 0, j = 0;
         while (i++ < getReferers().size()) {
             Referer<T> r = h.next();
-            if (r.isAvailable()) {
+            if (isSelectable(r)) {
                 refersHolder.add(r);
                 if (++j == MAX_REFERER_COUNT) {
                     return;
@@ -62,7 +62,7 @@ public class ConsistentHashLoadBalance<T> extends AbstractLoadBalance<T> {
         Referer<T> ref;
         for (int i = 0; i < getReferers().size(); i++) {
             ref = consistentHashReferers.get((hash + i) % consistentHashReferers.size());
-            if (ref.isAvailable()) {
+            if (isSelectable(ref)) {
                 return ref;
             }
         }
@@ -76,7 +76,7 @@ public class ConsistentHashLoadBalance<T> extends AbstractLoadBalance<T> {
         int hash = getHash(request);
         for (int i = 0; i < referers.size(); i++) {
             Referer<T> ref = consistentHashReferers.get((hash + i) % consistentHashReferers.size());
-            if (ref.isAvailable()) {
+            if (isSelectable(ref)) {
                 refersHolder.add(ref);
             }
         }
@@ -16,12 +16,15 @@
 
 package com.weibo.api.motan.cluster.loadbalance;
 
+import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.core.extension.SpiMeta;
 import com.weibo.api.motan.rpc.Referer;
 import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.LoggerUtil;
 import com.weibo.api.motan.util.NetUtils;
 
+import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -29,21 +32,34 @@ import java.util.concurrent.ThreadLocalRandom;
  * "本地服务优先" 负载均衡
  * <p>
  * <pre>
- * 		1） 本地服务优先：
- *   		当referers里面包含本地暴露的服务时，并此服务为available的情况下，优先使用此服务。
- * 			当不存在本地暴露的服务时，默认使用低并发ActiveWeight负载均衡策略
- *
- * 		2） 本地服务优先获取策略：
- * 			对referers根据ip顺序查找本地服务，多存在多个本地服务，获取Active最小的本地服务进行服务。
- * 			当不存在本地服务，但是存在远程RPC服务，则根据ActivWeight获取远程RPC服务
- * 			当两者都存在，所有本地服务都应优先于远程服务，本地RPC服务与远程RPC服务内部则根据ActiveWeight进行
+ * 		1） 就近分层：
+ * 			在onRefresh时一次性把referers按与本机的距离划分为以下层级，select时不再解析ip：
+ * 				TIER_HOST   : 与本机ip相同
+ * 				TIER_SUBNET : 与本机处于同一个 /24 网段
+ * 				TIER_ZONE   : 服务端url中的zone参数与client端配置的zone相同
+ * 				TIER_REMOTE : 其他节点
  *
+ * 		2） 选择策略：
+ * 			从最近的层级开始，在该层级内按ActiveWeight（低并发优先）选择可用节点。
+ * 			当该层级没有可用节点，或最空闲节点的并发数已达到 localFirstOverloadActive 时，溢出到下一层级；
+ * 			所有层级都过载时，选择各层级中并发最低的节点。
+ * 			selectToHolder 按层级由近到远放入，层级内按并发由低到高排序，供failover重试使用。
  * </pre>
  */
 @SpiMeta(name = "localFirst")
 public class LocalFirstLoadBalance<T> extends AbstractLoadBalance<T> {
     public static final int MAX_REFERER_COUNT = 10;
 
+    static final int TIER_HOST = 0;
+    static final int TIER_SUBNET = 1;
+    static final int TIER_ZONE = 2;
+    static final int TIER_REMOTE = 3;
+    private static final int TIER_COUNT = 4;
+
+    private static final long SUBNET_MASK = 0xFFFFFF00L;
+
+    private volatile LocalityTiers<T> tiers;
+
     public static long ipToLong(final String addr) {
         final String[] addressBytes = addr.split("\\.");
         int length = addressBytes.length;
@@ -64,88 +80,152 @@ public class LocalFirstLoadBalance<T> extends AbstractLoadBalance<T> {
     }
 
     @Override
-    protected Referer<T> doSelect(Request request) {
-        List<Referer<T>> referers = getReferers();
-
-        List<Referer<T>> localReferers = searchLocalReferer(referers, NetUtils.getLocalAddress().getHostAddress());
+    public void onRefresh(List<Referer<T>> referers) {
+        super.onRefresh(referers);
 
-        if (!localReferers.isEmpty()) {
-            referers = localReferers;
-        }
-
-        int refererSize = referers.size();
-        Referer<T> referer = null;
+        InetAddress localAddress = NetUtils.getLocalAddress();
+        long localIp = localAddress == null ? 0 : ipToLong(localAddress.getHostAddress());
+        tiers = new LocalityTiers<T>(referers, localIp);
+    }
 
-        for (int i = 0; i < refererSize; i++) {
-            Referer<T> temp = referers.get(i % refererSize);
+    @Override
+    protected Referer<T> doSelect(Request request) {
+        LocalityTiers<T> t = this.tiers;
 
-            if (!temp.isAvailable()) {
+        Referer<T> best = null;
+        for (int i = 0; i < TIER_COUNT; i++) {
+            Referer<T> candidate = selectLowActive(t.tiers[i]);
+            if (candidate == null) {
                 continue;
             }
-
-            if (referer == null) {
-                referer = temp;
-            } else {
-                if (compare(referer, temp) > 0) {
-                    referer = temp;
-                }
+            if (t.overloadActive <= 0 || candidate.activeRefererCount() < t.overloadActive) {
+                return candidate;
+            }
+            // 当前层级过载，记录下来并尝试更远的层级
+            if (best == null || compare(best, candidate) > 0) {
+                best = candidate;
             }
         }
 
-        return referer;
+        return best;
     }
 
     @Override
     protected void doSelectToHolder(Request request, List<Referer<T>> refersHolder) {
-        List<Referer<T>> referers = getReferers();
+        LocalityTiers<T> t = this.tiers;
 
-        List<Referer<T>> localReferers = searchLocalReferer(referers, NetUtils.getLocalAddress().getHostAddress());
+        List<Referer<T>> tierReferers = new ArrayList<Referer<T>>();
+        for (int i = 0; i < TIER_COUNT && refersHolder.size() < MAX_REFERER_COUNT; i++) {
+            List<Referer<T>> referers = t.tiers[i];
+            int refererSize = referers.size();
+            if (refererSize == 0) {
+                continue;
+            }
+
+            int startIndex = ThreadLocalRandom.current().nextInt(refererSize);
+            tierReferers.clear();
+            for (int j = 0; j < refererSize && refersHolder.size() + tierReferers.size() < MAX_REFERER_COUNT; j++) {
+                Referer<T> temp = referers.get((startIndex + j) % refererSize);
+                if (isSelectable(temp)) {
+                    tierReferers.add(temp);
+                }
+            }
 
-        if (!localReferers.isEmpty()) {
-            Collections.sort(localReferers, new LowActivePriorityComparator<T>());
-            refersHolder.addAll(localReferers);
+            Collections.sort(tierReferers, new LowActivePriorityComparator<T>());
+            refersHolder.addAll(tierReferers);
         }
+    }
 
+    /**
+     * 在同一层级内随机起点扫描，最多比较 MAX_REFERER_COUNT 个可用节点，返回并发最低的节点
+     */
+    private Referer<T> selectLowActive(List<Referer<T>> referers) {
         int refererSize = referers.size();
-        int startIndex = ThreadLocalRandom.current().nextInt(refererSize);
-        int currentCursor = 0;
+        if (refererSize == 0) {
+            return null;
+        }
+
+        int startIndex = refererSize == 1 ? 0 : ThreadLocalRandom.current().nextInt(refererSize);
         int currentAvailableCursor = 0;
+        Referer<T> referer = null;
 
-        List<Referer<T>> remoteReferers = new ArrayList<Referer<T>>();
-        while (currentAvailableCursor < MAX_REFERER_COUNT && currentCursor < refererSize) {
-            Referer<T> temp = referers.get((startIndex + currentCursor) % refererSize);
-            currentCursor++;
+        for (int i = 0; i < refererSize && currentAvailableCursor < MAX_REFERER_COUNT; i++) {
+            Referer<T> temp = referers.get((startIndex + i) % refererSize);
 
-            if (!temp.isAvailable() || localReferers.contains(temp)) {
+            if (!isSelectable(temp)) {
                 continue;
             }
 
             currentAvailableCursor++;
 
-            remoteReferers.add(temp);
+            if (referer == null || compare(referer, temp) > 0) {
+                referer = temp;
+            }
         }
 
-        Collections.sort(remoteReferers, new LowActivePriorityComparator<T>());
-        refersHolder.addAll(remoteReferers);
+        return referer;
+    }
+
+    private int compare(Referer<T> referer1, Referer<T> referer2) {
+        return referer1.activeRefererCount() - referer2.activeRefererCount();
     }
 
-    private List<Referer<T>> searchLocalReferer(List<Referer<T>> referers, String localhost) {
-        List<Referer<T>> localReferers = new ArrayList<Referer<T>>();
-        long local = ipToLong(localhost);
-        for (Referer<T> referer : referers) {
-            long tmp = ipToLong(referer.getUrl().getHost());
-            if (local != 0 && local == tmp) {
-                if (referer.isAvailable()) {
-                    localReferers.add(referer);
+    static <T> int tierOf(Referer<T> referer, long localIp) {
+        URL url = referer.getUrl();
+        if (localIp != 0 && url != null && url.getHost() != null) {
+            long ip = ipToLong(url.getHost());
+            if (ip != 0) {
+                if (ip == localIp) {
+                    return TIER_HOST;
+                }
+                if ((ip & SUBNET_MASK) == (localIp & SUBNET_MASK)) {
+                    return TIER_SUBNET;
                 }
             }
         }
 
-        return localReferers;
+        // referer url中的zone已被client端配置覆盖，service url中保留的是服务端的zone
+        URL serviceUrl = referer.getServiceUrl();
+        if (url != null && serviceUrl != null) {
+            String localZone = url.getParameter(URLParamType.zone.getName());
+            String serviceZone = serviceUrl.getParameter(URLParamType.zone.getName());
+            if (localZone != null && localZone.length() > 0 && localZone.equals(serviceZone)) {
+                return TIER_ZONE;
+            }
+        }
+        return TIER_REMOTE;
     }
 
-    private int compare(Referer<T> referer1, Referer<T> referer2) {
-        return referer1.activeRefererCount() - referer2.activeRefererCount();
+    /**
+     * onRefresh时计算好的分层结果，创建后不再修改，select时只做引用读取
+     */
+    static class LocalityTiers<T> {
+        final List<Referer<T>>[] tiers;
+        final int overloadActive;
+
+        @SuppressWarnings("unchecked")
+        LocalityTiers(List<Referer<T>> referers, long localIp) {
+            tiers = new List[TIER_COUNT];
+            for (int i = 0; i < TIER_COUNT; i++) {
+                tiers[i] = new ArrayList<Referer<T>>();
+            }
+
+            int overload = URLParamType.localFirstOverloadActive.getIntValue();
+            if (referers != null && !referers.isEmpty()) {
+                for (Referer<T> referer : referers) {
+                    tiers[tierOf(referer, localIp)].add(referer);
+                }
+                URL url = referers.get(0).getUrl();
+                if (url != null) {
+                    overload = url.getIntParameter(URLParamType.localFirstOverloadActive.getName(),
+                            URLParamType.localFirstOverloadActive.getIntValue());
+                }
+            }
+            overloadActive = overload;
+
+            LoggerUtil.info("LocalFirstLoadBalance refresh tiers: host={} subnet={} zone={} remote={}", tiers[TIER_HOST].size(),
+                    tiers[TIER_SUBNET].size(), tiers[TIER_ZONE].size(), tiers[TIER_REMOTE].size());
+        }
     }
 
     static class LowActivePriorityComparator<T> implements Comparator<Referer<T>> {
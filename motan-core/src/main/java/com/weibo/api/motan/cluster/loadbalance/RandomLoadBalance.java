@@ -40,7 +40,7 @@ public class RandomLoadBalance<T> extends AbstractLoadBalance<T> {
         int idx = (int) (ThreadLocalRandom.current().nextDouble() * referers.size());
         for (int i = 0; i < referers.size(); i++) {
             Referer<T> ref = referers.get((i + idx) % referers.size());
-            if (ref.isAvailable()) {
+            if (isSelectable(ref)) {
                 return ref;
             }
         }
@@ -54,7 +54,7 @@ public class RandomLoadBalance<T> extends AbstractLoadBalance<T> {
         int idx = (int) (ThreadLocalRandom.current().nextDouble() * referers.size());
         for (int i = 0; i < referers.size(); i++) {
             Referer<T> referer = referers.get((i + idx) % referers.size());
-            if (referer.isAvailable()) {
+            if (isSelectable(referer)) {
                 refersHolder.add(referer);
             }
         }
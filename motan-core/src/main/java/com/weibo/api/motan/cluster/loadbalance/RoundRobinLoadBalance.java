@@ -43,7 +43,7 @@ public class RoundRobinLoadBalance<T> extends AbstractLoadBalance<T> {
         int index = getNextPositive();
         for (int i = 0; i < referers.size(); i++) {
             Referer<T> ref = referers.get((i + index) % referers.size());
-            if (ref.isAvailable()) {
+            if (isSelectable(ref)) {
                 return ref;
             }
         }
@@ -57,7 +57,7 @@ public class RoundRobinLoadBalance<T> extends AbstractLoadBalance<T> {
         int index = getNextPositive();
         for (int i = 0, count = 0; i < referers.size() && count < MAX_REFERER_COUNT; i++) {
             Referer<T> referer = referers.get((i + index) % referers.size());
-            if (referer.isAvailable()) {
+            if (isSelectable(referer)) {
                 refersHolder.add(referer);
                 count++;
             }
@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import java.lang.reflect.Array;
+import java.util.List;
+
+import com.weibo.api.motan.cluster.Merger;
+import com.weibo.api.motan.core.extension.SpiMeta;
+
+/**
+ * 
+ * 按节点顺序拼接数组类型的结果，支持基本类型数组。
+ * 不保证与参数顺序一致；数组结果能与参数一一对应时由{@link ScatterGather}先按参数位置还原顺序，不经过这里。
+ *
+ */
+@SpiMeta(name = "array")
+public class ArrayMerger implements Merger {
+
+    @Override
+    public Object merge(List<Object> results) {
+        int length = 0;
+        for (Object result : results) {
+            length += Array.getLength(result);
+        }
+        Object merged = Array.newInstance(results.get(0).getClass().getComponentType(), length);
+        int offset = 0;
+        for (Object result : results) {
+            int len = Array.getLength(result);
+            System.arraycopy(result, 0, merged, offset, len);
+            offset += len;
+        }
+        return merged;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.weibo.api.motan.cluster.Merger;
+import com.weibo.api.motan.core.extension.SpiMeta;
+
+/**
+ * 
+ * 合并List、Set等集合类型的结果，Set合并为LinkedHashSet，其他合并为ArrayList。
+ * 按节点顺序拼接，不保证与参数顺序一致；List结果能与参数一一对应时由{@link ScatterGather}先按参数位置还原顺序，不经过这里。
+ *
+ */
+@SpiMeta(name = "collection")
+public class CollectionMerger implements Merger {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    public Object merge(List<Object> results) {
+        Collection merged = results.get(0) instanceof Set ? new LinkedHashSet() : new ArrayList();
+        for (Object result : results) {
+            merged.addAll((Collection) result);
+        }
+        return merged;
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import com.weibo.api.motan.cluster.PartitionKey;
+import com.weibo.api.motan.core.extension.SpiMeta;
+
+/**
+ * 
+ * 以元素本身作为路由key，适用于id列表等参数。
+ *
+ */
+@SpiMeta(name = "identity")
+public class IdentityPartitionKey implements PartitionKey {
+
+    @Override
+    public Object getKey(Object element) {
+        return element;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.weibo.api.motan.cluster.Merger;
+import com.weibo.api.motan.core.extension.SpiMeta;
+
+/**
+ * 
+ * 合并Map类型的结果，key重复时后面的节点覆盖前面的节点。
+ *
+ */
+@SpiMeta(name = "map")
+public class MapMerger implements Merger {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    public Object merge(List<Object> results) {
+        int size = 0;
+        for (Object result : results) {
+            size += ((Map) result).size();
+        }
+        Map merged = new HashMap(size * 4 / 3 + 1);
+        for (Object result : results) {
+            merged.putAll((Map) result);
+        }
+        return merged;
+    }
+
+}
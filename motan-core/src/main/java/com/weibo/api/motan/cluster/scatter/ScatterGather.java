@@ -0,0 +1,343 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.weibo.api.motan.cluster.HaStrategy;
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.cluster.Merger;
+import com.weibo.api.motan.cluster.PartitionKey;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.ExceptionUtil;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.RequestIdGenerator;
+
+/**
+ * 
+ * scatter-gather调用：把集合参数按集群的路由拆分到各个节点，并行调用后合并结果。
+ * 
+ * <pre>
+ * 		1）方法配置scatterGather=true后生效，拆分第一个集合或数组类型的参数；
+ * 		2）每个元素通过PartitionKey（scatterKey）取出key，以key作为唯一参数经过loadbalance选择节点，
+ * 		   与只传一个key的调用路由到同一个节点，配合consistent loadbalance使用；
+ * 		3）各节点的请求异步发出，总耗时接近最慢的节点；
+ * 		4）结果通过Merger（scatterMerger）合并，未配置时按返回类型选择collection、map或array；
+ * 		   参数是List或数组、且各节点返回的List或数组与其分到的参数一一对应（长度相同）时，
+ * 		   collection和array按参数中的位置还原结果顺序，与不拆分调用的返回一致；
+ * 		   长度不一致（如节点过滤了不存在的key）时无法对应位置，按节点顺序拼接，结果顺序与参数顺序无关；
+ * 		5）scatterFailPolicy=failfast时任一节点失败即失败，partial时合并成功节点的结果，业务异常总是抛出。
+ * </pre>
+ *
+ */
+public class ScatterGather {
+
+    public static final String FAIL_POLICY_FAILFAST = "failfast";
+    public static final String FAIL_POLICY_PARTIAL = "partial";
+
+    /**
+     * url上是否有方法（或接口）开启了scatterGather，都没有开启时调用方可以跳过{@link #isScatterRequest(URL, Request)}
+     *
+     * @param url
+     * @return
+     */
+    public static boolean isScatterEnabled(URL url) {
+        if (url == null) {
+            return false;
+        }
+        String suffix = "." + URLParamType.scatterGather.getName();
+        for (Map.Entry<String, String> entry : url.getParameters().entrySet()) {
+            if ((entry.getKey().equals(URLParamType.scatterGather.getName()) || entry.getKey().endsWith(suffix))
+                    && Boolean.parseBoolean(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean isScatterRequest(URL url, Request request) {
+        if (url == null || request.getArguments() == null || request.getArguments().length == 0) {
+            return false;
+        }
+        // 异步调用需要返回ResponseFuture，不拆分
+        if (Boolean.TRUE.equals(RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX))) {
+            return false;
+        }
+        return url.getMethodSettings(request.getMethodName(), request.getParamtersDesc()).isScatterGather();
+    }
+
+    public static <T> Response call(URL url, Request request, HaStrategy<T> haStrategy, LoadBalance<T> loadBalance) {
+        int index = findCollectionArgument(request.getArguments());
+        if (index < 0) {
+            return haStrategy.call(request, loadBalance);
+        }
+
+        PartitionKey partitionKey =
+                ExtensionLoader.getExtensionLoader(PartitionKey.class).getExtension(
+                        url.getMethodParameter(request.getMethodName(), request.getParamtersDesc(), URLParamType.scatterKey.getName(),
+                                URLParamType.scatterKey.getValue()));
+        if (partitionKey == null) {
+            throw new MotanServiceException(String.format("ScatterGather partition key not found, request:%s", request));
+        }
+        Map<Referer<T>, Partition> partitions = partition(request, request.getArguments()[index], partitionKey, loadBalance);
+        if (partitions.size() <= 1) {
+            return haStrategy.call(request, loadBalance);
+        }
+
+        String failPolicy =
+                url.getMethodParameter(request.getMethodName(), request.getParamtersDesc(), URLParamType.scatterFailPolicy.getName(),
+                        URLParamType.scatterFailPolicy.getValue());
+        boolean failfast = !FAIL_POLICY_PARTIAL.equals(failPolicy);
+
+        List<Response> responses = new ArrayList<Response>(partitions.size());
+        List<Partition> responsePartitions = new ArrayList<Partition>(partitions.size());
+        List<Exception> failures = new ArrayList<Exception>();
+        Object async = RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX);
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        try {
+            for (Map.Entry<Referer<T>, Partition> entry : partitions.entrySet()) {
+                try {
+                    responses.add(entry.getKey().call(buildSubRequest(request, index, entry.getValue().elements)));
+                    responsePartitions.add(entry.getValue());
+                } catch (RuntimeException e) {
+                    if (failfast || ExceptionUtil.isBizException(e)) {
+                        cancel(responses);
+                        throw e;
+                    }
+                    failures.add(e);
+                }
+            }
+        } finally {
+            RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, async);
+        }
+
+        List<Object> results = new ArrayList<Object>(responses.size());
+        List<Partition> resultPartitions = new ArrayList<Partition>(responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            try {
+                Object value = responses.get(i).getValue();
+                if (value != null) {
+                    results.add(value);
+                    resultPartitions.add(responsePartitions.get(i));
+                }
+            } catch (RuntimeException e) {
+                if (failfast || ExceptionUtil.isBizException(e)) {
+                    cancel(responses.subList(i + 1, responses.size()));
+                    throw e;
+                }
+                failures.add(e);
+            }
+        }
+        if (!failures.isEmpty()) {
+            if (results.isEmpty()) {
+                throw (RuntimeException) failures.get(0);
+            }
+            LoggerUtil.warn(String.format("ScatterGather partial failure for request:%s, failed:%s, total:%s, error=%s", request,
+                    failures.size(), partitions.size(), failures.get(0).getMessage()));
+        }
+
+        return new DefaultResponse(results.isEmpty() ? null : merge(url, request, request.getArguments()[index], results,
+                resultPartitions), request.getRequestId());
+    }
+
+    private static int findCollectionArgument(Object[] arguments) {
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof Collection || (arguments[i] != null && arguments[i].getClass().isArray())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static <T> Map<Referer<T>, Partition> partition(Request request, Object argument, PartitionKey partitionKey,
+            LoadBalance<T> loadBalance) {
+        List<Object> elements;
+        if (argument instanceof Collection) {
+            elements = new ArrayList<Object>((Collection<?>) argument);
+        } else {
+            int length = Array.getLength(argument);
+            elements = new ArrayList<Object>(length);
+            for (int i = 0; i < length; i++) {
+                elements.add(Array.get(argument, i));
+            }
+        }
+
+        // 以key作为唯一参数选择节点，与单个key的调用路由一致
+        DefaultRequest probe = new DefaultRequest();
+        probe.setInterfaceName(request.getInterfaceName());
+        probe.setMethodName(request.getMethodName());
+        probe.setParamtersDesc(request.getParamtersDesc());
+        Map<Referer<T>, Partition> partitions = new LinkedHashMap<Referer<T>, Partition>();
+        for (int i = 0; i < elements.size(); i++) {
+            Object element = elements.get(i);
+            probe.setArguments(new Object[] {partitionKey.getKey(element)});
+            Referer<T> referer = loadBalance.select(probe);
+            Partition partition = partitions.get(referer);
+            if (partition == null) {
+                partition = new Partition();
+                partitions.put(referer, partition);
+            }
+            partition.elements.add(element);
+            partition.indexes.add(i);
+        }
+        return partitions;
+    }
+
+    private static Request buildSubRequest(Request request, int index, List<Object> elements) {
+        Object argument = request.getArguments()[index];
+        Object subArgument;
+        if (argument instanceof Set) {
+            subArgument = new LinkedHashSet<Object>(elements);
+        } else if (argument instanceof Collection) {
+            subArgument = elements;
+        } else {
+            subArgument = Array.newInstance(argument.getClass().getComponentType(), elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(subArgument, i, elements.get(i));
+            }
+        }
+
+        Object[] arguments = request.getArguments().clone();
+        arguments[index] = subArgument;
+
+        DefaultRequest subRequest = new DefaultRequest();
+        subRequest.setRequestId(RequestIdGenerator.getRequestId());
+        subRequest.setInterfaceName(request.getInterfaceName());
+        subRequest.setMethodName(request.getMethodName());
+        subRequest.setParamtersDesc(request.getParamtersDesc());
+        subRequest.setArguments(arguments);
+        subRequest.setRpcProtocolVersion(request.getRpcProtocolVersion());
+        if (request.getAttachments() != null) {
+            subRequest.setAttachments(new HashMap<String, String>(request.getAttachments()));
+        }
+        return subRequest;
+    }
+
+    private static Object merge(URL url, Request request, Object argument, List<Object> results, List<Partition> partitions) {
+        String name =
+                url.getMethodParameter(request.getMethodName(), request.getParamtersDesc(), URLParamType.scatterMerger.getName(),
+                        URLParamType.scatterMerger.getValue());
+        if (name == null || name.length() == 0 || "collection".equals(name) || "array".equals(name)) {
+            Object ordered = mergeInOrder(argument, results, partitions);
+            if (ordered != null) {
+                return ordered;
+            }
+        }
+        if (name == null || name.length() == 0) {
+            Object first = results.get(0);
+            if (first instanceof Collection) {
+                name = "collection";
+            } else if (first instanceof Map) {
+                name = "map";
+            } else if (first.getClass().isArray()) {
+                name = "array";
+            } else if (results.size() == 1) {
+                return first;
+            } else {
+                throw new MotanServiceException(String.format("ScatterGather no merger for result type:%s, request:%s",
+                        first.getClass().getName(), request));
+            }
+        }
+        Merger merger = ExtensionLoader.getExtensionLoader(Merger.class).getExtension(name);
+        if (merger == null) {
+            throw new MotanServiceException(String.format("ScatterGather merger not found:%s, request:%s", name, request));
+        }
+        return merger.merge(results);
+    }
+
+    /**
+     * 参数是List或数组，且每个节点返回的List或数组与其分到的参数长度相同时，按参数中的位置还原结果顺序。
+     * 失败节点（partial）对应的位置被跳过，其余结果仍保持参数中的相对顺序。
+     *
+     * @return 无法按位置对应时返回null，由Merger按节点顺序合并
+     */
+    private static Object mergeInOrder(Object argument, List<Object> results, List<Partition> partitions) {
+        if (!(argument instanceof List) && !argument.getClass().isArray()) {
+            return null;
+        }
+        boolean array = results.get(0).getClass().isArray();
+        int length = argument instanceof List ? ((List<?>) argument).size() : Array.getLength(argument);
+        Object[] slots = new Object[length];
+        boolean[] filled = new boolean[length];
+        int count = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Object result = results.get(i);
+            List<Integer> indexes = partitions.get(i).indexes;
+            if (array ? !result.getClass().isArray() || Array.getLength(result) != indexes.size()
+                    : !(result instanceof List) || ((List<?>) result).size() != indexes.size()) {
+                return null;
+            }
+            for (int j = 0; j < indexes.size(); j++) {
+                int index = indexes.get(j);
+                slots[index] = array ? Array.get(result, j) : ((List<?>) result).get(j);
+                filled[index] = true;
+            }
+            count += indexes.size();
+        }
+
+        if (array) {
+            Object merged = Array.newInstance(results.get(0).getClass().getComponentType(), count);
+            int offset = 0;
+            for (int i = 0; i < length; i++) {
+                if (filled[i]) {
+                    Array.set(merged, offset++, slots[i]);
+                }
+            }
+            return merged;
+        }
+        List<Object> merged = new ArrayList<Object>(count);
+        for (int i = 0; i < length; i++) {
+            if (filled[i]) {
+                merged.add(slots[i]);
+            }
+        }
+        return merged;
+    }
+
+    private static void cancel(List<Response> responses) {
+        for (Response response : responses) {
+            if (response instanceof ResponseFuture) {
+                ((ResponseFuture) response).cancel();
+            }
+        }
+    }
+
+    private static class Partition {
+        private final List<Object> elements = new ArrayList<Object>();
+        // 每个元素在原始参数中的位置
+        private final List<Integer> indexes = new ArrayList<Integer>();
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 
+ * 单个referer的熔断器。
+ * 
+ * <pre>
+ * 		1）在滑动窗口内统计请求总数、失败数与慢请求数，失败率或慢请求率超过阈值时熔断(OPEN)；
+ * 		2）熔断持续 openTime 后进入半开(HALF_OPEN)，只放行 probes 个探测请求，全部成功则恢复(CLOSED)，任一失败则重新熔断；
+ * 		3）同一个cluster中被熔断的referer不超过 maxEjection%，避免大面积故障时把所有节点都摘掉。
+ * </pre>
+ *
+ */
+public class CircuitBreaker {
+
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+
+    private static final int BUCKET_COUNT = 10;
+
+    private final URL url;
+    private final EjectionGroup group;
+    private final int minRequests;
+    private final int errorRate;
+    private final long slowCallTime;
+    private final int slowCallRate;
+    private final long openTime;
+    private final int probes;
+
+    private final long bucketMillis;
+    private final Bucket[] buckets = new Bucket[BUCKET_COUNT];
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private volatile long openUntil;
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccess = new AtomicInteger();
+
+    public CircuitBreaker(URL url, EjectionGroup group) {
+        this.url = url;
+        this.group = group;
+        this.minRequests = url.getIntParameter(URLParamType.circuitBreakerMinRequests.getName(),
+                URLParamType.circuitBreakerMinRequests.getIntValue());
+        this.errorRate = url.getIntParameter(URLParamType.circuitBreakerErrorRate.getName(),
+                URLParamType.circuitBreakerErrorRate.getIntValue());
+        this.slowCallTime = url.getIntParameter(URLParamType.circuitBreakerSlowCallTime.getName(),
+                URLParamType.circuitBreakerSlowCallTime.getIntValue());
+        this.slowCallRate = url.getIntParameter(URLParamType.circuitBreakerSlowCallRate.getName(),
+                URLParamType.circuitBreakerSlowCallRate.getIntValue());
+        this.openTime = url.getIntParameter(URLParamType.circuitBreakerOpenTime.getName(),
+                URLParamType.circuitBreakerOpenTime.getIntValue());
+        this.probes = Math.max(1, url.getIntParameter(URLParamType.circuitBreakerProbes.getName(),
+                URLParamType.circuitBreakerProbes.getIntValue()));
+        int window = url.getIntParameter(URLParamType.circuitBreakerWindow.getName(), URLParamType.circuitBreakerWindow.getIntValue());
+        this.bucketMillis = Math.max(1, window / BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 是否允许请求通过，只读取状态，不消耗探测名额，可供loadbalance在选择时频繁调用
+     */
+    public boolean isAllowed() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now() < openUntil) {
+                    return false;
+                }
+                if (state.compareAndSet(OPEN, HALF_OPEN)) {
+                    probePermits.set(probes);
+                    probeSuccess.set(0);
+                    LoggerUtil.info("CircuitBreaker half open: url=" + url.getIdentity());
+                }
+                return probePermits.get() > 0;
+            default:
+                return probePermits.get() > 0;
+        }
+    }
+
+    /**
+     * 请求发出前调用，半开状态下占用一个探测名额
+     */
+    public void beforeCall() {
+        if (state.get() == HALF_OPEN) {
+            probePermits.decrementAndGet();
+        }
+    }
+
+    /**
+     * 请求被主动取消、不计入统计时调用，归还半开状态下占用的探测名额
+     */
+    public void ignore() {
+        if (state.get() == HALF_OPEN) {
+            probePermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录一次请求结果
+     * 
+     * @param success 是否成功，业务异常视为成功
+     * @param costTime 请求耗时(ms)
+     */
+    public void record(boolean success, long costTime) {
+        boolean slow = slowCallTime > 0 && costTime >= slowCallTime;
+        int current = state.get();
+        if (current == HALF_OPEN) {
+            if (!success || slow) {
+                open();
+            } else if (probeSuccess.incrementAndGet() >= probes) {
+                close();
+            }
+            return;
+        }
+        if (current == OPEN) {
+            return;
+        }
+
+        long time = now();
+        Bucket bucket = currentBucket(time);
+        bucket.total.incrementAndGet();
+        if (!success) {
+            bucket.errors.incrementAndGet();
+        }
+        if (slow) {
+            bucket.slow.incrementAndGet();
+        }
+        if (!success || slow) {
+            checkTrip(time);
+        }
+    }
+
+    public int getState() {
+        return state.get();
+    }
+
+    /**
+     * referer销毁时释放占用的熔断名额
+     */
+    public void release() {
+        if (state.getAndSet(CLOSED) != CLOSED) {
+            group.release();
+        }
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void checkTrip(long time) {
+        long total = 0, errors = 0, slow = 0;
+        long windowStart = time - bucketMillis * BUCKET_COUNT;
+        for (Bucket bucket : buckets) {
+            if (bucket.start > windowStart) {
+                total += bucket.total.get();
+                errors += bucket.errors.get();
+                slow += bucket.slow.get();
+            }
+        }
+        if (total < minRequests) {
+            return;
+        }
+        boolean trip = (errorRate > 0 && errors * 100 >= total * errorRate) || (slowCallTime > 0 && slow * 100 >= total * slowCallRate);
+        if (trip && group.tryEject()) {
+            if (state.compareAndSet(CLOSED, OPEN)) {
+                openUntil = now() + openTime;
+                LoggerUtil.warn("CircuitBreaker open: url=" + url.getIdentity() + " total=" + total + " errors=" + errors + " slow="
+                        + slow);
+            } else {
+                group.release();
+            }
+        }
+    }
+
+    private void open() {
+        if (state.compareAndSet(HALF_OPEN, OPEN)) {
+            openUntil = now() + openTime;
+            LoggerUtil.warn("CircuitBreaker reopen after probe failed: url=" + url.getIdentity());
+        }
+    }
+
+    private void close() {
+        if (state.compareAndSet(HALF_OPEN, CLOSED)) {
+            for (Bucket bucket : buckets) {
+                bucket.reset(0);
+            }
+            group.release();
+            LoggerUtil.info("CircuitBreaker closed: url=" + url.getIdentity());
+        }
+    }
+
+    private Bucket currentBucket(long time) {
+        long start = time - time % bucketMillis;
+        Bucket bucket = buckets[(int) ((time / bucketMillis) % BUCKET_COUNT)];
+        if (bucket.start != start) {
+            synchronized (bucket) {
+                if (bucket.start != start) {
+                    bucket.reset(start);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+        private volatile long start = -1;
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong slow = new AtomicLong();
+
+        private void reset(long newStart) {
+            total.set(0);
+            errors.set(0);
+            slow.set(0);
+            start = newStart;
+        }
+    }
+
+    /**
+     * 
+     * 同一个cluster中的熔断名额，限制同时被熔断的referer比例
+     *
+     */
+    public static class EjectionGroup {
+
+        private final int maxEjectionPercent;
+        private final AtomicInteger ejected = new AtomicInteger();
+        private volatile int size;
+
+        public EjectionGroup(int maxEjectionPercent) {
+            this.maxEjectionPercent = maxEjectionPercent;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public int getEjected() {
+            return ejected.get();
+        }
+
+        boolean tryEject() {
+            int limit = size * maxEjectionPercent / 100;
+            for (;;) {
+                int current = ejected.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (ejected.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            ejected.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.support;
+
+import com.weibo.api.motan.rpc.Future;
+import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.ExceptionUtil;
+
+/**
+ * 
+ * 带熔断的referer，熔断时isAvailable返回false，各loadbalance据此跳过该referer。
+ *
+ */
+public class CircuitBreakerReferer<T> implements Referer<T> {
+
+    private final Referer<T> referer;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerReferer(Referer<T> referer, CircuitBreaker breaker) {
+        this.referer = referer;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response call(Request request) {
+        breaker.beforeCall();
+        final long start = System.currentTimeMillis();
+        Response response;
+        try {
+            response = referer.call(request);
+        } catch (RuntimeException e) {
+            breaker.record(ExceptionUtil.isBizException(e), System.currentTimeMillis() - start);
+            throw e;
+        }
+
+        if (response instanceof ResponseFuture && !((ResponseFuture) response).isDone()) {
+            ((ResponseFuture) response).addListener(new FutureListener() {
+                @Override
+                public void operationComplete(Future future) throws Exception {
+                    if (future.isCancelled() && !ExceptionUtil.isTimeoutException(future.getException())) {
+                        // 被主动取消的请求（如对冲请求落败）不代表节点异常，超时同样是CANCELLED状态，需要记为失败
+                        breaker.ignore();
+                        return;
+                    }
+                    record(future.getException(), start);
+                }
+            });
+        } else {
+            record(response.getException(), start);
+        }
+        return response;
+    }
+
+    private void record(Exception exception, long start) {
+        breaker.record(exception == null || ExceptionUtil.isBizException(exception), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return breaker.isAllowed() && referer.isAvailable();
+    }
+
+    @Override
+    public void destroy() {
+        breaker.release();
+        referer.destroy();
+    }
+
+    @Override
+    public void init() {
+        referer.init();
+    }
+
+    @Override
+    public String desc() {
+        return referer.desc();
+    }
+
+    @Override
+    public Class<T> getInterface() {
+        return referer.getInterface();
+    }
+
+    @Override
+    public URL getUrl() {
+        return referer.getUrl();
+    }
+
+    @Override
+    public int activeRefererCount() {
+        return referer.activeRefererCount();
+    }
+
+    @Override
+    public URL getServiceUrl() {
+        return referer.getServiceUrl();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+}
@@ -19,6 +19,7 @@ package com.weibo.api.motan.cluster.support;
 import com.weibo.api.motan.cluster.Cluster;
 import com.weibo.api.motan.cluster.HaStrategy;
 import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.cluster.scatter.ScatterGather;
 import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.core.extension.SpiMeta;
 import com.weibo.api.motan.exception.MotanAbstractException;
@@ -29,7 +30,9 @@ import com.weibo.api.motan.util.CollectionUtil;
 import com.weibo.api.motan.util.ExceptionUtil;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -51,6 +54,9 @@ public class ClusterSpi<T> implements Cluster<T> {
 
     private URL url;
 
+    // url上没有开启scatterGather的方法时不再逐个请求判断
+    private boolean scatterEnabled;
+
     @Override
     public void init() {
         onRefresh(referers);
@@ -70,6 +76,9 @@ public class ClusterSpi<T> implements Cluster<T> {
     public Response call(Request request) {
         if (available.get()) {
             try {
+                if (scatterEnabled && ScatterGather.isScatterRequest(url, request)) {
+                    return ScatterGather.call(url, request, haStrategy, loadBalance);
+                }
                 return haStrategy.call(request, loadBalance);
             } catch (Exception e) {
                 return callFalse(request, e);
@@ -99,6 +108,7 @@ public class ClusterSpi<T> implements Cluster<T> {
     @Override
     public void setUrl(URL url) {
         this.url = url;
+        this.scatterEnabled = ScatterGather.isScatterEnabled(url);
     }
 
     @Override
@@ -129,9 +139,10 @@ public class ClusterSpi<T> implements Cluster<T> {
         }
 
         List<Referer<T>> delayDestroyReferers = new ArrayList<Referer<T>>();
+        Set<Referer<T>> currentReferers = new HashSet<Referer<T>>(referers);
 
         for (Referer<T> referer : oldReferers) {
-            if (referers.contains(referer)) {
+            if (currentReferers.contains(referer)) {
                 continue;
             }
 
@@ -19,6 +19,7 @@ package com.weibo.api.motan.cluster.support;
 import com.weibo.api.motan.cluster.Cluster;
 import com.weibo.api.motan.cluster.HaStrategy;
 import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.cluster.loadbalance.AbstractLoadBalance;
 import com.weibo.api.motan.common.MotanConstants;
 import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.core.extension.ExtensionLoader;
@@ -30,15 +31,18 @@ import com.weibo.api.motan.registry.Registry;
 import com.weibo.api.motan.registry.RegistryFactory;
 import com.weibo.api.motan.rpc.Protocol;
 import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.SharedParameters;
 import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.CollectionUtil;
 import com.weibo.api.motan.util.LoggerUtil;
 import com.weibo.api.motan.util.StringTools;
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -57,6 +61,9 @@ public class ClusterSupport<T> implements NotifyListener {
     private Class<T> interfaceClass; // 服务接口
     private Protocol protocol;
     private ConcurrentHashMap<URL, List<Referer<T>>> registryReferers = new ConcurrentHashMap<URL, List<Referer<T>>>();
+    private CircuitBreaker.EjectionGroup ejectionGroup; // 开启熔断时，cluster内共享的熔断名额
+    private String weights;          // 最近一次通知的权重信息
+    private SharedParameters clientParameters; // 所有referer共享的client端配置
 
 
     public ClusterSupport(Class<T> interfaceClass, List<URL> registryUrls) {
@@ -68,6 +75,10 @@ public class ClusterSupport<T> implements NotifyListener {
         this.url = URL.valueOf(urlStr);
         // 通过SPI方式获取相应的Protocol对象
         protocol = getDecorateProtocol(url.getProtocol());
+        if (url.getBooleanParameter(URLParamType.circuitBreaker.getName(), URLParamType.circuitBreaker.getBooleanValue())) {
+            ejectionGroup = new CircuitBreaker.EjectionGroup(url.getIntParameter(URLParamType.circuitBreakerMaxEjection.getName(),
+                    URLParamType.circuitBreakerMaxEjection.getIntValue()));
+        }
     }
 
     public void init() {
@@ -145,6 +156,7 @@ public class ClusterSupport<T> implements NotifyListener {
      *      2 notify通知都是全量通知，在设入新的referer后，cluster需要把不再使用的referer进行回收，避免资源泄漏;
      *      3 如果该registry对应的referer数量为0，而没有其他可用的referers，那就忽略该次通知；
      *      4 此处对protoco进行decorator处理，当前为增加filters
+     *      5 已有referer按url建索引复用，节点和权重都没有变化时不刷新cluster
      * </pre>
      */
     @Override
@@ -164,19 +176,24 @@ public class ClusterSupport<T> implements NotifyListener {
         // ////////////////////////////////////////////////////////////////////////////////
 
         // 判断urls中是否包含权重信息，并通知loadbalance。
-        processWeights(urls);
+        boolean weightsChanged = processWeights(urls);
 
-        List<Referer<T>> newReferers = new ArrayList<Referer<T>>();
+        List<Referer<T>> oldReferers = registryReferers.get(registryUrl);
+        Map<URL, Referer<T>> existingReferers = indexReferers(oldReferers);
+        List<Referer<T>> newReferers = new ArrayList<Referer<T>>(urls.size());
+        SharedParameters shared = getClientParameters();
         for (URL u : urls) {
             if (!u.canServe(url)) {
                 continue;
             }
-            Referer<T> referer = getExistingReferer(u, registryReferers.get(registryUrl));
+            Referer<T> referer = existingReferers.get(u);
             if (referer == null) {
                 // careful u: serverURL, refererURL的配置会被serverURL的配置覆盖
-                URL refererURL = u.createCopy();
-                mergeClientConfigs(refererURL);
+                URL refererURL = mergeClientConfigs(u, shared);
                 referer = protocol.refer(interfaceClass, refererURL, u);
+                if (referer != null && ejectionGroup != null) {
+                    referer = new CircuitBreakerReferer<T>(referer, new CircuitBreaker(refererURL, ejectionGroup));
+                }
             }
             if (referer != null) {
                 newReferers.add(referer);
@@ -188,6 +205,12 @@ public class ClusterSupport<T> implements NotifyListener {
             return;
         }
 
+        if (!weightsChanged && newReferers.equals(oldReferers)) {
+            LoggerUtil.info("ClusterSupport notify without change, skip refresh: registry={} service={}", registryUrl.getUri(),
+                    url.getIdentity());
+            return;
+        }
+
         // 此处不销毁referers，由cluster进行销毁
         registryReferers.put(registryUrl, newReferers);
         refreshCluster();
@@ -197,8 +220,9 @@ public class ClusterSupport<T> implements NotifyListener {
      * 检查urls中的第一个url是否为权重信息。 如果是权重信息则把权重信息传递给loadbalance，并移除权重url。
      *
      * @param urls
+     * @return 权重是否变化
      */
-    private void processWeights(List<URL> urls) {
+    private boolean processWeights(List<URL> urls) {
         if (urls != null && !urls.isEmpty()) {
             URL ruleUrl = urls.get(0);
             // 没有权重时需要传递默认值。因为可能是变更时去掉了权重
@@ -207,9 +231,15 @@ public class ClusterSupport<T> implements NotifyListener {
                 weights = ruleUrl.getParameter(URLParamType.weights.getName(), URLParamType.weights.getValue());
                 urls.remove(0);
             }
+            if (weights.equals(this.weights)) {
+                return false;
+            }
             LoggerUtil.info("refresh weight. weight=" + weights);
+            this.weights = weights;
             this.cluster.getLoadBalance().setWeightString(weights);
+            return true;
         }
+        return false;
     }
 
     private void onRegistryEmpty(URL excludeRegistryUrl) {
@@ -233,16 +263,23 @@ public class ClusterSupport<T> implements NotifyListener {
         return decorateProtocol;
     }
 
-    private Referer<T> getExistingReferer(URL url, List<Referer<T>> referers) {
+    /**
+     * 按url和serviceUrl为已有的referer建立索引，避免每个url都遍历referer列表
+     */
+    private Map<URL, Referer<T>> indexReferers(List<Referer<T>> referers) {
         if (referers == null) {
-            return null;
+            return Collections.emptyMap();
         }
+        Map<URL, Referer<T>> index = new HashMap<URL, Referer<T>>(referers.size() * 4);
         for (Referer<T> r : referers) {
-            if (ObjectUtils.equals(url, r.getUrl()) || ObjectUtils.equals(url, r.getServiceUrl())) {
-                return r;
+            if (r.getUrl() != null && !index.containsKey(r.getUrl())) {
+                index.put(r.getUrl(), r);
+            }
+            if (r.getServiceUrl() != null && !index.containsKey(r.getServiceUrl())) {
+                index.put(r.getServiceUrl(), r);
             }
         }
-        return null;
+        return index;
     }
 
     /**
@@ -250,13 +287,27 @@ public class ClusterSupport<T> implements NotifyListener {
      *
      * @param refererURL
      */
-    private void mergeClientConfigs(URL refererURL) {
-        String application = refererURL.getParameter(URLParamType.application.getName(), URLParamType.application.getValue());
-        String module = refererURL.getParameter(URLParamType.module.getName(), URLParamType.module.getValue());
-        refererURL.addParameters(this.url.getParameters());
+    // client端配置覆盖server端配置，application与module保留server端的值。client端配置在referer之间共享，不再逐个复制
+    private URL mergeClientConfigs(URL serviceUrl, SharedParameters shared) {
+        Map<String, String> overrides = new HashMap<String, String>(4);
+        putIfNotEmpty(overrides, URLParamType.application.getName(),
+                serviceUrl.getParameter(URLParamType.application.getName(), URLParamType.application.getValue()));
+        putIfNotEmpty(overrides, URLParamType.module.getName(),
+                serviceUrl.getParameter(URLParamType.module.getName(), URLParamType.module.getValue()));
+        return serviceUrl.createCopy(shared, overrides);
+    }
+
+    private void putIfNotEmpty(Map<String, String> params, String name, String value) {
+        if (StringUtils.isNotEmpty(value)) {
+            params.put(name, value);
+        }
+    }
 
-        refererURL.addParameter(URLParamType.application.getName(), application);
-        refererURL.addParameter(URLParamType.module.getName(), module);
+    private SharedParameters getClientParameters() {
+        if (clientParameters == null || !clientParameters.isSame(url.getParameters())) {
+            clientParameters = new SharedParameters(url.getParameters());
+        }
+        return clientParameters;
     }
 
     private void refreshCluster() {
@@ -264,6 +315,9 @@ public class ClusterSupport<T> implements NotifyListener {
         for (List<Referer<T>> refs : registryReferers.values()) {
             referers.addAll(refs);
         }
+        if (ejectionGroup != null) {
+            ejectionGroup.setSize(referers.size());
+        }
         cluster.onRefresh(referers);
     }
 
@@ -300,6 +354,11 @@ public class ClusterSupport<T> implements NotifyListener {
         cluster = ExtensionLoader.getExtensionLoader(Cluster.class).getExtension(clusterName);
         LoadBalance<T> loadBalance = ExtensionLoader.getExtensionLoader(LoadBalance.class).getExtension(loadbalanceName);
         HaStrategy<T> ha = ExtensionLoader.getExtensionLoader(HaStrategy.class).getExtension(haStrategyName);
+        if (loadBalance instanceof AbstractLoadBalance) {
+            ((AbstractLoadBalance<T>) loadBalance).setSlowStart(
+                    url.getIntParameter(URLParamType.slowStartWindow.getName(), URLParamType.slowStartWindow.getIntValue()),
+                    url.getParameter(URLParamType.slowStartCurve.getName(), URLParamType.slowStartCurve.getValue()));
+        }
         cluster.setLoadBalance(loadBalance);
         cluster.setHaStrategy(ha);
         cluster.setUrl(url);
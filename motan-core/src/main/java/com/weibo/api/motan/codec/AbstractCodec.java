@@ -26,6 +26,7 @@ import java.io.OutputStream;
 
 import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanFrameworkException;
+import com.weibo.api.motan.rpc.Response;
 
 /**
  * @author maijunsheng
@@ -38,10 +39,34 @@ public abstract class AbstractCodec implements Codec {
             output.writeObject(null);
             return;
         }
+        if (message instanceof SerializedValue) {
+            output.writeObject(((SerializedValue) message).getBytes());
+            return;
+        }
 
         output.writeObject(serialize.serialize(message));
     }
 
+    protected String getClassName(Object message) {
+        if (message instanceof SerializedValue) {
+            return ((SerializedValue) message).getClassName();
+        }
+        return message.getClass().getName();
+    }
+
+    /**
+     * response中已有序列化结果时直接使用，避免再次序列化
+     */
+    protected Object getResponseValue(Response response) {
+        if (response instanceof SerializedResponse) {
+            SerializedValue serializedValue = ((SerializedResponse) response).getSerializedValue();
+            if (serializedValue != null) {
+                return serializedValue;
+            }
+        }
+        return response.getValue();
+    }
+
     protected Object deserialize(byte[] value, Class<?> type, Serialization serialize) throws IOException {
         if (value == null) {
             return null;
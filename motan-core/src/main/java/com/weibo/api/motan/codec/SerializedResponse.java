@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.codec;
+
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.util.ReflectUtil;
+
+/**
+ * 
+ * 带有序列化结果的response：codec直接写入序列化好的返回值，其他filter通过getValue()仍然拿到原始的返回对象。
+ * 只有序列化结果时（例如缓存命中），getValue()在第一次调用时才反序列化。
+ *
+ */
+public class SerializedResponse extends DefaultResponse {
+
+    private static final long serialVersionUID = 6263498521783409245L;
+
+    private transient volatile SerializedValue serializedValue;
+    private final transient Serialization serialization;
+    private volatile boolean resolved;
+
+    public SerializedResponse(Object value, SerializedValue serializedValue, long requestId) {
+        super(value, requestId);
+        this.serializedValue = serializedValue;
+        this.serialization = null;
+        this.resolved = true;
+    }
+
+    public SerializedResponse(SerializedValue serializedValue, Serialization serialization, long requestId) {
+        super(null, requestId);
+        this.serializedValue = serializedValue;
+        this.serialization = serialization;
+    }
+
+    /**
+     * 返回值被其他filter替换后为null，codec按原有方式序列化getValue()
+     */
+    public SerializedValue getSerializedValue() {
+        return serializedValue;
+    }
+
+    @Override
+    public Object getValue() {
+        if (!resolved) {
+            resolve();
+        }
+        return super.getValue();
+    }
+
+    @Override
+    public synchronized void setValue(Object value) {
+        // 返回值被替换后序列化结果不再对应
+        serializedValue = null;
+        resolved = true;
+        super.setValue(value);
+    }
+
+    private synchronized void resolve() {
+        if (resolved) {
+            return;
+        }
+        try {
+            super.setValue(serialization.deserialize(serializedValue.getBytes(), ReflectUtil.forName(serializedValue.getClassName())));
+        } catch (Exception e) {
+            throw new MotanServiceException("SerializedResponse deserialize value false, class:" + serializedValue.getClassName(), e);
+        }
+        resolved = true;
+    }
+}
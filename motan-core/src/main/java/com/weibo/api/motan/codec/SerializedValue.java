@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.codec;
+
+/**
+ * 
+ * 已经序列化好的返回值，codec直接写入序列化结果，不再调用Serialization。
+ *
+ */
+public class SerializedValue {
+    private final String className;
+    private final byte[] bytes;
+
+    public SerializedValue(String className, byte[] bytes) {
+        this.className = className;
+        this.bytes = bytes;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
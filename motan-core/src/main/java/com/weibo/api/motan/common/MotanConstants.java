@@ -95,9 +95,11 @@ public class MotanConstants {
     public static final byte NETTY_REQUEST_TYPE = 1;
     public static final byte FLAG_REQUEST = 0x00;
     public static final byte FLAG_RESPONSE = 0x01;
+    public static final byte FLAG_CANCEL = 0x02;
     public static final byte FLAG_RESPONSE_VOID = 0x03;
     public static final byte FLAG_RESPONSE_EXCEPTION = 0x05;
     public static final byte FLAG_RESPONSE_ATTACHMENT = 0x07;
+    public static final byte FLAG_BATCH_REQUEST = 0x08;
     public static final byte FLAG_OTHER = (byte) 0xFF;
     /**
      * heartbeat constants start
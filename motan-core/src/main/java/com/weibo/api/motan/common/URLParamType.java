@@ -114,6 +114,16 @@ public enum URLParamType {
     check("check", "true"), 
     directUrl("directUrl", ""), 
     registrySessionTimeout("registrySessionTimeout", 1 * MotanConstants.MINUTE_MILLS),
+    // 注册中心通知的静默期(ms)，同一订阅在静默期内的连续通知只投递最后一次，0为不合并
+    notifyQuietPeriod("notifyQuietPeriod", 0),
+    // 合并通知时，从第一次通知到投递的最大延迟(ms)
+    notifyMaxDelay("notifyMaxDelay", 1 * MotanConstants.SECOND_MILLS),
+    // 订阅结果本地快照的目录，为空时不保存快照
+    registrySnapshotDir("registrySnapshotDir", ""),
+    // 注册中心（consul）服务和command查询的线程数，所有group共用
+    registryLookupThreads("registryLookupThreads", 8),
+    // 注册中心（consul）共用查询线程时block查询的最长时间，单位秒
+    registryLookupBlockSeconds("registryLookupBlockSeconds", 1),
 
     register("register", true), 
     subscribe("subscribe", true), 
@@ -122,7 +132,88 @@ public enum URLParamType {
     localServiceAddress("localServiceAddress", ""),
 
     // 切换group时，各个group的权重比。默认无权重
-    weights("weights", "");
+    weights("weights", ""),
+
+    // 节点所在的可用区（机房），localFirst负载均衡按 本机-同网段-同可用区-其他 的顺序选择
+    zone("zone", ""),
+    // localFirst负载均衡中，某一层级最空闲节点的并发数达到此值时溢出到下一层级。0为不按并发溢出
+    localFirstOverloadActive("localFirstOverloadActive", 0),
+    // 新加入或恢复可用的referer的预热时间(ms)，期间其被选中的概率从较小比例逐步升至全量。0为不预热
+    slowStartWindow("slowStartWindow", 0),
+    // 预热期间权重的增长曲线：linear 线性增长，exponential 指数增长
+    slowStartCurve("slowStartCurve", "linear"),
+
+    // hedge策略发起对冲请求前的等待时间(ms)，0为使用该方法最近调用的p95，小于0为不对冲
+    hedgeDelay("hedgeDelay", 0),
+    // hedge策略中对冲请求最多占总请求量的百分比
+    hedgeRatio("hedgeRatio", 10),
+
+    // 是否为每个referer开启熔断
+    circuitBreaker("circuitBreaker", false),
+    // 熔断统计的滑动窗口时长(ms)
+    circuitBreakerWindow("circuitBreakerWindow", 10 * MotanConstants.SECOND_MILLS),
+    // 窗口内请求数达到此值才进行熔断判断
+    circuitBreakerMinRequests("circuitBreakerMinRequests", 20),
+    // 窗口内失败请求百分比达到此值时熔断
+    circuitBreakerErrorRate("circuitBreakerErrorRate", 50),
+    // 耗时超过此值(ms)的请求记为慢请求，0为不统计慢请求
+    circuitBreakerSlowCallTime("circuitBreakerSlowCallTime", 0),
+    // 窗口内慢请求百分比达到此值时熔断
+    circuitBreakerSlowCallRate("circuitBreakerSlowCallRate", 50),
+    // 熔断后经过此时长(ms)进入半开状态
+    circuitBreakerOpenTime("circuitBreakerOpenTime", 5 * MotanConstants.SECOND_MILLS),
+    // 半开状态下的探测请求数，全部成功后恢复
+    circuitBreakerProbes("circuitBreakerProbes", 3),
+    // 同一个cluster中最多被熔断摘除的referer百分比
+    circuitBreakerMaxEjection("circuitBreakerMaxEjection", 30),
+
+    // failover重试占正常请求的百分比上限，小于0表示不限制（默认）
+    retryRatio("retryRatio", -1),
+    // failover重试前的退避基准时间(ms)，按重试次数指数增长并随机抖动，0为不退避
+    retryBackoff("retryBackoff", 0),
+    // 请求剩余时间(ms)不超过此值时不再重试，小于0表示不检查剩余时间（默认），超时的请求仍会重试
+    retryMinRemainingTime("retryMinRemainingTime", -1),
+
+    // forking策略同时请求的referer个数，小于2表示该方法不做并行请求
+    forks("forks", 2),
+    // forking策略拿到第一个成功结果后是否cancel其他请求
+    forkCancel("forkCancel", true),
+
+    // 请求剩余的超时时间(ms)，client通过request attachment传给server，server据此丢弃已过期的请求
+    remainingTime("remainingTime", 0),
+    // 请求超时或被cancel时是否通知server取消该请求，需要server端支持cancel消息
+    requestCancel("requestCancel", false),
+    // 同一方法在batchWindow内的请求最多合并batchSize个后作为一个batch请求发送，方法级配置，需要server端支持batch消息
+    batchSize("batchSize", 0),
+    // 合并请求的最长等待时间(ms)
+    batchWindow("batchWindow", 1),
+
+    // client端缓存方法返回值的时间(ms)，方法级配置，0表示不缓存
+    cacheTtl("cacheTtl", 0),
+    // 缓存过期后仍可返回旧值的时间(ms)，期间异步刷新缓存，方法级配置
+    cacheStaleTime("cacheStaleTime", 0),
+    // 每个服务最多缓存的返回值个数
+    cacheSize("cacheSize", 10000),
+    // 是否合并相同的并发请求，需要配置coalesce filter，默认关闭，只对配置了coalesce=true的幂等方法生效
+    coalesce("coalesce", false),
+    // server端缓存方法序列化后返回值的时间(ms)，方法级配置，需要配置serverCache filter
+    serverCacheTtl("serverCacheTtl", 0),
+    // 每个服务缓存序列化后返回值的最大字节数
+    serverCacheSize("serverCacheSize", 64 * 1024 * 1024),
+    // 是否按集合参数拆分到各个节点并行调用后合并结果，方法级配置
+    scatterGather("scatterGather", false),
+    // scatter-gather从集合元素中取路由key的PartitionKey扩展名
+    scatterKey("scatterKey", "identity"),
+    // scatter-gather合并结果的Merger扩展名，为空时按返回类型选择
+    scatterMerger("scatterMerger", ""),
+    // scatter-gather部分节点失败时的处理：failfast直接失败，partial合并成功节点的结果
+    scatterFailPolicy("scatterFailPolicy", "failfast"),
+    // 服务注册前的预热时间(ms)，期间用构造的请求经过codec和filter链调用服务，0为不按时间预热
+    warmupTime("warmupTime", 0),
+    // 服务注册前的预热请求数，与warmupTime都为0时不预热
+    warmupCount("warmupCount", 0),
+    // 方法是否参与预热，方法级配置，只应对无副作用的方法开启
+    warmup("warmup", false);
 
     private String name;
     private String value;
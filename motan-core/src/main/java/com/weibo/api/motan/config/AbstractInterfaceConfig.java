@@ -117,6 +117,9 @@ public class AbstractInterfaceConfig extends AbstractConfig {
 
     protected String codec;
 
+    // 所在的可用区（机房）标识，localFirst负载均衡据此优先选择同可用区的服务
+    protected String zone;
+
     public Integer getRetries() {
         return retries;
     }
@@ -320,6 +323,14 @@ public class AbstractInterfaceConfig extends AbstractConfig {
         this.codec = codec;
     }
 
+    public String getZone() {
+        return zone;
+    }
+
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
     /**
      * 解析registries保存的注册中心的信息，构造成URL列表返回
      * @return
@@ -41,6 +41,12 @@ public abstract class AbstractServiceConfig extends AbstractInterfaceConfig {
     /** 一般不用设置，由服务自己获取，但如果有多个ip，而只想用指定ip，则可以在此处指定 */
     protected String host;
 
+    /** 服务注册前的预热时间(ms)，只调用配置了warmup的方法 */
+    protected Integer warmupTime;
+
+    /** 服务注册前的预热请求数 */
+    protected Integer warmupCount;
+
     public String getExport() {
         return export;
     }
@@ -57,6 +63,22 @@ public abstract class AbstractServiceConfig extends AbstractInterfaceConfig {
         this.host = host;
     }
 
+    public Integer getWarmupTime() {
+        return warmupTime;
+    }
+
+    public void setWarmupTime(Integer warmupTime) {
+        this.warmupTime = warmupTime;
+    }
+
+    public Integer getWarmupCount() {
+        return warmupCount;
+    }
+
+    public void setWarmupCount(Integer warmupCount) {
+        this.warmupCount = warmupCount;
+    }
+
 
 
 }
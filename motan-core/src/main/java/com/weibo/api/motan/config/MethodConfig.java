@@ -33,6 +33,22 @@ public class MethodConfig extends AbstractConfig {
     private Integer actives;
     // 参数类型（逗号分隔）
     private String argumentTypes;
+    // client端缓存返回值的时间(ms)，需要配置cache filter
+    private Integer cacheTtl;
+    // 缓存过期后仍可返回旧值并异步刷新的时间(ms)
+    private Integer cacheStaleTime;
+    // server端缓存序列化后返回值的时间(ms)，只用于幂等方法，需要配置serverCache filter
+    private Integer serverCacheTtl;
+    // 服务注册前是否用构造的请求预热该方法，只应对无副作用的方法开启
+    private Boolean warmup;
+    // forking策略同时请求的referer个数，小于2表示该方法不做并行请求
+    private Integer forks;
+    // forking策略拿到第一个成功结果后是否cancel其他请求
+    private Boolean forkCancel;
+    // hedge策略发起对冲请求前的等待时间(ms)，0为按p95延迟自适应，小于0表示该方法不对冲
+    private Integer hedgeDelay;
+    // 是否合并相同的并发请求，只应对幂等方法开启，需要配置coalesce filter
+    private Boolean coalesce;
 
     @ConfigDesc(excluded = true)
     public String getName() {
@@ -75,4 +91,68 @@ public class MethodConfig extends AbstractConfig {
     public void setArgumentTypes(String argumentTypes) {
         this.argumentTypes = argumentTypes;
     }
+
+    public Integer getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Integer cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public Integer getCacheStaleTime() {
+        return cacheStaleTime;
+    }
+
+    public void setCacheStaleTime(Integer cacheStaleTime) {
+        this.cacheStaleTime = cacheStaleTime;
+    }
+
+    public Integer getServerCacheTtl() {
+        return serverCacheTtl;
+    }
+
+    public void setServerCacheTtl(Integer serverCacheTtl) {
+        this.serverCacheTtl = serverCacheTtl;
+    }
+
+    public Boolean getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Boolean warmup) {
+        this.warmup = warmup;
+    }
+
+    public Integer getForks() {
+        return forks;
+    }
+
+    public void setForks(Integer forks) {
+        this.forks = forks;
+    }
+
+    public Boolean getForkCancel() {
+        return forkCancel;
+    }
+
+    public void setForkCancel(Boolean forkCancel) {
+        this.forkCancel = forkCancel;
+    }
+
+    public Integer getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public void setHedgeDelay(Integer hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    public Boolean getCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(Boolean coalesce) {
+        this.coalesce = coalesce;
+    }
 }
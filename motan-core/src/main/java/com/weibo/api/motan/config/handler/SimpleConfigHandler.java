@@ -26,6 +26,7 @@ import com.weibo.api.motan.exception.MotanErrorMsg;
 import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.protocol.support.ProtocolFilterDecorator;
+import com.weibo.api.motan.protocol.support.ProviderWarmup;
 import com.weibo.api.motan.proxy.ProxyFactory;
 import com.weibo.api.motan.proxy.RefererInvocationHandler;
 import com.weibo.api.motan.registry.Registry;
@@ -68,7 +69,8 @@ public class SimpleConfigHandler implements ConfigHandler {
      *  暴露服务：
      *      1、启动服务器提供通信能力；
      *      2、注册服务URL到服务器的路由表，
-     *      3、注册服务URL到注册中心;
+     *      3、按配置预热服务；
+     *      4、注册服务URL到注册中心;
      *
      * @param interfaceClass 服务接口
      * @param ref            服务实例
@@ -93,6 +95,9 @@ public class SimpleConfigHandler implements ConfigHandler {
         Provider<T> provider = new DefaultProvider<T>(ref, serviceUrl, interfaceClass);
         Exporter<T> exporter = protocol.export(provider, serviceUrl);
 
+        // 注册前预热，避免节点被client发现时还处于冷启动状态
+        ProviderWarmup.warmup(exporter, serviceUrl);
+
         // register service
         register(registryUrls, serviceUrl);
 
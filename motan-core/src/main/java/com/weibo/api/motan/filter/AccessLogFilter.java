@@ -24,6 +24,7 @@ import com.weibo.api.motan.rpc.Caller;
 import com.weibo.api.motan.rpc.Provider;
 import com.weibo.api.motan.rpc.Request;
 import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.LoggerUtil;
 import com.weibo.api.motan.util.NetUtils;
 import com.weibo.api.motan.util.StringTools;
@@ -42,10 +43,15 @@ import com.weibo.api.motan.util.StringTools;
  */
 @SpiMeta(name = "access")
 @Activation(sequence = 100)
-public class AccessLogFilter implements Filter {
+public class AccessLogFilter implements ConditionalFilter {
 
     private String side;
 
+    @Override
+    public boolean isActive(URL url) {
+        return url.getBooleanParameter(URLParamType.accessLog.getName(), URLParamType.accessLog.getBooleanValue());
+    }
+
     @Override
     public Response filter(Caller<?> caller, Request request) {
         boolean needLog = caller.getUrl().getBooleanParameter(URLParamType.accessLog.getName(), URLParamType.accessLog.getBooleanValue());
@@ -25,6 +25,7 @@ import com.weibo.api.motan.rpc.Caller;
 import com.weibo.api.motan.rpc.Request;
 import com.weibo.api.motan.rpc.Response;
 import com.weibo.api.motan.rpc.RpcStats;
+import com.weibo.api.motan.rpc.URL;
 
 /**
  * 
@@ -35,7 +36,13 @@ import com.weibo.api.motan.rpc.RpcStats;
  */
 @SpiMeta(name = "active")
 @Activation(sequence = 1)
-public class ActiveLimitFilter implements Filter {
+public class ActiveLimitFilter implements ConditionalFilter {
+
+    // 统计数据只用于并发数限制，未配置actives时不需要加入调用链
+    @Override
+    public boolean isActive(URL url) {
+        return url.getIntParameter(URLParamType.actives.getName(), URLParamType.actives.getIntValue()) > 0;
+    }
 
     @Override
     public Response filter(Caller<?> caller, Request request) {
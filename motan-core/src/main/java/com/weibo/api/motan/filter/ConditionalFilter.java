@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.filter;
+
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * 
+ * 根据url配置决定是否生效的filter。构建调用链时判断一次，未生效的filter不会加入调用链。
+ *
+ */
+public interface ConditionalFilter extends Filter {
+
+    boolean isActive(URL url);
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.Activation;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.Caller;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Future;
+import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.MethodSettings;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+
+/**
+ * 
+ * 合并相同的并发请求：服务、方法和序列化后的参数都相同的请求在途时，后来的请求直接等待第一个请求的结果，不再重复发送。
+ * 
+ * <pre>
+ * 		1）只合并同步调用，异步调用需要各自的ResponseFuture，直接放行；
+ * 		2）默认不合并，只有配置了coalesce=true的方法才合并，只应对幂等的方法开启；
+ * 		3）重试的请求不合并，避免再次等待已经失败的请求；
+ * 		4）后来的请求拿到的是第一个请求结果的反序列化副本，不与其他请求共享同一个对象。
+ * </pre>
+ *
+ */
+@SpiMeta(name = "coalesce")
+@Activation(sequence = 1, retry = false)
+public class RequestCoalescingFilter implements Filter {
+
+    private static ConcurrentHashMap<RequestKey, InflightCall> inflightCalls = new ConcurrentHashMap<RequestKey, InflightCall>();
+
+    @Override
+    public Response filter(Caller<?> caller, Request request) {
+        Object async = RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX);
+        if (caller instanceof Provider || Boolean.TRUE.equals(async)) {
+            return caller.call(request);
+        }
+        URL url = caller.getUrl();
+        MethodSettings settings = url.getMethodSettings(request.getMethodName(), request.getParamtersDesc());
+        if (!settings.isCoalesce()) {
+            return caller.call(request);
+        }
+        Serialization serialization = getSerialization(url);
+        final RequestKey key = RequestKey.build(MotanFrameworkUtil.getServiceKey(url), request, serialization);
+        if (key == null) {
+            return caller.call(request);
+        }
+
+        final InflightCall call = new InflightCall();
+        InflightCall leader = inflightCalls.putIfAbsent(key, call);
+        if (leader != null) {
+            return follow(caller, leader, request, serialization, settings.getRequestTimeout());
+        }
+
+        // 第一个请求以异步方式发出，拿到ResponseFuture后共享给后来的请求
+        Response response;
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        try {
+            response = caller.call(request);
+        } catch (RuntimeException e) {
+            inflightCalls.remove(key, call);
+            call.complete(null, e);
+            throw e;
+        } finally {
+            RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, async);
+        }
+
+        call.complete(response, null);
+        if (response instanceof ResponseFuture) {
+            ((ResponseFuture) response).addListener(new FutureListener() {
+                @Override
+                public void operationComplete(Future future) throws Exception {
+                    inflightCalls.remove(key, call);
+                }
+            });
+            return new DefaultResponse(response);
+        }
+        inflightCalls.remove(key, call);
+        return response;
+    }
+
+    private Response follow(Caller<?> caller, InflightCall leader, Request request, Serialization serialization, int timeout) {
+        try {
+            if (!leader.ready.await(timeout, TimeUnit.MILLISECONDS)) {
+                throw new MotanServiceException(String.format("RequestCoalescingFilter wait timeout for request:%s, timeout:%s",
+                        request, timeout), MotanErrorMsgConstant.SERVICE_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MotanServiceException(String.format("RequestCoalescingFilter interrupted for request:%s", request), e);
+        }
+        if (leader.exception != null) {
+            throw leader.exception;
+        }
+        if (leader.response == null) {
+            return null;
+        }
+        DefaultResponse response = new DefaultResponse(leader.response);
+        response.setRequestId(request.getRequestId());
+        if (response.getException() != null || response.getValue() == null) {
+            return response;
+        }
+        // 每个请求反序列化出自己的副本，避免调用方修改返回值时互相影响
+        try {
+            Object value = response.getValue();
+            response.setValue(serialization.deserialize(leader.serialize(serialization, value), value.getClass()));
+        } catch (IOException e) {
+            LoggerUtil.warn(String.format("RequestCoalescingFilter copy value false for request:%s error=%s", request, e.getMessage()));
+            return caller.call(request);
+        }
+        return response;
+    }
+
+    private Serialization getSerialization(URL url) {
+        return ExtensionLoader.getExtensionLoader(Serialization.class).getExtension(
+                url.getParameter(URLParamType.serialize.getName(), URLParamType.serialize.getValue()));
+    }
+
+    private static class InflightCall {
+        private final CountDownLatch ready = new CountDownLatch(1);
+        private volatile Response response;
+        private volatile RuntimeException exception;
+        private byte[] bytes;
+
+        void complete(Response response, RuntimeException exception) {
+            this.response = response;
+            this.exception = exception;
+            ready.countDown();
+        }
+
+        synchronized byte[] serialize(Serialization serialization, Object value) throws IOException {
+            if (bytes == null) {
+                bytes = serialization.serialize(value);
+            }
+            return bytes;
+        }
+    }
+}
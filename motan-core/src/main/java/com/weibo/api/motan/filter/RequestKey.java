@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.util.Arrays;
+
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 
+ * 以服务、方法签名和序列化后的参数标识一次请求，参数相同的请求key相同。
+ *
+ */
+class RequestKey {
+    private final String service;
+    private final String method;
+    private final byte[] arguments;
+    private final int hash;
+
+    RequestKey(String service, String method, byte[] arguments) {
+        this.service = service;
+        this.method = method;
+        this.arguments = arguments;
+        this.hash = 31 * (31 * service.hashCode() + method.hashCode()) + Arrays.hashCode(arguments);
+    }
+
+    /**
+     * @return 参数无法序列化时返回null
+     */
+    static RequestKey build(String service, Request request, Serialization serialization) {
+        try {
+            return new RequestKey(service, request.getMethodName() + "(" + request.getParamtersDesc() + ")",
+                    serialization.serialize(request.getArguments()));
+        } catch (Exception e) {
+            LoggerUtil.warn(String.format("RequestKey serialize arguments false for request:%s error=%s", request, e.getMessage()));
+            return null;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) obj;
+        return hash == other.hash && service.equals(other.service) && method.equals(other.method)
+                && Arrays.equals(arguments, other.arguments);
+    }
+}
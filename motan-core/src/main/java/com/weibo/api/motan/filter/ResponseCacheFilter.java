@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.Activation;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.rpc.Caller;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Future;
+import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.MethodSettings;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+import com.weibo.api.motan.util.SegmentedLruCache;
+import com.weibo.api.motan.util.StatisticCallback;
+import com.weibo.api.motan.util.StatsUtil;
+
+/**
+ * 
+ * client端返回值缓存。
+ * 
+ * <pre>
+ * 		1）只对配置了cacheTtl的方法生效，以方法签名和序列化后的参数作为key，只缓存正常返回的结果；
+ * 		   缓存序列化后的返回值，每次命中都反序列化出新的对象；
+ * 		2）配置了cacheStaleTime时，过期后的一段时间内仍返回旧值，同时只发起一次异步请求刷新缓存；
+ * 		3）每个服务最多缓存cacheSize个返回值，按segmented LRU淘汰；
+ * 		4）异步调用需要返回ResponseFuture，不读取缓存，但返回结果会写入缓存。
+ * </pre>
+ *
+ */
+@SpiMeta(name = "cache")
+@Activation(sequence = 0)
+public class ResponseCacheFilter implements Filter {
+
+    private static ConcurrentHashMap<String, ResponseCache> caches = new ConcurrentHashMap<String, ResponseCache>();
+
+    @Override
+    public Response filter(Caller<?> caller, Request request) {
+        if (caller instanceof Provider) {
+            return caller.call(request);
+        }
+        URL url = caller.getUrl();
+        MethodSettings settings = url.getMethodSettings(request.getMethodName(), request.getParamtersDesc());
+        int ttl = settings.getCacheTtl();
+        if (ttl <= 0) {
+            return caller.call(request);
+        }
+        int staleTime = settings.getCacheStaleTime();
+
+        ResponseCache cache = getCache(url);
+        RequestKey key = cache.buildKey(request);
+        if (key == null) {
+            return caller.call(request);
+        }
+
+        if (!Boolean.TRUE.equals(RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX))) {
+            CacheEntry entry = cache.get(key);
+            long now = System.currentTimeMillis();
+            if (entry != null && now < entry.staleTime) {
+                try {
+                    // 缓存的是序列化后的结果，每次命中都反序列化出新的对象，调用方修改返回值不会影响缓存
+                    Object value = cache.read(entry);
+                    if (now < entry.expireTime) {
+                        cache.hitCount.incrementAndGet();
+                    } else {
+                        cache.staleCount.incrementAndGet();
+                        if (entry.refreshing.compareAndSet(false, true)) {
+                            refresh(caller, request, cache, key, entry, ttl, staleTime);
+                        }
+                    }
+                    return new DefaultResponse(value, request.getRequestId());
+                } catch (IOException e) {
+                    LoggerUtil.warn(String.format("ResponseCacheFilter deserialize false for request:%s error=%s", request, e.getMessage()));
+                }
+            }
+            cache.missCount.incrementAndGet();
+        }
+
+        Response response = caller.call(request);
+        store(response, cache, key, null, ttl, staleTime);
+        return response;
+    }
+
+    private void refresh(Caller<?> caller, Request request, ResponseCache cache, RequestKey key, CacheEntry entry, int ttl, int staleTime) {
+        Object async = RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX);
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        try {
+            store(caller.call(request), cache, key, entry, ttl, staleTime);
+        } catch (RuntimeException e) {
+            entry.refreshing.set(false);
+            LoggerUtil.warn(String.format("ResponseCacheFilter refresh false for request:%s error=%s", request, e.getMessage()));
+        } finally {
+            RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, async);
+        }
+    }
+
+    private void store(Response response, final ResponseCache cache, final RequestKey key, final CacheEntry old, final int ttl,
+            final int staleTime) {
+        if (response instanceof ResponseFuture && !((ResponseFuture) response).isDone()) {
+            ((ResponseFuture) response).addListener(new FutureListener() {
+                @Override
+                public void operationComplete(Future future) throws Exception {
+                    if (future.isSuccess()) {
+                        cache.put(key, future.getValue(), ttl, staleTime);
+                    } else if (old != null) {
+                        old.refreshing.set(false);
+                    }
+                }
+            });
+        } else if (response != null && response.getException() == null) {
+            cache.put(key, response.getValue(), ttl, staleTime);
+        } else if (old != null) {
+            old.refreshing.set(false);
+        }
+    }
+
+    private ResponseCache getCache(URL url) {
+        String serviceKey = MotanFrameworkUtil.getServiceKey(url);
+        ResponseCache cache = caches.get(serviceKey);
+        if (cache == null) {
+            cache =
+                    new ResponseCache(serviceKey, url.getIntParameter(URLParamType.cacheSize.getName(),
+                            URLParamType.cacheSize.getIntValue()), ExtensionLoader.getExtensionLoader(Serialization.class).getExtension(
+                            url.getParameter(URLParamType.serialize.getName(), URLParamType.serialize.getValue())));
+            ResponseCache exists = caches.putIfAbsent(serviceKey, cache);
+            if (exists != null) {
+                cache = exists;
+            } else {
+                StatsUtil.registryStatisticCallback(cache);
+            }
+        }
+        return cache;
+    }
+
+    static class ResponseCache implements StatisticCallback {
+        private final String serviceKey;
+        private final SegmentedLruCache<RequestKey, CacheEntry> entries;
+        private final Serialization serialization;
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong staleCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+
+        ResponseCache(String serviceKey, int maxSize, Serialization serialization) {
+            this.serviceKey = serviceKey;
+            this.entries = new SegmentedLruCache<RequestKey, CacheEntry>(maxSize);
+            this.serialization = serialization;
+        }
+
+        RequestKey buildKey(Request request) {
+            return RequestKey.build(serviceKey, request, serialization);
+        }
+
+        CacheEntry get(RequestKey key) {
+            return entries.get(key);
+        }
+
+        void put(RequestKey key, Object value, int ttl, int staleTime) {
+            byte[] bytes = null;
+            if (value != null) {
+                try {
+                    bytes = serialization.serialize(value);
+                } catch (IOException e) {
+                    LoggerUtil.warn(String.format("ResponseCacheFilter serialize false for service:%s error=%s", serviceKey, e.getMessage()));
+                    return;
+                }
+            }
+            long expireTime = System.currentTimeMillis() + ttl;
+            entries.put(key, new CacheEntry(bytes, value == null ? null : value.getClass(), expireTime, expireTime + Math.max(0, staleTime)),
+                    1);
+        }
+
+        Object read(CacheEntry entry) throws IOException {
+            return entry.type == null ? null : serialization.deserialize(entry.value, entry.type);
+        }
+
+        @Override
+        public String statisticCallback() {
+            long hit = hitCount.getAndSet(0);
+            long stale = staleCount.getAndSet(0);
+            long miss = missCount.getAndSet(0);
+            if (hit + stale + miss == 0) {
+                return null;
+            }
+            return String.format("[motan-cache] service: %s size: %s hit: %s stale: %s miss: %s eviction: %s", serviceKey,
+                    entries.size(), hit, stale, miss, entries.getEvictionCount());
+        }
+    }
+
+    static class CacheEntry {
+        // 与codec一致，按返回值的实际类型反序列化
+        private final byte[] value;
+        private final Class<?> type;
+        private final long expireTime;
+        private final long staleTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CacheEntry(byte[] value, Class<?> type, long expireTime, long staleTime) {
+            this.value = value;
+            this.type = type;
+            this.expireTime = expireTime;
+            this.staleTime = staleTime;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.codec.SerializedResponse;
+import com.weibo.api.motan.codec.SerializedValue;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.Activation;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.rpc.Caller;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+import com.weibo.api.motan.util.SegmentedLruCache;
+import com.weibo.api.motan.util.StatisticCallback;
+import com.weibo.api.motan.util.StatsUtil;
+
+/**
+ * 
+ * server端缓存序列化后的返回值，只用于幂等方法。
+ * 
+ * <pre>
+ * 		1）只对配置了serverCacheTtl的方法生效，以方法签名和序列化后的参数作为key；
+ * 		2）命中时不再调用provider，也不再序列化返回值，codec直接写入缓存的序列化结果；
+ * 		   外层filter通过getValue()拿到的仍是返回对象，命中时在第一次getValue()时才反序列化；
+ * 		3）每个服务最多缓存serverCacheSize字节，按segmented LRU淘汰；
+ * 		4）数据变化时通过invalidate清除服务或者某个方法的缓存；
+ * 		5）只用于motan协议，其他协议不经过motan codec，无法识别序列化好的返回值。
+ * </pre>
+ *
+ */
+@SpiMeta(name = "serverCache")
+@Activation(sequence = 110)
+public class ServerResponseCacheFilter implements Filter {
+
+    // 除序列化结果外每个缓存条目大致占用的字节数
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static ConcurrentHashMap<String, ServerResponseCache> caches = new ConcurrentHashMap<String, ServerResponseCache>();
+
+    @Override
+    public Response filter(Caller<?> caller, Request request) {
+        URL url = caller.getUrl();
+        if (!(caller instanceof Provider) || !MotanConstants.PROTOCOL_MOTAN.equals(url.getProtocol())) {
+            return caller.call(request);
+        }
+        int ttl = url.getMethodSettings(request.getMethodName(), request.getParamtersDesc()).getServerCacheTtl();
+        if (ttl <= 0) {
+            return caller.call(request);
+        }
+
+        ServerResponseCache cache = getCache(url);
+        RequestKey key = RequestKey.build(cache.serviceKey, request, cache.serialization);
+        if (key == null) {
+            return caller.call(request);
+        }
+        long generation = cache.getGeneration(request.getMethodName());
+        CacheEntry entry = cache.entries.get(key);
+        if (entry != null && entry.generation == generation && System.currentTimeMillis() < entry.expireTime) {
+            cache.hitCount.incrementAndGet();
+            return new SerializedResponse(entry.value, cache.serialization, request.getRequestId());
+        }
+        cache.missCount.incrementAndGet();
+
+        Response response = caller.call(request);
+        if (response == null || response.getException() != null || response.getValue() == null) {
+            return response;
+        }
+        SerializedValue value = cache.serialize(response.getValue());
+        if (value == null) {
+            return response;
+        }
+        cache.entries.put(key, new CacheEntry(value, generation, System.currentTimeMillis() + ttl), value.getBytes().length
+                + value.getClassName().length() + ENTRY_OVERHEAD);
+
+        SerializedResponse result = new SerializedResponse(response.getValue(), value, response.getRequestId());
+        result.setProcessTime(response.getProcessTime());
+        result.setAttachments(response.getAttachments());
+        return result;
+    }
+
+    /**
+     * 清除服务的所有缓存
+     * 
+     * @param serviceKey group/interface/version，见MotanFrameworkUtil.getServiceKey
+     */
+    public static void invalidate(String serviceKey) {
+        ServerResponseCache cache = caches.get(serviceKey);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * 清除服务某个方法（包括所有重载方法）的缓存，已缓存的数据在下次访问时失效
+     */
+    public static void invalidate(String serviceKey, String methodName) {
+        ServerResponseCache cache = caches.get(serviceKey);
+        if (cache != null) {
+            cache.getGenerationCounter(methodName).incrementAndGet();
+        }
+    }
+
+    public static void invalidateAll() {
+        for (ServerResponseCache cache : caches.values()) {
+            cache.invalidate();
+        }
+    }
+
+    private ServerResponseCache getCache(URL url) {
+        String serviceKey = MotanFrameworkUtil.getServiceKey(url);
+        ServerResponseCache cache = caches.get(serviceKey);
+        if (cache == null) {
+            cache =
+                    new ServerResponseCache(serviceKey, url.getIntParameter(URLParamType.serverCacheSize.getName(),
+                            URLParamType.serverCacheSize.getIntValue()), ExtensionLoader.getExtensionLoader(Serialization.class)
+                            .getExtension(url.getParameter(URLParamType.serialize.getName(), URLParamType.serialize.getValue())));
+            ServerResponseCache exists = caches.putIfAbsent(serviceKey, cache);
+            if (exists != null) {
+                cache = exists;
+            } else {
+                StatsUtil.registryStatisticCallback(cache);
+            }
+        }
+        return cache;
+    }
+
+    static class ServerResponseCache implements StatisticCallback {
+        private final String serviceKey;
+        private final SegmentedLruCache<RequestKey, CacheEntry> entries;
+        private final Serialization serialization;
+        private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+        // 整个服务的版本，与方法版本一起判断缓存是否有效，避免清除前开始的请求在清除后写入旧数据
+        private final AtomicLong serviceGeneration = new AtomicLong();
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+
+        ServerResponseCache(String serviceKey, int maxBytes, Serialization serialization) {
+            this.serviceKey = serviceKey;
+            this.entries = new SegmentedLruCache<RequestKey, CacheEntry>(maxBytes);
+            this.serialization = serialization;
+        }
+
+        SerializedValue serialize(Object value) {
+            try {
+                return new SerializedValue(value.getClass().getName(), serialization.serialize(value));
+            } catch (Exception e) {
+                LoggerUtil.warn(String.format("ServerResponseCacheFilter serialize value false for service:%s error=%s", serviceKey,
+                        e.getMessage()));
+                return null;
+            }
+        }
+
+        // 两个版本都只增不减，和不变即两者都未变化
+        long getGeneration(String methodName) {
+            return serviceGeneration.get() + getGenerationCounter(methodName).get();
+        }
+
+        void invalidate() {
+            serviceGeneration.incrementAndGet();
+            entries.clear();
+        }
+
+        AtomicLong getGenerationCounter(String methodName) {
+            AtomicLong generation = generations.get(methodName);
+            if (generation == null) {
+                generation = new AtomicLong();
+                AtomicLong exists = generations.putIfAbsent(methodName, generation);
+                if (exists != null) {
+                    generation = exists;
+                }
+            }
+            return generation;
+        }
+
+        @Override
+        public String statisticCallback() {
+            long hit = hitCount.getAndSet(0);
+            long miss = missCount.getAndSet(0);
+            if (hit + miss == 0) {
+                return null;
+            }
+            return String.format("[motan-serverCache] service: %s size: %s bytes: %s hit: %s miss: %s eviction: %s", serviceKey,
+                    entries.size(), entries.weight(), hit, miss, entries.getEvictionCount());
+        }
+    }
+
+    static class CacheEntry {
+        private final SerializedValue value;
+        private final long generation;
+        private final long expireTime;
+
+        CacheEntry(SerializedValue value, long generation, long expireTime) {
+            this.value = value;
+            this.generation = generation;
+            this.expireTime = expireTime;
+        }
+    }
+}
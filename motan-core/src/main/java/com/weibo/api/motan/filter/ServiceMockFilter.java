@@ -39,7 +39,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 @SpiMeta(name = "mock")
 @Activation(sequence = 100)
-public class ServiceMockFilter implements Filter {
+public class ServiceMockFilter implements ConditionalFilter {
 
     private static String RETURN_PREFIX = "return";
 
@@ -59,12 +59,21 @@ public class ServiceMockFilter implements Filter {
         return info;
     }
 
+    @Override
+    public boolean isActive(URL url) {
+        return isMock(url.getParameter(URLParamType.mock.getName()));
+    }
+
+    private static boolean isMock(String mockServiceName) {
+        return StringUtils.isNotEmpty(mockServiceName) && !"false".equals(mockServiceName);
+    }
+
     @Override
     public Response filter(Caller<?> caller, Request request) {
 
         // Do nothing when mock is empty.
         String mockServiceName = caller.getUrl().getParameter(URLParamType.mock.getName());
-        if (StringUtils.isEmpty(mockServiceName) || "false".equals(mockServiceName)) {
+        if (!isMock(mockServiceName)) {
             return caller.call(request);
         }
 
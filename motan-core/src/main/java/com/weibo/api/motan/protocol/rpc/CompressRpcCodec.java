@@ -414,15 +414,16 @@ public class CompressRpcCodec extends AbstractCodec {
 
         output.writeLong(value.getProcessTime());
 
+        Object result = value.getException() == null ? getResponseValue(value) : null;
         if (value.getException() != null) {
             output.writeUTF(value.getException().getClass().getName());
             serialize(output, value.getException(), serialization);
             flag = MotanConstants.FLAG_RESPONSE_EXCEPTION;
-        } else if (value.getValue() == null) {
+        } else if (result == null) {
             flag = MotanConstants.FLAG_RESPONSE_VOID;
         } else {
-            output.writeUTF(value.getValue().getClass().getName());
-            serialize(output, value.getValue(), serialization);
+            output.writeUTF(getClassName(result));
+            serialize(output, result, serialization);
             // v2版本可以在response中添加attachment
             Map<String, String> attachments = value.getAttachments();
             if (attachments != null) {
@@ -226,15 +226,16 @@ public class DefaultRpcCodec extends AbstractCodec {
 
         output.writeLong(value.getProcessTime());
 
+        Object result = value.getException() == null ? getResponseValue(value) : null;
         if (value.getException() != null) {
             output.writeUTF(value.getException().getClass().getName());
             serialize(output, value.getException(), serialization);
             flag = MotanConstants.FLAG_RESPONSE_EXCEPTION;
-        } else if (value.getValue() == null) {
+        } else if (result == null) {
             flag = MotanConstants.FLAG_RESPONSE_VOID;
         } else {
-            output.writeUTF(value.getValue().getClass().getName());
-            serialize(output, value.getValue(), serialization);
+            output.writeUTF(getClassName(result));
+            serialize(output, result, serialization);
             flag = MotanConstants.FLAG_RESPONSE;
         }
 
@@ -18,6 +18,7 @@ package com.weibo.api.motan.protocol.support;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -31,6 +32,7 @@ import com.weibo.api.motan.core.extension.SpiMeta;
 import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.filter.AccessLogFilter;
+import com.weibo.api.motan.filter.ConditionalFilter;
 import com.weibo.api.motan.filter.Filter;
 import com.weibo.api.motan.rpc.Exporter;
 import com.weibo.api.motan.rpc.Protocol;
@@ -78,59 +80,7 @@ public class ProtocolFilterDecorator implements Protocol {
         List<Filter> filters = getFilters(url, MotanConstants.NODE_TYPE_REFERER);
         Referer<T> lastRef = referer;
         for (Filter filter : filters) {
-            final Filter f = filter;
-            final Referer<T> lf = lastRef;
-            lastRef = new Referer<T>() {
-                @Override
-                public Response call(Request request) {
-                    Activation activation = f.getClass().getAnnotation(Activation.class);
-                    if (activation != null && !activation.retry() && request.getRetries() != 0) {
-                        return lf.call(request);
-                    }
-                    return f.filter(lf, request);
-                }
-
-                @Override
-                public String desc() {
-                    return lf.desc();
-                }
-
-                @Override
-                public void destroy() {
-                    lf.destroy();
-                }
-
-                @Override
-                public Class<T> getInterface() {
-                    return lf.getInterface();
-                }
-
-                @Override
-                public URL getUrl() {
-                    return lf.getUrl();
-                }
-
-                @Override
-                public void init() {
-                    lf.init();
-                }
-
-                @Override
-                public boolean isAvailable() {
-                    return lf.isAvailable();
-                }
-
-                @Override
-                public int activeRefererCount() {
-                    return lf.activeRefererCount();
-                }
-
-
-                @Override
-                public URL getServiceUrl() {
-                    return lf.getServiceUrl();
-                }
-            };
+            lastRef = new FilterReferer<T>(filter, lastRef);
         }
         return lastRef;
     }
@@ -150,45 +100,7 @@ public class ProtocolFilterDecorator implements Protocol {
         }
         Provider<T> lastProvider = provider;
         for (Filter filter : filters) {
-            final Filter f = filter;
-            final Provider<T> lp = lastProvider;
-            lastProvider = new Provider<T>() {
-                @Override
-                public Response call(Request request) {
-                    // 增加Filter链调用
-                    return f.filter(lp, request);
-                }
-
-                @Override
-                public String desc() {
-                    return lp.desc();
-                }
-
-                @Override
-                public void destroy() {
-                    lp.destroy();
-                }
-
-                @Override
-                public Class<T> getInterface() {
-                    return lp.getInterface();
-                }
-
-                @Override
-                public URL getUrl() {
-                    return lp.getUrl();
-                }
-
-                @Override
-                public void init() {
-                    lp.init();
-                }
-
-                @Override
-                public boolean isAvailable() {
-                    return lp.isAvailable();
-                }
-            };
+            lastProvider = new FilterProvider<T>(filter, lastProvider);
         }
         return lastProvider;
     }
@@ -229,6 +141,15 @@ public class ProtocolFilterDecorator implements Protocol {
             addIfAbsent(filters, AccessLogFilter.class.getAnnotation(SpiMeta.class).name());
         }
 
+        // 调用链按url构建，根据url配置不生效的filter直接去掉
+        Iterator<Filter> iterator = filters.iterator();
+        while (iterator.hasNext()) {
+            Filter filter = iterator.next();
+            if (filter instanceof ConditionalFilter && !((ConditionalFilter) filter).isActive(url)) {
+                iterator.remove();
+            }
+        }
+
         // sort the filters
         Collections.sort(filters, new ActivationComparator<Filter>());
         Collections.reverse(filters);
@@ -257,4 +178,112 @@ public class ProtocolFilterDecorator implements Protocol {
         }
 
     }
+
+    private static class FilterReferer<T> implements Referer<T> {
+        private final Filter filter;
+        private final Referer<T> next;
+        // 重试的请求是否经过该filter，构建时从Activation注解中取出，避免每次调用反射
+        private final boolean retry;
+
+        FilterReferer(Filter filter, Referer<T> next) {
+            this.filter = filter;
+            this.next = next;
+            Activation activation = filter.getClass().getAnnotation(Activation.class);
+            this.retry = activation == null || activation.retry();
+        }
+
+        @Override
+        public Response call(Request request) {
+            if (!retry && request.getRetries() != 0) {
+                return next.call(request);
+            }
+            return filter.filter(next, request);
+        }
+
+        @Override
+        public String desc() {
+            return next.desc();
+        }
+
+        @Override
+        public void destroy() {
+            next.destroy();
+        }
+
+        @Override
+        public Class<T> getInterface() {
+            return next.getInterface();
+        }
+
+        @Override
+        public URL getUrl() {
+            return next.getUrl();
+        }
+
+        @Override
+        public void init() {
+            next.init();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return next.isAvailable();
+        }
+
+        @Override
+        public int activeRefererCount() {
+            return next.activeRefererCount();
+        }
+
+        @Override
+        public URL getServiceUrl() {
+            return next.getServiceUrl();
+        }
+    }
+
+    private static class FilterProvider<T> implements Provider<T> {
+        private final Filter filter;
+        private final Provider<T> next;
+
+        FilterProvider(Filter filter, Provider<T> next) {
+            this.filter = filter;
+            this.next = next;
+        }
+
+        @Override
+        public Response call(Request request) {
+            // 增加Filter链调用
+            return filter.filter(next, request);
+        }
+
+        @Override
+        public String desc() {
+            return next.desc();
+        }
+
+        @Override
+        public void destroy() {
+            next.destroy();
+        }
+
+        @Override
+        public Class<T> getInterface() {
+            return next.getInterface();
+        }
+
+        @Override
+        public URL getUrl() {
+            return next.getUrl();
+        }
+
+        @Override
+        public void init() {
+            next.init();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return next.isAvailable();
+        }
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.protocol.support;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.weibo.api.motan.codec.Codec;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.exception.MotanFrameworkException;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Exporter;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.transport.Channel;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.NetUtils;
+import com.weibo.api.motan.util.ReflectUtil;
+import com.weibo.api.motan.util.RequestIdGenerator;
+
+/**
+ * 服务注册前的预热
+ * 
+ * <pre>
+ * 		1） 在server端口绑定之后、注册到注册中心之前执行，预热结束后节点才会被client发现；
+ * 		2） 只调用方法级配置了 warmup=true 的方法，参数按类型构造（基本类型为默认值，集合/数组为空，其他类型尝试无参构造）；
+ * 		3） 每个请求都经过真实的codec编码解码和provider的filter链，使codec、序列化、filter及业务代码的热点路径提前被JIT编译；
+ * 		4） 达到 warmupTime 或 warmupCount 任一限制后结束，调用异常只记录不影响服务暴露。
+ * </pre>
+ */
+public class ProviderWarmup {
+
+    private static final String WARMUP_REMOTE_IP = "127.0.0.1";
+
+    public static <T> void warmup(Exporter<T> exporter, URL url) {
+        int warmupTime = url.getIntParameter(URLParamType.warmupTime.getName(), URLParamType.warmupTime.getIntValue());
+        int warmupCount = url.getIntParameter(URLParamType.warmupCount.getName(), URLParamType.warmupCount.getIntValue());
+        if ((warmupTime <= 0 && warmupCount <= 0) || MotanConstants.PROTOCOL_INJVM.equals(url.getProtocol())) {
+            return;
+        }
+        Provider<T> provider = exporter.getProvider();
+        List<Request> requests = buildRequests(provider.getInterface(), url);
+        if (requests.isEmpty()) {
+            LoggerUtil.warn("ProviderWarmup skip, no method configured with warmup: url=" + url.getIdentity());
+            return;
+        }
+        Codec codec =
+                ExtensionLoader.getExtensionLoader(Codec.class).getExtension(
+                        url.getParameter(URLParamType.codec.getName(), URLParamType.codec.getValue()));
+        if (codec == null) {
+            LoggerUtil.warn("ProviderWarmup skip, codec not found: url=" + url.getIdentity());
+            return;
+        }
+        Channel channel = new WarmupChannel(url);
+
+        long start = System.currentTimeMillis();
+        long deadline = warmupTime > 0 ? start + warmupTime : Long.MAX_VALUE;
+        int count = 0;
+        int failed = 0;
+        while ((warmupCount <= 0 || count < warmupCount) && System.currentTimeMillis() < deadline) {
+            Request request = requests.get(count % requests.size());
+            count++;
+            try {
+                invoke(codec, channel, provider, request);
+            } catch (Exception e) {
+                if (failed++ == 0) {
+                    LoggerUtil.warn("ProviderWarmup call error: url=" + url.getIdentity() + " method=" + request.getMethodName(), e);
+                }
+            }
+        }
+        LoggerUtil.info("ProviderWarmup finish: url={} count={} failed={} cost={}ms", url.getIdentity(), count, failed,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 模拟一次完整的远程调用：client编码请求 -> server解码请求 -> filter链及服务调用 -> server编码响应 -> client解码响应
+     */
+    static Response invoke(Codec codec, Channel channel, Provider<?> provider, Request request) throws Exception {
+        DefaultRequest copy = new DefaultRequest();
+        copy.setRequestId(RequestIdGenerator.getRequestId());
+        copy.setInterfaceName(request.getInterfaceName());
+        copy.setMethodName(request.getMethodName());
+        copy.setParamtersDesc(request.getParamtersDesc());
+        copy.setArguments(request.getArguments());
+        copy.setAttachments(new HashMap<String, String>(request.getAttachments()));
+        copy.setRpcProtocolVersion(request.getRpcProtocolVersion());
+
+        Object decodedRequest = codec.decode(channel, WARMUP_REMOTE_IP, codec.encode(channel, copy));
+        if (!(decodedRequest instanceof Request)) {
+            throw new MotanFrameworkException("ProviderWarmup decode request error: " + decodedRequest);
+        }
+        Response response = provider.call((Request) decodedRequest);
+        DefaultResponse defaultResponse = new DefaultResponse(response);
+        defaultResponse.setRequestId(copy.getRequestId());
+        defaultResponse.setRpcProtocolVersion(copy.getRpcProtocolVersion());
+        return (Response) codec.decode(channel, WARMUP_REMOTE_IP, codec.encode(channel, defaultResponse));
+    }
+
+    static List<Request> buildRequests(Class<?> interfaceClass, URL url) {
+        if (interfaceClass == null) {
+            return Collections.emptyList();
+        }
+        List<Request> requests = new ArrayList<Request>();
+        Set<String> methodDescs = new HashSet<String>();
+        for (Method method : interfaceClass.getMethods()) {
+            String paramDesc = ReflectUtil.getMethodParamDesc(method);
+            if (!methodDescs.add(ReflectUtil.getMethodDesc(method.getName(), paramDesc))
+                    || !url.getMethodParameter(method.getName(), paramDesc, URLParamType.warmup.getName(),
+                            URLParamType.warmup.getBooleanValue())) {
+                continue;
+            }
+            Class<?>[] paramTypes = method.getParameterTypes();
+            Object[] arguments = new Object[paramTypes.length];
+            for (int i = 0; i < paramTypes.length; i++) {
+                arguments[i] = defaultValue(paramTypes[i]);
+            }
+            DefaultRequest request = new DefaultRequest();
+            request.setInterfaceName(interfaceClass.getName());
+            request.setMethodName(method.getName());
+            request.setParamtersDesc(paramDesc);
+            request.setArguments(arguments);
+            request.setAttachment(URLParamType.group.getName(), url.getGroup());
+            request.setAttachment(URLParamType.version.getName(), url.getVersion());
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type.isPrimitive()) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == char.class) {
+                return (char) 0;
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == short.class) {
+                return (short) 0;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == float.class) {
+                return 0F;
+            }
+            return 0D;
+        }
+        if (type == String.class) {
+            return "";
+        } else if (type == Boolean.class) {
+            return false;
+        } else if (type == Integer.class) {
+            return 0;
+        } else if (type == Long.class) {
+            return 0L;
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        } else if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<Object>();
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return new HashSet<Object>();
+        } else if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<Object, Object>();
+        }
+        try {
+            return type.newInstance();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 预热时codec使用的channel，只提供url
+     */
+    static class WarmupChannel implements Channel {
+        private URL url;
+
+        WarmupChannel(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return new InetSocketAddress(url.getHost(), url.getPort());
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return new InetSocketAddress(NetUtils.LOCALHOST, 0);
+        }
+
+        @Override
+        public Response request(Request request) {
+            throw new MotanFrameworkException("WarmupChannel not support request");
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public void close(int timeout) {}
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+    }
+}
@@ -119,9 +119,6 @@ public class RefererInvocationHandler<T> implements InvocationHandler {
             request.setAttachment(URLParamType.application.getName(), ApplicationInfo.getApplication(cluster.getUrl()).getApplication());
             request.setAttachment(URLParamType.module.getName(), ApplicationInfo.getApplication(cluster.getUrl()).getModule());
             Response response = null;
-            boolean throwException =
-                    Boolean.parseBoolean(cluster.getUrl().getParameter(URLParamType.throwException.getName(),
-                            URLParamType.throwException.getValue()));
             try {
                 response = cluster.call(request);
                 if (async && response instanceof ResponseFuture) {
@@ -141,7 +138,7 @@ public class RefererInvocationHandler<T> implements InvocationHandler {
                                         + ", errmsg:" + t.getMessage());
                         throw new MotanServiceException(msg, MotanErrorMsgConstant.SERVICE_DEFAULT_ERROR);
                     }
-                } else if (!throwException) {
+                } else if (!isThrowException(cluster)) {
                     LoggerUtil.warn("RefererInvocationHandler invoke false, so return default value: uri=" + cluster.getUrl().getUri()
                             + " " + MotanFrameworkUtil.toString(request), e);
                     return getDefaultReturnValue(method.getReturnType());
@@ -158,6 +155,12 @@ public class RefererInvocationHandler<T> implements InvocationHandler {
                 + MotanFrameworkUtil.toString(request), MotanErrorMsgConstant.SERVICE_UNFOUND);
 
     }
+
+    // 只在调用失败时才需要读取
+    private boolean isThrowException(Cluster<T> cluster) {
+        return Boolean.parseBoolean(cluster.getUrl().getParameter(URLParamType.throwException.getName(),
+                URLParamType.throwException.getValue()));
+    }
     
     /**
      * tostring,equals,hashCode,finalize等接口未声明的方法不进行远程调用
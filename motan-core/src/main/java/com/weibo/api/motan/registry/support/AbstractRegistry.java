@@ -49,9 +49,14 @@ public abstract class AbstractRegistry implements Registry {
     private URL registryUrl;
     private Set<URL> registeredServiceUrls = new ConcurrentHashSet<URL>();
     protected String registryClassName = this.getClass().getSimpleName();
+    private NotifyCoalescer notifyCoalescer;
+    // 订阅结果的本地快照，未配置时为null
+    private RegistrySnapshot snapshot;
 
     public AbstractRegistry(URL url) {
         this.registryUrl = url.createCopy();
+        this.notifyCoalescer = new NotifyCoalescer(registryUrl);
+        this.snapshot = RegistrySnapshot.create(registryUrl);
         // register a heartbeat switcher to perceive service state change and change available state
         MotanSwitcherUtil.registerSwitcherListener(MotanConstants.REGISTRY_HEARTBEAT_SWITCHER, new SwitcherListener() {
 
@@ -114,6 +119,7 @@ public abstract class AbstractRegistry implements Registry {
         LoggerUtil.info("[{}] Listener ({}) will unsubscribe from url ({}) in Registry [{}]", registryClassName, listener, url,
                 registryUrl.getIdentity());
         doUnsubscribe(url.createCopy(), listener);
+        notifyCoalescer.cancel(listener);
     }
 
     @SuppressWarnings("unchecked")
@@ -189,6 +195,22 @@ public abstract class AbstractRegistry implements Registry {
         return urls;
     }
 
+    /**
+     * 返回本地快照中的节点，注册中心不可用时兜底使用
+     */
+    protected List<URL> getSnapshotUrls(URL url) {
+        return snapshot == null ? null : snapshot.get(url);
+    }
+
+    /**
+     * 更新订阅对应的本地快照
+     */
+    protected void updateSnapshot(URL refUrl, List<URL> urls) {
+        if (snapshot != null) {
+            snapshot.update(refUrl, urls);
+        }
+    }
+
     protected void notify(URL refUrl, NotifyListener listener, List<URL> urls) {
         if (listener == null || urls == null) {
             return;
@@ -213,9 +235,16 @@ public abstract class AbstractRegistry implements Registry {
         for (String nodeType : nodeTypeUrlsInRs.keySet()) {
             curls.put(nodeType, nodeTypeUrlsInRs.get(nodeType));
         }
+        if (snapshot != null) {
+            List<URL> allUrls = new ArrayList<URL>();
+            for (List<URL> us : curls.values()) {
+                allUrls.addAll(us);
+            }
+            snapshot.update(refUrl, allUrls);
+        }
 
-        for (List<URL> us : nodeTypeUrlsInRs.values()) {
-            listener.notify(getUrl(), us);
+        for (Map.Entry<String, List<URL>> entry : nodeTypeUrlsInRs.entrySet()) {
+            notifyCoalescer.notify(listener, entry.getKey(), entry.getValue());
         }
     }
 
@@ -53,7 +53,8 @@ public abstract class AbstractRegistryFactory implements RegistryFactory {
             if (registry != null) {
                 return registry;
             }
-            registry = createRegistry(url);
+            // 配置了本地快照时先加载快照，实际的注册中心不可用时以快照兜底并在后台重试创建
+            registry = RegistrySnapshot.isEnabled(url) ? new SnapshotRegistry(url, this) : createRegistry(url);
             if (registry == null) {
                 throw new MotanFrameworkException("Create registry false for url:" + url, MotanErrorMsgConstant.FRAMEWORK_INIT_ERROR);
             }
@@ -107,6 +107,14 @@ public abstract class FailbackRegistry extends AbstractRegistry {
             super.subscribe(url, listener);
         } catch (Exception e) {
             List<URL> cachedUrls = getCachedUrls(url);
+            if (cachedUrls == null || cachedUrls.isEmpty()) {
+                // 注册中心不可用时，使用上次保存的快照
+                cachedUrls = getSnapshotUrls(url);
+                if (cachedUrls != null) {
+                    LoggerUtil.warn(String.format("[%s] subscribe %s from %s fail, use %s urls in snapshot", registryClassName, url,
+                            getUrl(), cachedUrls.size()));
+                }
+            }
             if (cachedUrls != null && cachedUrls.size() > 0) {
                 listener.notify(getUrl(), cachedUrls);
             } else if (isCheckingUrls(getUrl(), url)) {
@@ -138,8 +146,12 @@ public abstract class FailbackRegistry extends AbstractRegistry {
         try {
             return super.discover(url);
         } catch (Exception e) {
-            // 如果discover失败，返回一个empty list吧，毕竟是个下行动作，
+            // 如果discover失败，优先返回快照中的节点，没有快照时返回一个empty list吧，毕竟是个下行动作，
             LoggerUtil.warn(String.format("Failed to discover url:%s in registry (%s)", url, getUrl()), e);
+            List<URL> snapshotUrls = getSnapshotUrls(url);
+            if (snapshotUrls != null) {
+                return snapshotUrls;
+            }
             return Collections.EMPTY_LIST;
         }
     }
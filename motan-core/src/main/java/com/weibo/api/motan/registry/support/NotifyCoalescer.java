@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.registry.support;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.DefaultThreadFactory;
+import com.weibo.api.motan.registry.NotifyListener;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.ConcurrentHashSet;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 合并注册中心短时间内的连续通知
+ * 
+ * <pre>
+ * 		1） 同一listener同一类别的通知，在 notifyQuietPeriod 内没有新通知时才投递，且只投递最后一次的结果；
+ * 		2） 从第一次被合并的通知开始，最多延迟 notifyMaxDelay 后投递，避免持续变化时一直不投递；
+ * 		3） 每个listener每个类别的第一次通知直接投递，保证订阅时能同步拿到节点；
+ * 		4） notifyQuietPeriod 为0时不合并，直接投递。
+ * </pre>
+ */
+public class NotifyCoalescer {
+
+    private static ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1, new DefaultThreadFactory(
+            "registryNotifyCoalescer", true));
+
+    private final URL registryUrl;
+    private final long quietPeriod;
+    private final long maxDelay;
+    private final ConcurrentHashMap<NotifyKey, PendingNotify> pendings = new ConcurrentHashMap<NotifyKey, PendingNotify>();
+    private final Set<NotifyKey> notifiedKeys = new ConcurrentHashSet<NotifyKey>();
+
+    public NotifyCoalescer(URL registryUrl) {
+        this.registryUrl = registryUrl;
+        this.quietPeriod = registryUrl.getIntParameter(URLParamType.notifyQuietPeriod.getName(), URLParamType.notifyQuietPeriod.getIntValue());
+        this.maxDelay = Math.max(quietPeriod,
+                registryUrl.getIntParameter(URLParamType.notifyMaxDelay.getName(), URLParamType.notifyMaxDelay.getIntValue()));
+    }
+
+    public void notify(NotifyListener listener, String category, List<URL> urls) {
+        NotifyKey key = new NotifyKey(listener, category);
+        if (quietPeriod <= 0 || notifiedKeys.add(key)) {
+            listener.notify(registryUrl, urls);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (pendings) {
+            PendingNotify pending = pendings.get(key);
+            if (pending != null) {
+                pending.urls = urls;
+                pending.lastTime = now;
+                pending.count++;
+                return;
+            }
+            pending = new PendingNotify(key, urls, now);
+            pendings.put(key, pending);
+            schedule(pending, quietPeriod);
+        }
+    }
+
+    /**
+     * 取消listener未投递的通知，在取消订阅时调用
+     */
+    public void cancel(NotifyListener listener) {
+        synchronized (pendings) {
+            for (NotifyKey key : pendings.keySet()) {
+                if (key.listener == listener) {
+                    pendings.remove(key);
+                }
+            }
+        }
+        for (NotifyKey key : notifiedKeys) {
+            if (key.listener == listener) {
+                notifiedKeys.remove(key);
+            }
+        }
+    }
+
+    private void schedule(final PendingNotify pending, long delay) {
+        scheduledExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deliver(pending);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(PendingNotify pending) {
+        synchronized (pendings) {
+            if (pendings.get(pending.key) != pending) {
+                // 已被取消
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long due = Math.min(pending.firstTime + maxDelay, pending.lastTime + quietPeriod);
+            if (now < due) {
+                schedule(pending, due - now);
+                return;
+            }
+            pendings.remove(pending.key);
+        }
+        if (pending.count > 1) {
+            LoggerUtil.info("NotifyCoalescer merge {} notifies into one: registry={}", pending.count, registryUrl.getIdentity());
+        }
+        try {
+            pending.key.listener.notify(registryUrl, pending.urls);
+        } catch (Exception e) {
+            LoggerUtil.error("NotifyCoalescer notify error: registry=" + registryUrl.getIdentity(), e);
+        }
+    }
+
+    static class NotifyKey {
+        private final NotifyListener listener;
+        private final String category;
+
+        NotifyKey(NotifyListener listener, String category) {
+            this.listener = listener;
+            this.category = category;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(listener) * 31 + (category == null ? 0 : category.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NotifyKey)) {
+                return false;
+            }
+            NotifyKey other = (NotifyKey) obj;
+            return listener == other.listener && (category == null ? other.category == null : category.equals(other.category));
+        }
+    }
+
+    static class PendingNotify {
+        private final NotifyKey key;
+        private final long firstTime;
+        private List<URL> urls;
+        private long lastTime;
+        private int count = 1;
+
+        PendingNotify(NotifyKey key, List<URL> urls, long now) {
+            this.key = key;
+            this.urls = urls;
+            this.firstTime = now;
+            this.lastTime = now;
+        }
+    }
+}
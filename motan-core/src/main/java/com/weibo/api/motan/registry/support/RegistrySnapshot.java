@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.registry.support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.DefaultThreadFactory;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 订阅结果的本地快照
+ * 
+ * <pre>
+ * 		1） 每个注册中心一个快照文件，按订阅（protocol/group/path/version）保存最近一次的服务节点列表；
+ * 		2） 订阅结果变化后延迟合并写盘，先写临时文件再rename，避免进程退出时留下不完整的文件；
+ * 		3） 注册中心初始化时加载，订阅失败（注册中心不可用）时用快照中的节点兜底，注册中心恢复后以实时数据为准。
+ * </pre>
+ */
+public class RegistrySnapshot {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String SUBSCRIBE_PREFIX = "@";
+    private static final String COMMENT_PREFIX = "#";
+    private static final long FLUSH_DELAY = 1 * MotanConstants.SECOND_MILLS;
+
+    private static ScheduledExecutorService flushExecutor = Executors.newScheduledThreadPool(1, new DefaultThreadFactory(
+            "registrySnapshot", true));
+
+    // 快照文件 -> 快照，同一个注册中心的SnapshotRegistry和实际的注册中心共用一份
+    private static ConcurrentHashMap<String, RegistrySnapshot> snapshotsByFile = new ConcurrentHashMap<String, RegistrySnapshot>();
+
+    private final File file;
+    private final ConcurrentHashMap<String, List<URL>> snapshots = new ConcurrentHashMap<String, List<URL>>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    public RegistrySnapshot(File file) {
+        this.file = file;
+        load();
+    }
+
+    public static boolean isEnabled(URL registryUrl) {
+        return StringUtils.isNotBlank(registryUrl.getParameter(URLParamType.registrySnapshotDir.getName(),
+                URLParamType.registrySnapshotDir.getValue()));
+    }
+
+    /**
+     * 根据注册中心url取得快照，同一个快照文件只加载一次，未配置 registrySnapshotDir 时返回null
+     */
+    public static RegistrySnapshot create(URL registryUrl) {
+        if (!isEnabled(registryUrl)) {
+            return null;
+        }
+        String dir = registryUrl.getParameter(URLParamType.registrySnapshotDir.getName(), URLParamType.registrySnapshotDir.getValue());
+        String fileName = registryUrl.getProtocol() + "_" + registryUrl.getHost() + "_" + registryUrl.getPort() + ".snapshot";
+        File file = new File(dir, fileName.replaceAll("[^\\w.\\-]", "_"));
+        String key = file.getAbsolutePath();
+        RegistrySnapshot snapshot = snapshotsByFile.get(key);
+        if (snapshot == null) {
+            snapshotsByFile.putIfAbsent(key, new RegistrySnapshot(file));
+            snapshot = snapshotsByFile.get(key);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 返回快照中订阅对应的节点，没有时返回null
+     */
+    public List<URL> get(URL refUrl) {
+        List<URL> urls = snapshots.get(getSubscribeKey(refUrl));
+        if (urls == null || urls.isEmpty()) {
+            return null;
+        }
+        List<URL> results = new ArrayList<URL>(urls.size());
+        for (URL url : urls) {
+            results.add(url.createCopy());
+        }
+        return results;
+    }
+
+    public void update(URL refUrl, List<URL> urls) {
+        List<URL> copies = new ArrayList<URL>(urls.size());
+        for (URL url : urls) {
+            copies.add(url.createCopy());
+        }
+        List<URL> old = snapshots.put(getSubscribeKey(refUrl), Collections.unmodifiableList(copies));
+        if (copies.equals(old)) {
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushScheduled.set(false);
+                    flush();
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    synchronized void flush() {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("can not create dir " + dir);
+            }
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), CHARSET));
+            try {
+                writer.write(COMMENT_PREFIX + " motan registry snapshot, " + System.currentTimeMillis());
+                writer.newLine();
+                for (Map.Entry<String, List<URL>> entry : snapshots.entrySet()) {
+                    writer.write(SUBSCRIBE_PREFIX + entry.getKey());
+                    writer.newLine();
+                    for (URL url : entry.getValue()) {
+                        writer.write(url.toFullStr());
+                        writer.newLine();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            LoggerUtil.warn("RegistrySnapshot flush fail, file:" + file, e);
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+            String key = null;
+            List<URL> urls = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                if (line.startsWith(SUBSCRIBE_PREFIX)) {
+                    key = line.substring(SUBSCRIBE_PREFIX.length());
+                    urls = new ArrayList<URL>();
+                    snapshots.put(key, urls);
+                } else if (urls != null) {
+                    urls.add(URL.valueOf(line));
+                }
+            }
+            LoggerUtil.info("RegistrySnapshot load " + snapshots.size() + " subscriptions from " + file);
+        } catch (Exception e) {
+            LoggerUtil.warn("RegistrySnapshot load fail, file:" + file, e);
+            snapshots.clear();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static String getSubscribeKey(URL refUrl) {
+        return refUrl.getProtocol() + MotanConstants.PROTOCOL_SEPARATOR
+                + refUrl.getParameter(URLParamType.group.getName(), URLParamType.group.getValue()) + MotanConstants.PATH_SEPARATOR
+                + refUrl.getPath() + MotanConstants.PATH_SEPARATOR
+                + refUrl.getParameter(URLParamType.version.getName(), URLParamType.version.getValue());
+    }
+
+}
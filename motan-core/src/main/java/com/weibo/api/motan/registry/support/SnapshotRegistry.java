@@ -0,0 +1,312 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.registry.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.DefaultThreadFactory;
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
+import com.weibo.api.motan.exception.MotanFrameworkException;
+import com.weibo.api.motan.registry.NotifyListener;
+import com.weibo.api.motan.registry.Registry;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.switcher.SwitcherListener;
+import com.weibo.api.motan.util.ConcurrentHashSet;
+import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanSwitcherUtil;
+
+/**
+ * 
+ * 配置了registrySnapshotDir时由RegistryFactory返回的注册中心，包装实际的注册中心。
+ * 
+ * <pre>
+ * 		1） 先加载本地快照，再创建（连接）实际的注册中心；
+ * 		2） 实际的注册中心无法创建（如连接zookeeper超时）时，订阅立即以快照中的节点通知，注册等操作先记录下来，
+ * 		   并按registryRetryPeriod在后台重试创建；
+ * 		3） 创建成功后把记录的注册、available状态和订阅重放到实际的注册中心，之后的调用直接委托，
+ * 		   订阅的listener会收到实时数据，替换快照中的节点。
+ * </pre>
+ *
+ */
+public class SnapshotRegistry implements Registry {
+
+    private static ScheduledExecutorService connectExecutor = Executors.newScheduledThreadPool(1, new DefaultThreadFactory(
+            "snapshotRegistryConnect", true));
+
+    private final URL url;
+    private final AbstractRegistryFactory factory;
+    private final RegistrySnapshot snapshot;
+    // 实际的注册中心，创建成功前为null
+    private volatile Registry registry;
+    private ScheduledFuture<?> connectFuture;
+
+    // 实际的注册中心创建前记录的操作，创建后重放
+    private final Set<URL> registered = new ConcurrentHashSet<URL>();
+    private final Set<URL> available = new ConcurrentHashSet<URL>();
+    private final ConcurrentHashMap<URL, ConcurrentHashSet<NotifyListener>> subscribed =
+            new ConcurrentHashMap<URL, ConcurrentHashSet<NotifyListener>>();
+
+    public SnapshotRegistry(URL url, AbstractRegistryFactory factory) {
+        this.url = url;
+        this.factory = factory;
+        this.snapshot = RegistrySnapshot.create(url);
+        try {
+            registry = factory.createRegistry(url);
+            if (registry != null) {
+                return;
+            }
+        } catch (Exception e) {
+            LoggerUtil.warn(String.format("[SnapshotRegistry] create registry %s fail, use snapshot until it is available, cause: %s",
+                    url, e.getMessage()));
+        }
+
+        // 实际的注册中心创建前，由此记录心跳开关的变化
+        MotanSwitcherUtil.registerSwitcherListener(MotanConstants.REGISTRY_HEARTBEAT_SWITCHER, new SwitcherListener() {
+            @Override
+            public void onValueChanged(String key, Boolean value) {
+                if (registry == null && key != null && value != null) {
+                    if (value) {
+                        available(null);
+                    } else {
+                        unavailable(null);
+                    }
+                }
+            }
+        });
+        long retryPeriod = url.getIntParameter(URLParamType.registryRetryPeriod.getName(), URLParamType.registryRetryPeriod.getIntValue());
+        connectFuture = connectExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connect();
+            }
+        }, retryPeriod, retryPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 创建实际的注册中心并重放记录的操作，成功时返回true
+     */
+    synchronized boolean connect() {
+        if (registry != null) {
+            return true;
+        }
+        Registry live;
+        try {
+            live = factory.createRegistry(url);
+        } catch (Exception e) {
+            LoggerUtil.warn(String.format("[SnapshotRegistry] retry create registry %s fail, cause: %s", url, e.getMessage()));
+            return false;
+        }
+        if (live == null) {
+            return false;
+        }
+        // 单个操作失败时由实际的注册中心自行重试，不影响切换
+        try {
+            for (URL u : registered) {
+                live.register(u);
+            }
+            for (URL u : available) {
+                live.available(u);
+            }
+            for (Map.Entry<URL, ConcurrentHashSet<NotifyListener>> entry : subscribed.entrySet()) {
+                for (NotifyListener listener : entry.getValue()) {
+                    live.subscribe(entry.getKey(), listener);
+                }
+            }
+        } catch (Exception e) {
+            LoggerUtil.warn(String.format("[SnapshotRegistry] replay to registry %s fail, cause: %s", url, e.getMessage()));
+        }
+        registry = live;
+        registered.clear();
+        available.clear();
+        subscribed.clear();
+        if (connectFuture != null) {
+            connectFuture.cancel(false);
+        }
+        LoggerUtil.info("[SnapshotRegistry] registry " + url + " is available, switch from snapshot to registry");
+        return true;
+    }
+
+    /**
+     * 实际的注册中心，创建成功前返回null
+     */
+    public Registry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public URL getUrl() {
+        return url;
+    }
+
+    @Override
+    public void register(URL url) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    registered.add(url);
+                    return;
+                }
+            }
+        }
+        live.register(url);
+    }
+
+    @Override
+    public void unregister(URL url) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    registered.remove(url);
+                    available.remove(url);
+                    return;
+                }
+            }
+        }
+        live.unregister(url);
+    }
+
+    @Override
+    public void available(URL url) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    if (url == null) {
+                        available.addAll(registered);
+                    } else {
+                        available.add(url);
+                    }
+                    return;
+                }
+            }
+        }
+        live.available(url);
+    }
+
+    @Override
+    public void unavailable(URL url) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    if (url == null) {
+                        available.clear();
+                    } else {
+                        available.remove(url);
+                    }
+                    return;
+                }
+            }
+        }
+        live.unavailable(url);
+    }
+
+    @Override
+    public Collection<URL> getRegisteredServiceUrls() {
+        Registry live = registry;
+        return live == null ? Collections.unmodifiableSet(registered) : live.getRegisteredServiceUrls();
+    }
+
+    @Override
+    public void subscribe(URL url, NotifyListener listener) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    subscribeSnapshot(url, listener);
+                    return;
+                }
+            }
+        }
+        live.subscribe(url, listener);
+    }
+
+    @Override
+    public void unsubscribe(URL url, NotifyListener listener) {
+        Registry live = registry;
+        if (live == null) {
+            synchronized (this) {
+                live = registry;
+                if (live == null) {
+                    Set<NotifyListener> listeners = subscribed.get(url);
+                    if (listeners != null) {
+                        listeners.remove(listener);
+                    }
+                    return;
+                }
+            }
+        }
+        live.unsubscribe(url, listener);
+    }
+
+    @Override
+    public List<URL> discover(URL url) {
+        Registry live = registry;
+        if (live != null) {
+            return live.discover(url);
+        }
+        List<URL> urls = snapshot.get(url);
+        return urls == null ? new ArrayList<URL>() : urls;
+    }
+
+    /**
+     * 记录订阅并立即以快照中的节点通知。没有快照且check=true时抛出异常，与注册中心不可用时的订阅失败一致
+     */
+    private void subscribeSnapshot(URL refUrl, NotifyListener listener) {
+        List<URL> urls = snapshot.get(refUrl);
+        if (urls == null && isChecking(refUrl) && isChecking(url)) {
+            throw new MotanFrameworkException(String.format("[SnapshotRegistry] registry %s is unavailable and no snapshot for %s", url,
+                    refUrl), MotanErrorMsgConstant.FRAMEWORK_INIT_ERROR);
+        }
+        ConcurrentHashSet<NotifyListener> listeners = subscribed.get(refUrl);
+        if (listeners == null) {
+            subscribed.putIfAbsent(refUrl, new ConcurrentHashSet<NotifyListener>());
+            listeners = subscribed.get(refUrl);
+        }
+        listeners.add(listener);
+        if (urls != null) {
+            LoggerUtil.warn(String.format("[SnapshotRegistry] registry %s is unavailable, notify %s urls in snapshot for %s", url,
+                    urls.size(), refUrl));
+            listener.notify(url, urls);
+        }
+    }
+
+    private static boolean isChecking(URL url) {
+        return Boolean.parseBoolean(url.getParameter(URLParamType.check.getName(), URLParamType.check.getValue()));
+    }
+
+}
@@ -128,6 +128,14 @@ public abstract class CommandFailbackRegistry extends FailbackRegistry {
         return commandManagerMap;
     }
 
+    /**
+     * CommandServiceManager直接通知listener，需要经由此处更新本地快照
+     */
+    @Override
+    protected void updateSnapshot(URL refUrl, List<URL> urls) {
+        super.updateSnapshot(refUrl, urls);
+    }
+
     protected abstract void subscribeService(URL url, ServiceListener listener);
 
     protected abstract void subscribeCommand(URL url, CommandListener listener);
@@ -18,19 +18,18 @@ package com.weibo.api.motan.registry.support.command;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.weibo.api.motan.common.MotanConstants;
 import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.registry.NotifyListener;
+import com.weibo.api.motan.registry.support.NotifyCoalescer;
 import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.CollectionUtil;
 import com.weibo.api.motan.util.ConcurrentHashSet;
@@ -43,7 +42,6 @@ import com.weibo.api.motan.util.NetUtils;
 public class CommandServiceManager implements CommandListener, ServiceListener {
 
     public static final String MOTAN_COMMAND_SWITCHER = "feature.motanrpc.command.enable";
-    private static Pattern IP_PATTERN = Pattern.compile("^!?[0-9.]*\\*?$");
 
     static {
         MotanSwitcherUtil.initSwitcher(MOTAN_COMMAND_SWITCHER, true);
@@ -56,7 +54,9 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
     private Map<String, List<URL>> groupServiceCache;
     // command cache
     private String commandStringCache = "";
-    private volatile RpcCommand commandCache;
+    private volatile RpcCommandRouter commandRouter;
+    // 合并短时间内的连续通知
+    private NotifyCoalescer notifyCoalescer;
 
     public CommandServiceManager(URL refUrl) {
         LoggerUtil.info("CommandServiceManager init url:" + refUrl.toFullStr());
@@ -78,18 +78,17 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
         groupServiceCache.put(groupName, urls);
 
         List<URL> finalResult = new ArrayList<URL>();
-        if (commandCache != null) {
+        RpcCommandRouter router = commandRouter;
+        if (router != null) {
             Map<String, Integer> weights = new HashMap<String, Integer>();
-            finalResult = discoverServiceWithCommand(refUrl, weights, commandCache);
+            finalResult = discoverServiceWithRouter(refUrl, weights, router);
         } else {
             LoggerUtil.info("command cache is null. service:" + serviceUrl.toSimpleString());
             // 没有命令时，只返回这个manager实际group对应的结果
             finalResult.addAll(discoverOneGroup(refUrl));
         }
 
-        for (NotifyListener notifyListener : notifySet) {
-            notifyListener.notify(registry.getUrl(), finalResult);
-        }
+        notifyListeners(finalResult);
 
     }
 
@@ -107,13 +106,15 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
 
         if (!StringUtils.equals(commandString, commandStringCache)) {
             commandStringCache = commandString;
-            commandCache = RpcCommandUtil.stringToCommand(commandStringCache);
+            RpcCommand command = RpcCommandUtil.stringToCommand(commandStringCache);
             Map<String, Integer> weights = new HashMap<String, Integer>();
 
-            if (commandCache != null) {
-                commandCache.sort();
-                finalResult = discoverServiceWithCommand(refUrl, weights, commandCache);
+            if (command != null) {
+                command.sort();
+                commandRouter = compileRouter(command);
+                finalResult = discoverServiceWithRouter(refUrl, weights, commandRouter);
             } else {
+                commandRouter = null;
                 // 如果是指令有异常时，应当按没有指令处理，防止错误指令导致服务异常
                 if (StringUtils.isNotBlank(commandString)) {
                     LoggerUtil.warn("command parse fail, ignored! command:" + commandString);
@@ -140,9 +141,7 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
             return;
         }
 
-        for (NotifyListener notifyListener : notifySet) {
-            notifyListener.notify(registry.getUrl(), finalResult);
-        }
+        notifyListeners(finalResult);
 
         // 当指令从有改到无时，会触发取消订阅所有的group，需要重新订阅本组的service
         if ("".equals(commandString)) {
@@ -157,148 +156,47 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
     }
 
     public List<URL> discoverServiceWithCommand(URL serviceUrl, Map<String, Integer> weights, RpcCommand rpcCommand, String localIP) {
-        if (rpcCommand == null || CollectionUtil.isEmpty(rpcCommand.getClientCommandList())) {
+        return discoverServiceWithRouter(serviceUrl, weights, RpcCommandRouter.compile(rpcCommand, serviceUrl.getPath(), localIP));
+    }
+
+    private List<URL> discoverServiceWithRouter(URL serviceUrl, Map<String, Integer> weights, RpcCommandRouter router) {
+        if (!router.isHit()) {
             return discoverOneGroup(serviceUrl);
         }
-
-        List<URL> mergedResult = new LinkedList<URL>();
-        String path = serviceUrl.getPath();
-
-        List<RpcCommand.ClientCommand> clientCommandList = rpcCommand.getClientCommandList();
-        boolean hit = false;
-        for (RpcCommand.ClientCommand command : clientCommandList) {
-            mergedResult = new LinkedList<URL>();
-            // 判断当前url是否符合过滤条件
-            boolean match = RpcCommandUtil.match(command.getPattern(), path);
-            if (match) {
-                hit = true;
-                if (!CollectionUtil.isEmpty(command.getMergeGroups())) {
-                    // 计算出所有要合并的分组及权重
-                    try {
-                        buildWeightsMap(weights, command);
-                    } catch (MotanFrameworkException e) {
-                        LoggerUtil.warn("build weights map fail!" + e.getMessage());
-                        continue;
-                    }
-                    // 根据计算结果，分别发现各个group的service，合并结果
-                    mergedResult.addAll(mergeResult(serviceUrl, weights));
-                } else {
-                    mergedResult.addAll(discoverOneGroup(serviceUrl));
-                }
-
-                LoggerUtil.info("mergedResult: size-" + mergedResult.size() + " --- " + mergedResult.toString());
-
-                if (!CollectionUtil.isEmpty(command.getRouteRules())) {
-                    LoggerUtil.info("router: " + command.getRouteRules().toString());
-
-                    for (String routeRule : command.getRouteRules()) {
-                        String[] fromTo = routeRule.replaceAll("\\s+", "").split("to");
-
-                        if (fromTo.length != 2) {
-                            routeRuleConfigError();
-                            continue;
-                        }
-                        String from = fromTo[0];
-                        String to = fromTo[1];
-                        if (from.length() < 1 || to.length() < 1 || !IP_PATTERN.matcher(from).find() || !IP_PATTERN.matcher(to).find()) {
-                            routeRuleConfigError();
-                            continue;
-                        }
-                        boolean oppositeFrom = from.startsWith("!");
-                        boolean oppositeTo = to.startsWith("!");
-                        if (oppositeFrom) {
-                            from = from.substring(1);
-                        }
-                        if (oppositeTo) {
-                            to = to.substring(1);
-                        }
-                        int idx = from.indexOf('*');
-                        boolean matchFrom;
-                        if (idx != -1) {
-                            matchFrom = localIP.startsWith(from.substring(0, idx));
-                        } else {
-                            matchFrom = localIP.equals(from);
-                        }
-
-                        // 开头有!，取反
-                        if (oppositeFrom) {
-                            matchFrom = !matchFrom;
-                        }
-                        LoggerUtil.info("matchFrom: " + matchFrom + ", localip:" + localIP + ", from:" + from);
-                        if (matchFrom) {
-                            boolean matchTo;
-                            Iterator<URL> iterator = mergedResult.iterator();
-                            while (iterator.hasNext()) {
-                                URL url = iterator.next();
-                                if (url.getProtocol().equalsIgnoreCase("rule")) {
-                                    continue;
-                                }
-                                idx = to.indexOf('*');
-                                if (idx != -1) {
-                                    matchTo = url.getHost().startsWith(to.substring(0, idx));
-                                } else {
-                                    matchTo = url.getHost().equals(to);
-                                }
-                                if (oppositeTo) {
-                                    matchTo = !matchTo;
-                                }
-                                if (!matchTo) {
-                                    iterator.remove();
-                                    LoggerUtil.info("router To not match. url remove : " + url.toSimpleString());
-                                }
-                            }
-                        }
-                    }
-                }
-                // 只取第一个匹配的 TODO 考虑是否能满足绝大多数场景需求
-                break;
-            }
+        weights.putAll(router.getWeights());
+        if (router.isEmptyResult()) {
+            return new ArrayList<URL>();
         }
 
-        List<URL> finalResult = new ArrayList<URL>();
-        if (!hit) {
-            finalResult = discoverOneGroup(serviceUrl);
+        List<URL> mergedResult;
+        if (router.isMergeGroups()) {
+            // 根据计算结果，分别发现各个group的service，合并结果
+            mergedResult = mergeResult(serviceUrl, router);
         } else {
-            finalResult.addAll(mergedResult);
+            mergedResult = discoverOneGroup(serviceUrl);
         }
-        return finalResult;
-    }
-
-    private void buildWeightsMap(Map<String, Integer> weights, RpcCommand.ClientCommand command) {
-        for (String rule : command.getMergeGroups()) {
-            String[] gw = rule.split(":");
-            int weight = 1;
-            if (gw.length > 1) {
-                try {
-                    weight = Integer.parseInt(gw[1]);
-                } catch (NumberFormatException e) {
-                    weightConfigError();
-                }
-                if (weight < 0 || weight > 100) {
-                    weightConfigError();
-                }
-            }
-            weights.put(gw[0], weight);
+        LoggerUtil.info("mergedResult: size-" + mergedResult.size());
+        if (LoggerUtil.isDebugEnabled()) {
+            LoggerUtil.debug("mergedResult: " + mergedResult.toString());
         }
+
+        return new ArrayList<URL>(router.route(mergedResult));
     }
 
-    private List<URL> mergeResult(URL url, Map<String, Integer> weights) {
+    private List<URL> mergeResult(URL url, RpcCommandRouter router) {
         List<URL> finalResult = new ArrayList<URL>();
 
-        if (weights.size() > 1) {
+        if (router.getWeightsString() != null) {
             // 将所有group及权重拼接成一个rule的URL，并作为第一个元素添加到最终结果中
             URL ruleUrl = new URL("rule", url.getHost(), url.getPort(), url.getPath());
-            StringBuilder weightsBuilder = new StringBuilder(64);
-            for (Map.Entry<String, Integer> entry : weights.entrySet()) {
-                weightsBuilder.append(entry.getKey()).append(':').append(entry.getValue()).append(',');
-            }
-            ruleUrl.addParameter(URLParamType.weights.getName(), weightsBuilder.deleteCharAt(weightsBuilder.length() - 1).toString());
+            ruleUrl.addParameter(URLParamType.weights.getName(), router.getWeightsString());
             finalResult.add(ruleUrl);
         }
 
-        for (String key : weights.keySet()) {
-            if (groupServiceCache.containsKey(key)) {
-                finalResult.addAll(groupServiceCache.get(key));
+        for (String key : router.getWeights().keySet()) {
+            List<URL> groupUrls = groupServiceCache.get(key);
+            if (groupUrls != null) {
+                finalResult.addAll(groupUrls);
             } else {
                 URL urlTemp = url.createCopy();
                 urlTemp.addParameter(URLParamType.group.getName(), key);
@@ -322,9 +220,21 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
 
     public void setCommandCache(String command) {
         commandStringCache = command;
-        commandCache = RpcCommandUtil.stringToCommand(commandStringCache);
+        RpcCommand rpcCommand = RpcCommandUtil.stringToCommand(commandStringCache);
+        if (rpcCommand != null) {
+            rpcCommand.sort();
+        }
+        commandRouter = rpcCommand == null ? null : compileRouter(rpcCommand);
         LoggerUtil.info("CommandServiceManager set commandcache. commandstring:" + commandStringCache + ", comandcache "
-                + (commandCache == null ? "is null." : "is not null."));
+                + (rpcCommand == null ? "is null." : "is not null."));
+    }
+
+    /**
+     * 指令变化时编译一次，服务节点变化时直接使用编译后的结果
+     */
+    private RpcCommandRouter compileRouter(RpcCommand command) {
+        String localIP = NetUtils.getLocalAddress().getHostAddress();
+        return RpcCommandRouter.compile(command, refUrl.getPath(), localIP);
     }
 
     public void addNotifyListener(NotifyListener notifyListener) {
@@ -333,18 +243,21 @@ public class CommandServiceManager implements CommandListener, ServiceListener {
 
     public void removeNotifyListener(NotifyListener notifyListener) {
         notifySet.remove(notifyListener);
+        if (notifyCoalescer != null) {
+            notifyCoalescer.cancel(notifyListener);
+        }
     }
 
     public void setRegistry(CommandFailbackRegistry registry) {
         this.registry = registry;
+        this.notifyCoalescer = new NotifyCoalescer(registry.getUrl());
     }
 
-    private void weightConfigError() {
-        throw new MotanFrameworkException("权重比只能是[0,100]间的整数");
-    }
-
-    private void routeRuleConfigError() {
-        LoggerUtil.warn("路由规则配置不合法");
+    private void notifyListeners(List<URL> urls) {
+        registry.updateSnapshot(refUrl, urls);
+        for (NotifyListener notifyListener : notifySet) {
+            notifyCoalescer.notify(notifyListener, MotanConstants.NODE_TYPE_SERVICE, urls);
+        }
     }
 
 }
@@ -0,0 +1,240 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.registry.support.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.weibo.api.motan.exception.MotanFrameworkException;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.CollectionUtil;
+import com.weibo.api.motan.util.LoggerUtil;
+
+/**
+ * 针对某个服务和本机ip预先编译好的指令。
+ * 
+ * <pre>
+ * 		1） 指令变化时编译一次：匹配pattern选出生效的ClientCommand，计算合并分组的权重，解析路由规则；
+ * 		2） 路由规则的from只和本机ip有关，编译时就过滤掉不匹配的规则，只保留需要对节点做过滤的to规则；
+ * 		3） 服务节点变化时只需对节点列表按to规则过滤一遍。
+ * </pre>
+ */
+public class RpcCommandRouter {
+
+    private static Pattern IP_PATTERN = Pattern.compile("^!?[0-9.]*\\*?$");
+
+    // 是否有匹配当前服务的指令
+    private boolean hit;
+    // 生效的指令，匹配的指令都不合法时为null
+    private RpcCommand.ClientCommand command;
+    private Map<String, Integer> weights;
+    private String weightsString;
+    private List<HostRule> hostRules;
+
+    private RpcCommandRouter() {}
+
+    /**
+     * 编译指令
+     * 
+     * @param rpcCommand 已排序的指令
+     * @param path 服务的path
+     * @param localIP 本机ip
+     */
+    public static RpcCommandRouter compile(RpcCommand rpcCommand, String path, String localIP) {
+        RpcCommandRouter router = new RpcCommandRouter();
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        router.hostRules = Collections.emptyList();
+        if (rpcCommand != null && !CollectionUtil.isEmpty(rpcCommand.getClientCommandList())) {
+            for (RpcCommand.ClientCommand clientCommand : rpcCommand.getClientCommandList()) {
+                // 判断当前url是否符合过滤条件
+                if (!RpcCommandUtil.match(clientCommand.getPattern(), path)) {
+                    continue;
+                }
+                router.hit = true;
+                if (!CollectionUtil.isEmpty(clientCommand.getMergeGroups())) {
+                    // 计算出所有要合并的分组及权重
+                    try {
+                        buildWeightsMap(weights, clientCommand);
+                    } catch (MotanFrameworkException e) {
+                        LoggerUtil.warn("build weights map fail!" + e.getMessage());
+                        continue;
+                    }
+                }
+                router.command = clientCommand;
+                router.hostRules = compileRouteRules(clientCommand.getRouteRules(), localIP);
+                // 只取第一个匹配的 TODO 考虑是否能满足绝大多数场景需求
+                break;
+            }
+        }
+        router.weights = Collections.unmodifiableMap(weights);
+        if (weights.size() > 1) {
+            StringBuilder weightsBuilder = new StringBuilder(64);
+            for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+                weightsBuilder.append(entry.getKey()).append(':').append(entry.getValue()).append(',');
+            }
+            router.weightsString = weightsBuilder.deleteCharAt(weightsBuilder.length() - 1).toString();
+        }
+        return router;
+    }
+
+    /**
+     * 是否有匹配当前服务的指令，没有时按无指令处理
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * 是否需要合并多个分组的结果
+     */
+    public boolean isMergeGroups() {
+        return command != null && !CollectionUtil.isEmpty(command.getMergeGroups());
+    }
+
+    /**
+     * 匹配的指令都不合法时，结果为空
+     */
+    public boolean isEmptyResult() {
+        return hit && command == null;
+    }
+
+    /**
+     * 所有要合并的分组及权重
+     */
+    public Map<String, Integer> getWeights() {
+        return weights;
+    }
+
+    /**
+     * 合并多个分组时，rule url中的权重参数，只有一个分组时为null
+     */
+    public String getWeightsString() {
+        return weightsString;
+    }
+
+    /**
+     * 按路由规则过滤服务节点，rule协议的url不过滤
+     */
+    public List<URL> route(List<URL> urls) {
+        if (hostRules.isEmpty()) {
+            return urls;
+        }
+        List<URL> result = new ArrayList<URL>(urls.size());
+        for (URL url : urls) {
+            if (url.getProtocol().equalsIgnoreCase("rule") || accept(url.getHost())) {
+                result.add(url);
+            } else {
+                LoggerUtil.info("router To not match. url remove : " + url.toSimpleString());
+            }
+        }
+        return result;
+    }
+
+    private boolean accept(String host) {
+        for (HostRule rule : hostRules) {
+            if (!rule.match(host)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<HostRule> compileRouteRules(List<String> routeRules, String localIP) {
+        if (CollectionUtil.isEmpty(routeRules)) {
+            return Collections.emptyList();
+        }
+        LoggerUtil.info("router: " + routeRules.toString());
+        List<HostRule> rules = new ArrayList<HostRule>();
+        for (String routeRule : routeRules) {
+            String[] fromTo = routeRule.replaceAll("\\s+", "").split("to");
+
+            if (fromTo.length != 2) {
+                routeRuleConfigError();
+                continue;
+            }
+            String from = fromTo[0];
+            String to = fromTo[1];
+            if (from.length() < 1 || to.length() < 1 || !IP_PATTERN.matcher(from).find() || !IP_PATTERN.matcher(to).find()) {
+                routeRuleConfigError();
+                continue;
+            }
+            HostRule fromRule = new HostRule(from);
+            boolean matchFrom = fromRule.match(localIP);
+            LoggerUtil.info("matchFrom: " + matchFrom + ", localip:" + localIP + ", from:" + fromRule.address);
+            if (matchFrom) {
+                rules.add(new HostRule(to));
+            }
+        }
+        return rules;
+    }
+
+    private static void buildWeightsMap(Map<String, Integer> weights, RpcCommand.ClientCommand command) {
+        for (String rule : command.getMergeGroups()) {
+            String[] gw = rule.split(":");
+            int weight = 1;
+            if (gw.length > 1) {
+                try {
+                    weight = Integer.parseInt(gw[1]);
+                } catch (NumberFormatException e) {
+                    weightConfigError();
+                }
+                if (weight < 0 || weight > 100) {
+                    weightConfigError();
+                }
+            }
+            weights.put(gw[0], weight);
+        }
+    }
+
+    private static void weightConfigError() {
+        throw new MotanFrameworkException("权重比只能是[0,100]间的整数");
+    }
+
+    private static void routeRuleConfigError() {
+        LoggerUtil.warn("路由规则配置不合法");
+    }
+
+    /**
+     * 路由规则中的一个ip条件，支持精确匹配、以*结尾的前缀匹配和以!开头的取反
+     */
+    static class HostRule {
+        private boolean opposite;
+        private boolean prefix;
+        private String address;
+
+        HostRule(String rule) {
+            opposite = rule.startsWith("!");
+            if (opposite) {
+                rule = rule.substring(1);
+            }
+            int idx = rule.indexOf('*');
+            prefix = idx != -1;
+            address = prefix ? rule.substring(0, idx) : rule;
+        }
+
+        boolean match(String host) {
+            boolean match = prefix ? host.startsWith(address) : host.equals(address);
+            // 开头有!，取反
+            return opposite != match;
+        }
+    }
+}
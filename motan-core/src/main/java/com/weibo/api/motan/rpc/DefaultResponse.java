@@ -64,6 +64,7 @@ public class DefaultResponse implements Response, Serializable {
 
     public DefaultResponse(Object value, long requestId) {
         this.value = value;
+        this.requestId = requestId;
     }
 
     public Object getValue() {
@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.rpc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 分层的url参数：url自身的参数优先，其余从共享参数中读取。
+ * 只读访问不会复制共享参数；一旦被修改则展开为普通的HashMap（copy on write），之后与原有行为一致。
+ */
+class LayeredParameters extends AbstractMap<String, String> {
+
+    private final SharedParameters shared;
+
+    // 仅包含不在shared中的参数，以及需要覆盖shared的参数
+    private final Map<String, String> own;
+
+    private final int size;
+
+    // 第一次修改时展开，并发的第一次修改只能展开一次，否则先写入的参数会丢失
+    private volatile Map<String, String> flat;
+
+    LayeredParameters(SharedParameters shared, Map<String, String> base, Map<String, String> overrides) {
+        Map<String, String> sharedParams = shared.getParameters();
+        Map<String, String> ownParams = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : base.entrySet()) {
+            if (!sharedParams.containsKey(entry.getKey())) {
+                ownParams.put(entry.getKey(), entry.getValue());
+            }
+        }
+        ownParams.putAll(overrides);
+        this.shared = shared;
+        this.own = SharedParameters.internCopy(ownParams);
+
+        int count = own.size();
+        for (String key : sharedParams.keySet()) {
+            if (!own.containsKey(key)) {
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * 给定的key是否都从共享参数中读取，此时可以复用共享参数中已解析的数值。
+     */
+    boolean isShared(String key) {
+        return flat == null && !own.containsKey(key);
+    }
+
+    boolean isShared(String key1, String key2) {
+        return flat == null && !own.containsKey(key1) && !own.containsKey(key2);
+    }
+
+    SharedParameters getShared() {
+        return shared;
+    }
+
+    @Override
+    public String get(Object key) {
+        Map<String, String> flat = this.flat;
+        if (flat != null) {
+            return flat.get(key);
+        }
+        String value = own.get(key);
+        if (value != null || own.containsKey(key)) {
+            return value;
+        }
+        return shared.getParameters().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<String, String> flat = this.flat;
+        if (flat != null) {
+            return flat.containsKey(key);
+        }
+        return own.containsKey(key) || shared.getParameters().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        Map<String, String> flat = this.flat;
+        return flat != null ? flat.size() : size;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return flatten().put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        return flatten().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> m) {
+        flatten().putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        flatten().clear();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        Map<String, String> flat = this.flat;
+        if (flat != null) {
+            return flat.entrySet();
+        }
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new LayeredIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Map<String, String> flatten() {
+        Map<String, String> result = flat;
+        if (result == null) {
+            synchronized (this) {
+                result = flat;
+                if (result == null) {
+                    result = new HashMap<String, String>(shared.getParameters());
+                    result.putAll(own);
+                    flat = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private class LayeredIterator implements Iterator<Entry<String, String>> {
+        private final Iterator<Entry<String, String>> ownIterator = own.entrySet().iterator();
+        private final Iterator<Entry<String, String>> sharedIterator = shared.getParameters().entrySet().iterator();
+        private Entry<String, String> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (ownIterator.hasNext()) {
+                next = ownIterator.next();
+                return true;
+            }
+            while (sharedIterator.hasNext()) {
+                Entry<String, String> entry = sharedIterator.next();
+                if (!own.containsKey(entry.getKey())) {
+                    next = entry;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, String> result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove parameters through the map instead");
+        }
+    }
+}
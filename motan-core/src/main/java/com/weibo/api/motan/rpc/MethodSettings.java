@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.rpc;
+
+import com.weibo.api.motan.common.URLParamType;
+
+/**
+ * 解析好的方法级配置（方法配置优先，其次是接口配置），供调用路径直接读取，避免每次请求拼接参数key并查找。
+ * 由{@link URL#getMethodSettings(String, String)}按方法缓存，url参数变化时重新解析。
+ */
+public final class MethodSettings {
+
+    private final int requestTimeout;
+    private final int retries;
+    private final int retryBackoff;
+    private final int retryMinRemainingTime;
+    private final int forks;
+    private final boolean forkCancel;
+    private final int hedgeDelay;
+    private final int batchSize;
+    private final int cacheTtl;
+    private final int cacheStaleTime;
+    private final boolean coalesce;
+    private final int serverCacheTtl;
+    private final boolean scatterGather;
+
+    MethodSettings(URL url, String methodName, String paramDesc) {
+        requestTimeout = url.getMethodParameter(methodName, paramDesc, URLParamType.requestTimeout.getName(),
+                URLParamType.requestTimeout.getIntValue());
+        retries = url.getMethodParameter(methodName, paramDesc, URLParamType.retries.getName(), URLParamType.retries.getIntValue());
+        retryBackoff = url.getMethodParameter(methodName, paramDesc, URLParamType.retryBackoff.getName(),
+                URLParamType.retryBackoff.getIntValue());
+        retryMinRemainingTime = url.getMethodParameter(methodName, paramDesc, URLParamType.retryMinRemainingTime.getName(),
+                URLParamType.retryMinRemainingTime.getIntValue());
+        forks = url.getMethodParameter(methodName, paramDesc, URLParamType.forks.getName(), URLParamType.forks.getIntValue());
+        forkCancel = url.getMethodParameter(methodName, paramDesc, URLParamType.forkCancel.getName(),
+                URLParamType.forkCancel.getBooleanValue());
+        hedgeDelay = url.getMethodParameter(methodName, paramDesc, URLParamType.hedgeDelay.getName(),
+                URLParamType.hedgeDelay.getIntValue());
+        batchSize = url.getMethodParameter(methodName, paramDesc, URLParamType.batchSize.getName(), URLParamType.batchSize.getIntValue());
+        cacheTtl = url.getMethodParameter(methodName, paramDesc, URLParamType.cacheTtl.getName(), URLParamType.cacheTtl.getIntValue());
+        cacheStaleTime = url.getMethodParameter(methodName, paramDesc, URLParamType.cacheStaleTime.getName(),
+                URLParamType.cacheStaleTime.getIntValue());
+        coalesce = url.getMethodParameter(methodName, paramDesc, URLParamType.coalesce.getName(), URLParamType.coalesce.getBooleanValue());
+        serverCacheTtl = url.getMethodParameter(methodName, paramDesc, URLParamType.serverCacheTtl.getName(),
+                URLParamType.serverCacheTtl.getIntValue());
+        scatterGather = url.getMethodParameter(methodName, paramDesc, URLParamType.scatterGather.getName(),
+                URLParamType.scatterGather.getBooleanValue());
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public int getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public int getRetryMinRemainingTime() {
+        return retryMinRemainingTime;
+    }
+
+    public int getForks() {
+        return forks;
+    }
+
+    public boolean isForkCancel() {
+        return forkCancel;
+    }
+
+    public int getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public int getCacheStaleTime() {
+        return cacheStaleTime;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public int getServerCacheTtl() {
+        return serverCacheTtl;
+    }
+
+    public boolean isScatterGather() {
+        return scatterGather;
+    }
+}
@@ -32,6 +32,8 @@ public class RpcContext {
     private Request request;
     private Response response;
     private String clientRequestId = null;
+    private long deadline = 0; // 当前请求的截止时间，0表示没有截止时间
+    private volatile boolean cancelled = false; // client是否已经取消当前请求
 
     private static final ThreadLocal<RpcContext> localContext = new ThreadLocal<RpcContext>() {
         protected RpcContext initialValue() {
@@ -102,6 +104,41 @@ public class RpcContext {
         this.response = response;
     }
 
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * 设置当前请求的截止时间，在此上下文中发起的下游调用会继承剩余的时间
+     * 
+     * @param deadline 截止时间(ms)，0表示没有截止时间
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * 距离截止时间的剩余时间(ms)，没有截止时间时返回Long.MAX_VALUE
+     * 
+     * @return
+     */
+    public long getRemainingTime() {
+        return deadline > 0 ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+    }
+
+    /**
+     * client已经取消了当前请求（超时、cancel等），provider可以据此提前结束处理
+     * 
+     * @return
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
     public String getClientRequestId() {
         return clientRequestId;
     }
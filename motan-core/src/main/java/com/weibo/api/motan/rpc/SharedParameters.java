@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.rpc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多个url共享的只读参数，例如cluster中所有referer共用的client端配置。
+ * 参数的key、value都会被intern，数值类型的解析结果也在所有共享者之间复用。
+ */
+public final class SharedParameters {
+
+    private final Map<String, String> parameters;
+
+    private final Map<String, Number> numbers = new ConcurrentHashMap<String, Number>();
+
+    public SharedParameters(Map<String, String> parameters) {
+        this.parameters = Collections.unmodifiableMap(internCopy(parameters));
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * 判断共享参数是否与给定的参数一致，不一致时需要重新创建。
+     */
+    public boolean isSame(Map<String, String> other) {
+        return parameters.equals(other);
+    }
+
+    Map<String, Number> getNumbers() {
+        return numbers;
+    }
+
+    static Map<String, String> internCopy(Map<String, String> source) {
+        Map<String, String> result = new HashMap<String, String>(Math.max((int) (source.size() / 0.75f) + 1, 16));
+        for (Map.Entry<String, String> entry : source.entrySet()) {
+            result.put(intern(entry.getKey()), intern(entry.getValue()));
+        }
+        return result;
+    }
+
+    static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+}
@@ -61,6 +61,9 @@ public class URL {
 
     private volatile transient Map<String, Number> numbers;
 
+    // methodName -> paramDesc -> MethodSettings
+    private volatile transient ConcurrentHashMap<String, ConcurrentHashMap<String, MethodSettings>> methodSettings;
+
     public URL(String protocol, String host, int port, String path) {
         this(protocol, host, port, path, new HashMap<String, String>());
     }
@@ -154,6 +157,19 @@ public class URL {
         return new URL(protocol, host, port, path, params);
     }
 
+    /**
+     * 以共享参数为底创建url副本，参数的优先级：overrides > shared > 当前url的参数。
+     * 共享参数不会被复制，多个副本共用同一份共享参数及其数值解析结果，副本被修改时才会展开成独立的参数。
+     *
+     * @param shared 共享的只读参数
+     * @param overrides 需要覆盖共享参数的值
+     * @return
+     */
+    public URL createCopy(SharedParameters shared, Map<String, String> overrides) {
+        Map<String, String> base = this.parameters == null ? new HashMap<String, String>() : this.parameters;
+        return new URL(protocol, host, port, path, new LayeredParameters(shared, base, overrides));
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -226,21 +242,55 @@ public class URL {
         return value;
     }
 
+    /**
+     * 获取方法级配置，按方法缓存。通过add/remove方法修改参数后会重新解析，直接修改getParameters()返回的map则不会。
+     *
+     * @param methodName
+     * @param paramDesc
+     * @return
+     */
+    public MethodSettings getMethodSettings(String methodName, String paramDesc) {
+        ConcurrentHashMap<String, ConcurrentHashMap<String, MethodSettings>> all = methodSettings;
+        if (all == null) { // 允许并发重复创建
+            all = new ConcurrentHashMap<String, ConcurrentHashMap<String, MethodSettings>>();
+            methodSettings = all;
+        }
+        ConcurrentHashMap<String, MethodSettings> descSettings = all.get(methodName);
+        if (descSettings == null) {
+            descSettings = new ConcurrentHashMap<String, MethodSettings>();
+            ConcurrentHashMap<String, MethodSettings> old = all.putIfAbsent(methodName, descSettings);
+            if (old != null) {
+                descSettings = old;
+            }
+        }
+        // 与参数key的拼接方式保持一致，null按"null"处理
+        String desc = paramDesc == null ? "null" : paramDesc;
+        MethodSettings settings = descSettings.get(desc);
+        if (settings == null) {
+            settings = new MethodSettings(this, methodName, paramDesc);
+            descSettings.put(desc, settings);
+        }
+        return settings;
+    }
+
     public void addParameter(String name, String value) {
         if (StringUtils.isEmpty(name) || StringUtils.isEmpty(value)) {
             return;
         }
         parameters.put(name, value);
+        clearCaches();
     }
 
     public void removeParameter(String name) {
         if (name != null) {
             parameters.remove(name);
+            clearCaches();
         }
     }
 
     public void addParameters(Map<String, String> params) {
         parameters.putAll(params);
+        clearCaches();
     }
 
     public void addParameterIfAbsent(String name, String value) {
@@ -248,6 +298,7 @@ public class URL {
             return;
         }
         parameters.put(name, value);
+        clearCaches();
     }
 
     public Boolean getBooleanParameter(String name, boolean defaultValue) {
@@ -268,7 +319,8 @@ public class URL {
     }
 
     public Integer getIntParameter(String name, int defaultValue) {
-        Number n = getNumbers().get(name);
+        Map<String, Number> numberCache = getNumbers(name);
+        Number n = numberCache.get(name);
         if (n != null) {
             return n.intValue();
         }
@@ -277,13 +329,14 @@ public class URL {
             return defaultValue;
         }
         int i = Integer.parseInt(value);
-        getNumbers().put(name, i);
+        numberCache.put(name, i);
         return i;
     }
 
     public Integer getMethodParameter(String methodName, String paramDesc, String name, int defaultValue) {
         String key = methodName + "(" + paramDesc + ")." + name;
-        Number n = getNumbers().get(key);
+        Map<String, Number> numberCache = getMethodNumbers(key, name);
+        Number n = numberCache.get(key);
         if (n != null) {
             return n.intValue();
         }
@@ -292,12 +345,13 @@ public class URL {
             return defaultValue;
         }
         int i = Integer.parseInt(value);
-        getNumbers().put(key, i);
+        numberCache.put(key, i);
         return i;
     }
 
     public Long getLongParameter(String name, long defaultValue) {
-        Number n = getNumbers().get(name);
+        Map<String, Number> numberCache = getNumbers(name);
+        Number n = numberCache.get(name);
         if (n != null) {
             return n.longValue();
         }
@@ -306,13 +360,14 @@ public class URL {
             return defaultValue;
         }
         long l = Long.parseLong(value);
-        getNumbers().put(name, l);
+        numberCache.put(name, l);
         return l;
     }
 
     public Long getMethodParameter(String methodName, String paramDesc, String name, long defaultValue) {
         String key = methodName + "(" + paramDesc + ")." + name;
-        Number n = getNumbers().get(key);
+        Map<String, Number> numberCache = getMethodNumbers(key, name);
+        Number n = numberCache.get(key);
         if (n != null) {
             return n.longValue();
         }
@@ -321,12 +376,13 @@ public class URL {
             return defaultValue;
         }
         long l = Long.parseLong(value);
-        getNumbers().put(key, l);
+        numberCache.put(key, l);
         return l;
     }
 
     public Float getFloatParameter(String name, float defaultValue) {
-        Number n = getNumbers().get(name);
+        Map<String, Number> numberCache = getNumbers(name);
+        Number n = numberCache.get(name);
         if (n != null) {
             return n.floatValue();
         }
@@ -335,13 +391,14 @@ public class URL {
             return defaultValue;
         }
         float f = Float.parseFloat(value);
-        getNumbers().put(name, f);
+        numberCache.put(name, f);
         return f;
     }
 
     public Float getMethodParameter(String methodName, String paramDesc, String name, float defaultValue) {
         String key = methodName + "(" + paramDesc + ")." + name;
-        Number n = getNumbers().get(key);
+        Map<String, Number> numberCache = getMethodNumbers(key, name);
+        Number n = numberCache.get(key);
         if (n != null) {
             return n.floatValue();
         }
@@ -350,7 +407,7 @@ public class URL {
             return defaultValue;
         }
         float f = Float.parseFloat(value);
-        getNumbers().put(key, f);
+        numberCache.put(key, f);
         return f;
     }
 
@@ -489,6 +546,28 @@ public class URL {
         }
         return numbers;
     }
+
+    // 参数变化后已解析的数值及方法配置都需要重新解析
+    private void clearCaches() {
+        numbers = null;
+        methodSettings = null;
+    }
+
+    // 参数都来自共享参数时，使用共享的数值缓存
+    private Map<String, Number> getNumbers(String key) {
+        if (parameters instanceof LayeredParameters && ((LayeredParameters) parameters).isShared(key)) {
+            return ((LayeredParameters) parameters).getShared().getNumbers();
+        }
+        return getNumbers();
+    }
+
+    private Map<String, Number> getMethodNumbers(String methodKey, String name) {
+        if (parameters instanceof LayeredParameters
+                && ((LayeredParameters) parameters).isShared(MotanConstants.METHOD_CONFIG_PREFIX + methodKey, name)) {
+            return ((LayeredParameters) parameters).getShared().getNumbers();
+        }
+        return getNumbers();
+    }
     
     /**
      * because async call in client path with Async suffix,we need
@@ -18,6 +18,7 @@ package com.weibo.api.motan.util;
 
 import com.weibo.api.motan.exception.MotanAbstractException;
 import com.weibo.api.motan.exception.MotanBizException;
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 
 /**
  * @author maijunsheng
@@ -51,4 +52,15 @@ public class ExceptionUtil {
     public static boolean isMotanException(Exception e) {
         return e instanceof MotanAbstractException;
     }
+
+    /**
+     * 是否请求超时的异常。超时的future也是CANCELLED状态，需要据此与主动取消区分
+     * 
+     * @param e
+     * @return
+     */
+    public static boolean isTimeoutException(Exception e) {
+        return e instanceof MotanAbstractException
+                && ((MotanAbstractException) e).getErrorCode() == MotanErrorMsgConstant.SERVICE_TIMEOUT.getErrorCode();
+    }
 }
@@ -64,6 +64,26 @@ public class MotanFrameworkUtil {
         return value;
     }
 
+    /**
+     * 根据client传来的剩余时间计算请求在server端的截止时间
+     *
+     * @param request
+     * @param receiveTime server收到请求的时间
+     * @return 截止时间，client没有传剩余时间时返回0
+     */
+    public static long getDeadline(Request request, long receiveTime) {
+        String remaining = getValueFromRequest(request, URLParamType.remainingTime.getName(), null);
+        if (remaining == null) {
+            return 0;
+        }
+        try {
+            long value = Long.parseLong(remaining);
+            return value > 0 ? receiveTime + value : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * 目前根据 group/interface/version 来唯一标示一个服务
      *
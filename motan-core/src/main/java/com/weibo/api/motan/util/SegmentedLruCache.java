@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * 按权重限制容量的segmented LRU缓存。
+ * 
+ * <pre>
+ * 		1）新数据先进入probation段，再次被访问后晋升到protected段（占总容量的80%），
+ * 		   protected段满时把最久未访问的数据降级回probation段，容量不足时从probation段淘汰，
+ * 		   只被访问一次的数据（如批量扫描）不会把热点数据挤出缓存；
+ * 		2）按key的hash分成多个分片，每个分片单独加锁，减少并发竞争；
+ * 		3）权重由调用方给出，可以是条目数（权重为1）或者字节数。
+ * </pre>
+ *
+ */
+public class SegmentedLruCache<K, V> {
+
+    private static final int SHARD_COUNT = 16;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Shard<K, V>[] shards;
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxWeight 缓存的总权重上限
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(long maxWeight) {
+        shards = new Shard[SHARD_COUNT];
+        long shardWeight = Math.max(1, maxWeight / SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard<K, V>(shardWeight, evictionCount);
+        }
+    }
+
+    public V get(K key) {
+        return shardFor(key).get(key);
+    }
+
+    /**
+     * @return 是否放入缓存，权重超过分片容量时不缓存
+     */
+    public boolean put(K key, V value, int weight) {
+        return shardFor(key).put(key, value, weight);
+    }
+
+    public V remove(K key) {
+        return shardFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Shard<K, V> shard : shards) {
+            shard.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard<K, V> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Shard<K, V> shard : shards) {
+            weight += shard.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * 因容量不足被淘汰的数据条数
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private Shard<K, V> shardFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & (SHARD_COUNT - 1)];
+    }
+
+    private static class Node<V> {
+        private final V value;
+        private final int weight;
+
+        Node(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static class Shard<K, V> {
+        private final long maxWeight;
+        private final long maxProtectedWeight;
+        private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<K, Node<V>>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<V>> protectedSegment = new LinkedHashMap<K, Node<V>>(16, 0.75f, true);
+        private long probationWeight;
+        private long protectedWeight;
+        private final AtomicLong evictionCount;
+
+        Shard(long maxWeight, AtomicLong evictionCount) {
+            this.maxWeight = maxWeight;
+            this.evictionCount = evictionCount;
+            this.maxProtectedWeight = maxWeight * PROTECTED_PERCENT / 100;
+        }
+
+        synchronized V get(K key) {
+            Node<V> node = protectedSegment.get(key);
+            if (node != null) {
+                return node.value;
+            }
+            node = probation.remove(key);
+            if (node == null) {
+                return null;
+            }
+            // 再次访问，晋升到protected段
+            probationWeight -= node.weight;
+            protectedSegment.put(key, node);
+            protectedWeight += node.weight;
+            Iterator<Map.Entry<K, Node<V>>> it = protectedSegment.entrySet().iterator();
+            while (protectedWeight > maxProtectedWeight && it.hasNext()) {
+                Map.Entry<K, Node<V>> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                protectedWeight -= eldest.getValue().weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationWeight += eldest.getValue().weight;
+            }
+            return node.value;
+        }
+
+        synchronized boolean put(K key, V value, int weight) {
+            removeNode(key);
+            if (weight > maxWeight) {
+                return false;
+            }
+            probation.put(key, new Node<V>(value, weight));
+            probationWeight += weight;
+            evict();
+            return true;
+        }
+
+        synchronized V remove(K key) {
+            Node<V> node = removeNode(key);
+            return node == null ? null : node.value;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+            probationWeight = 0;
+            protectedWeight = 0;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        private Node<V> removeNode(K key) {
+            Node<V> node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+                return node;
+            }
+            node = protectedSegment.remove(key);
+            if (node != null) {
+                protectedWeight -= node.weight;
+            }
+            return node;
+        }
+
+        private void evict() {
+            while (probationWeight + protectedWeight > maxWeight) {
+                LinkedHashMap<K, Node<V>> segment = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<K, Node<V>>> it = segment.entrySet().iterator();
+                if (!it.hasNext()) {
+                    return;
+                }
+                Map.Entry<K, Node<V>> eldest = it.next();
+                it.remove();
+                if (segment == probation) {
+                    probationWeight -= eldest.getValue().weight;
+                } else {
+                    protectedWeight -= eldest.getValue().weight;
+                }
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+}
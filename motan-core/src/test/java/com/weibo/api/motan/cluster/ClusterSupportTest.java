@@ -175,6 +175,8 @@ public class ClusterSupportTest {
                 Assert.assertTrue(false);
             }
         }
+        // 节点没有变化时不刷新cluster
+        Assert.assertSame(oldReferers, clusterSupport.getCluster().getReferers());
 
     }
 
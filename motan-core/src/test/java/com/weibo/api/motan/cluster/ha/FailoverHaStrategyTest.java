@@ -27,13 +27,16 @@ import com.weibo.api.motan.BaseTestCase;
 import com.weibo.api.motan.cluster.LoadBalance;
 import com.weibo.api.motan.common.MotanConstants;
 import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
 import com.weibo.api.motan.protocol.example.IHello;
 import com.weibo.api.motan.protocol.example.IWorld;
 import com.weibo.api.motan.rpc.DefaultRequest;
 import com.weibo.api.motan.rpc.Referer;
 import com.weibo.api.motan.rpc.Request;
 import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
 import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.NetUtils;
 
@@ -170,4 +173,122 @@ public class FailoverHaStrategyTest extends BaseTestCase {
             Assert.assertTrue(false); // should not run to here
         } catch (Exception e) {}
     }
+
+    public void testRetryBudget() {
+        URL url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.retries.getName(), "1");
+        url.addParameter(URLParamType.retryRatio.getName(), "0");
+        FailingReferer referer = new FailingReferer(url);
+        FailoverHaStrategy<IWorld> strategy = newStrategy(url, referer);
+
+        try {
+            strategy.call(newRequest(), null);
+            fail("Should throw exception before!");
+        } catch (MotanServiceException e) {}
+        assertEquals(1, referer.calls);
+
+        URL unlimitedUrl = url.createCopy();
+        unlimitedUrl.addParameter(URLParamType.retryRatio.getName(), "-1");
+        strategy.setUrl(unlimitedUrl);
+        try {
+            strategy.call(newRequest(), null);
+            fail("Should throw exception before!");
+        } catch (MotanServiceException e) {}
+        assertEquals(3, referer.calls);
+    }
+
+    public void testNoRetryWhenDeadlineShort() {
+        URL url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.retries.getName(), "2");
+        url.addParameter(URLParamType.requestTimeout.getName(), "100");
+        url.addParameter(URLParamType.retryMinRemainingTime.getName(), "100");
+        FailingReferer referer = new FailingReferer(url);
+        FailoverHaStrategy<IWorld> strategy = newStrategy(url, referer);
+
+        try {
+            strategy.call(newRequest(), null);
+            fail("Should throw exception before!");
+        } catch (MotanServiceException e) {}
+        assertEquals(1, referer.calls);
+    }
+
+    public void testNoRetryWhenContextDeadlineShort() {
+        URL url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.retries.getName(), "2");
+        url.addParameter(URLParamType.requestTimeout.getName(), "1000");
+        url.addParameter(URLParamType.retryMinRemainingTime.getName(), "100");
+        FailingReferer referer = new FailingReferer(url);
+        FailoverHaStrategy<IWorld> strategy = newStrategy(url, referer);
+
+        RpcContext.getContext().setDeadline(System.currentTimeMillis() + 50);
+        try {
+            strategy.call(newRequest(), null);
+            fail("Should throw exception before!");
+        } catch (MotanServiceException e) {
+        } finally {
+            RpcContext.destroy();
+        }
+        assertEquals(1, referer.calls);
+    }
+
+    public void testRetryTimeoutByDefault() {
+        URL url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.retries.getName(), "1");
+        url.addParameter(URLParamType.requestTimeout.getName(), "20");
+        FailingReferer referer = new FailingReferer(url);
+        referer.sleep = 30;
+        FailoverHaStrategy<IWorld> strategy = newStrategy(url, referer);
+
+        try {
+            strategy.call(newRequest(), null);
+            fail("Should throw exception before!");
+        } catch (MotanServiceException e) {}
+        assertEquals(2, referer.calls);
+    }
+
+    private FailoverHaStrategy<IWorld> newStrategy(URL url, final Referer<IWorld> referer) {
+        FailoverHaStrategy<IWorld> strategy = new FailoverHaStrategy<IWorld>() {
+            @Override
+            protected List<Referer<IWorld>> selectReferers(Request request, LoadBalance<IWorld> loadBalance) {
+                List<Referer<IWorld>> list = new ArrayList<Referer<IWorld>>();
+                list.add(referer);
+                return list;
+            }
+        };
+        strategy.setUrl(url);
+        return strategy;
+    }
+
+    private DefaultRequest newRequest() {
+        DefaultRequest request = new DefaultRequest();
+        request.setMethodName("world");
+        request.setArguments(new Object[] {});
+        request.setInterfaceName(IWorld.class.getName());
+        request.setParamtersDesc("void");
+        return request;
+    }
+
+    static class FailingReferer extends MockReferer<IWorld> {
+        int calls = 0;
+        int sleep = 0;
+
+        FailingReferer(URL url) {
+            super(url);
+            this.url = url;
+        }
+
+        @Override
+        public Response call(Request request) {
+            calls++;
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new MotanServiceException("mock timeout", MotanErrorMsgConstant.SERVICE_TIMEOUT);
+            }
+            throw new MotanServiceException("mock throw exception when call");
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IWorld;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Forking ha strategy test.
+ */
+public class ForkingHaStrategyTest extends BaseTestCase {
+
+    private ForkingHaStrategy<IWorld> forkingHaStrategy;
+    private List<Referer<IWorld>> referers;
+    private List<FutureReferer> futureReferers;
+    private URL url;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.requestTimeout.getName(), "100");
+        referers = new ArrayList<Referer<IWorld>>();
+        futureReferers = new ArrayList<FutureReferer>();
+        for (int i = 0; i < 3; i++) {
+            FutureReferer referer = new FutureReferer(url);
+            referers.add(referer);
+            futureReferers.add(referer);
+        }
+        forkingHaStrategy = new ForkingHaStrategy<IWorld>() {
+            @Override
+            protected List<Referer<IWorld>> selectReferers(Request request, LoadBalance<IWorld> loadBalance) {
+                return referers;
+            }
+        };
+        forkingHaStrategy.setUrl(url);
+    }
+
+    public void testFirstSuccess() {
+        futureReferers.get(0).future.fail(new MotanServiceException("mock exception"));
+        futureReferers.get(1).future.complete("second");
+        Response response = forkingHaStrategy.call(newRequest(), null);
+        assertEquals("second", response.getValue());
+        assertEquals(0, futureReferers.get(2).calls);
+    }
+
+    public void testCancelOthers() {
+        url.addParameter(URLParamType.forks.getName(), "3");
+        futureReferers.get(2).future.complete("third");
+        Response response = forkingHaStrategy.call(newRequest(), null);
+        assertEquals("third", response.getValue());
+        assertTrue(futureReferers.get(0).future.isCancelled());
+        assertTrue(futureReferers.get(1).future.isCancelled());
+    }
+
+    public void testNoCancel() {
+        url.addParameter(URLParamType.forkCancel.getName(), "false");
+        futureReferers.get(1).future.complete("second");
+        forkingHaStrategy.call(newRequest(), null);
+        assertFalse(futureReferers.get(0).future.isCancelled());
+    }
+
+    public void testAllFailed() {
+        futureReferers.get(0).future.fail(new MotanServiceException("mock exception 0"));
+        futureReferers.get(1).future.fail(new MotanServiceException("mock exception 1"));
+        try {
+            forkingHaStrategy.call(newRequest(), null);
+            fail("Should throw exception");
+        } catch (MotanServiceException e) {
+            assertTrue(e.getMessage().contains("mock exception"));
+        }
+    }
+
+    public void testMethodNotForked() {
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "world(void)." + URLParamType.forks.getName(), "1");
+        Response response = forkingHaStrategy.call(newRequest(), null);
+        assertSame(futureReferers.get(0).future, response);
+        assertEquals(0, futureReferers.get(1).calls);
+    }
+
+    private Request newRequest() {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IWorld.class.getName());
+        request.setMethodName("world");
+        request.setParamtersDesc("void");
+        request.setRequestId(1);
+        return request;
+    }
+
+    static class FutureReferer extends MockReferer<IWorld> {
+        MockResponseFuture future = new MockResponseFuture(1);
+        int calls = 0;
+
+        FutureReferer(URL url) {
+            super(url);
+            this.url = url;
+        }
+
+        @Override
+        public Response call(Request request) {
+            calls++;
+            return future;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IWorld;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Hedging ha strategy test.
+ */
+public class HedgingHaStrategyTest extends BaseTestCase {
+
+    private HedgingHaStrategy<IWorld> hedgingHaStrategy;
+    private List<Referer<IWorld>> referers;
+    private FutureReferer primary;
+    private FutureReferer backup;
+    private URL url;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(URLParamType.hedgeDelay.getName(), "10");
+        url.addParameter(URLParamType.requestTimeout.getName(), "200");
+        primary = new FutureReferer(url);
+        backup = new FutureReferer(url);
+        referers = new ArrayList<Referer<IWorld>>();
+        referers.add(primary);
+        referers.add(backup);
+        hedgingHaStrategy = new HedgingHaStrategy<IWorld>() {
+            @Override
+            protected List<Referer<IWorld>> selectReferers(Request request, LoadBalance<IWorld> loadBalance) {
+                return referers;
+            }
+        };
+        hedgingHaStrategy.setUrl(url);
+    }
+
+    public void testPrimaryFast() {
+        primary.future.complete("primary");
+        Response response = hedgingHaStrategy.call(newRequest(), null);
+        assertEquals("primary", response.getValue());
+        assertEquals(0, backup.calls);
+    }
+
+    public void testHedgeWhenPrimarySlow() {
+        backup.future.complete("backup");
+        Response response = hedgingHaStrategy.call(newRequest(), null);
+        assertEquals("backup", response.getValue());
+        assertEquals(1, backup.calls);
+        assertTrue(primary.future.isCancelled());
+    }
+
+    public void testHedgeWhenPrimaryFailed() {
+        primary.future.fail(new MotanServiceException("mock exception"));
+        backup.future.complete("backup");
+        Response response = hedgingHaStrategy.call(newRequest(), null);
+        assertEquals("backup", response.getValue());
+    }
+
+    public void testNoBudget() {
+        url.addParameter(URLParamType.hedgeRatio.getName(), "0");
+        hedgingHaStrategy.setUrl(url);
+        url.addParameter(URLParamType.requestTimeout.getName(), "50");
+        try {
+            hedgingHaStrategy.call(newRequest(), null);
+            fail("Should throw timeout exception");
+        } catch (MotanServiceException e) {
+            assertEquals(0, backup.calls);
+            // 超时的请求由其自身超时并计入熔断统计，不主动cancel
+            assertFalse(primary.future.isCancelled());
+        }
+    }
+
+    public void testInterruptedCaller() {
+        url.addParameter(URLParamType.requestTimeout.getName(), "2000");
+        Thread.currentThread().interrupt();
+        long start = System.currentTimeMillis();
+        try {
+            hedgingHaStrategy.call(newRequest(), null);
+            fail("Should throw exception when interrupted");
+        } catch (MotanServiceException e) {
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    public void testHedgeDisabled() {
+        url.addParameter(URLParamType.hedgeDelay.getName(), "-1");
+        Response response = hedgingHaStrategy.call(newRequest(), null);
+        assertSame(primary.future, response);
+        assertEquals(0, backup.calls);
+    }
+
+    private Request newRequest() {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IWorld.class.getName());
+        request.setMethodName("world");
+        request.setParamtersDesc("void");
+        request.setRequestId(1);
+        return request;
+    }
+
+    static class FutureReferer extends MockReferer<IWorld> {
+        MockResponseFuture future = new MockResponseFuture(1);
+        int calls = 0;
+
+        FutureReferer(URL url) {
+            super(url);
+            this.url = url;
+        }
+
+        @Override
+        public Response call(Request request) {
+            calls++;
+            return future;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.loadbalance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * LocalFirst loadBalance test
+ */
+public class LocalFirstLoadBalanceTest extends BaseTestCase {
+
+    private LocalFirstLoadBalance<IHello> localFirstLoadBalance = new LocalFirstLoadBalance<IHello>();
+
+    public void testTierOf() {
+        long localIp = LocalFirstLoadBalance.ipToLong("10.1.2.3");
+
+        assertEquals(LocalFirstLoadBalance.TIER_HOST, LocalFirstLoadBalance.tierOf(mockReferer("10.1.2.3", null, null, 0), localIp));
+        assertEquals(LocalFirstLoadBalance.TIER_SUBNET, LocalFirstLoadBalance.tierOf(mockReferer("10.1.2.9", null, null, 0), localIp));
+        assertEquals(LocalFirstLoadBalance.TIER_ZONE, LocalFirstLoadBalance.tierOf(mockReferer("10.9.9.9", "az1", "az1", 0), localIp));
+        assertEquals(LocalFirstLoadBalance.TIER_REMOTE, LocalFirstLoadBalance.tierOf(mockReferer("10.9.9.9", "az1", "az2", 0), localIp));
+        assertEquals(LocalFirstLoadBalance.TIER_REMOTE, LocalFirstLoadBalance.tierOf(mockReferer("10.9.9.9", null, null, 0), localIp));
+    }
+
+    public void testSelectNearestZone() {
+        MockReferer<IHello> remote = mockReferer("203.0.113.1", "az1", "az2", 0);
+        MockReferer<IHello> sameZone = mockReferer("198.51.100.1", "az1", "az1", 5);
+        List<Referer<IHello>> referers = new ArrayList<Referer<IHello>>();
+        referers.add(remote);
+        referers.add(sameZone);
+        localFirstLoadBalance.onRefresh(referers);
+
+        assertSame(sameZone, localFirstLoadBalance.select(new DefaultRequest()));
+
+        sameZone.available = false;
+        assertSame(remote, localFirstLoadBalance.select(new DefaultRequest()));
+    }
+
+    public void testSpillOverWhenOverloaded() {
+        MockReferer<IHello> remote = mockReferer("203.0.113.1", "az1", "az2", 1);
+        MockReferer<IHello> sameZone = mockReferer("198.51.100.1", "az1", "az1", 5);
+        sameZone.url.addParameter(URLParamType.localFirstOverloadActive.getName(), "3");
+        List<Referer<IHello>> referers = new ArrayList<Referer<IHello>>();
+        referers.add(sameZone);
+        referers.add(remote);
+        localFirstLoadBalance.onRefresh(referers);
+
+        assertSame(remote, localFirstLoadBalance.select(new DefaultRequest()));
+
+        // 所有层级都过载时选择并发最低的节点
+        remote.active = 8;
+        assertSame(sameZone, localFirstLoadBalance.select(new DefaultRequest()));
+    }
+
+    public void testSelectToHolder() {
+        List<Referer<IHello>> referers = new ArrayList<Referer<IHello>>();
+        MockReferer<IHello> sameZone = mockReferer("198.51.100.1", "az1", "az1", 3);
+        for (int i = 0; i < 5; i++) {
+            referers.add(mockReferer("203.0.113." + (i + 1), "az1", "az2", i));
+        }
+        referers.add(sameZone);
+        localFirstLoadBalance.onRefresh(referers);
+
+        List<Referer<IHello>> holder = new ArrayList<Referer<IHello>>();
+        localFirstLoadBalance.selectToHolder(new DefaultRequest(), holder);
+        assertEquals(referers.size(), holder.size());
+        assertSame(sameZone, holder.get(0));
+        for (int i = 2; i < holder.size(); i++) {
+            assertTrue(holder.get(i - 1).activeRefererCount() <= holder.get(i).activeRefererCount());
+        }
+    }
+
+    private MockReferer<IHello> mockReferer(String host, String clientZone, String serviceZone, int active) {
+        URL serviceUrl = new URL(MotanConstants.PROTOCOL_MOTAN, host, 8001, IHello.class.getName());
+        serviceUrl.addParameter(URLParamType.zone.getName(), serviceZone);
+        URL url = serviceUrl.createCopy();
+        url.addParameter(URLParamType.zone.getName(), clientZone);
+
+        MockReferer<IHello> referer = new MockReferer<IHello>(serviceUrl);
+        referer.url = url;
+        referer.active = active;
+        return referer;
+    }
+}
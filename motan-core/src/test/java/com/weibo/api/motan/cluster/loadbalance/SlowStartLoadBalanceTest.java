@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.loadbalance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Referer;
+
+/**
+ * Slow start of AbstractLoadBalance test
+ */
+public class SlowStartLoadBalanceTest extends BaseTestCase {
+
+    private static final int SELECT_TIMES = 3000;
+
+    private RandomLoadBalance<IHello> loadBalance = new RandomLoadBalance<IHello>();
+    private MockReferer<IHello> referer1 = new MockReferer<IHello>();
+    private MockReferer<IHello> referer2 = new MockReferer<IHello>();
+    private MockReferer<IHello> referer3 = new MockReferer<IHello>();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        loadBalance.setSlowStart(60000, "linear");
+    }
+
+    public void testSlowStartFactor() {
+        assertEquals(AbstractLoadBalance.SLOW_START_MIN_FACTOR, loadBalance.getSlowStartFactor(0), 0.0001);
+        assertEquals(0.55, loadBalance.getSlowStartFactor(30000), 0.0001);
+        assertEquals(1.0, loadBalance.getSlowStartFactor(60000), 0.0001);
+
+        loadBalance.setSlowStart(60000, "exponential");
+        assertEquals(AbstractLoadBalance.SLOW_START_MIN_FACTOR, loadBalance.getSlowStartFactor(0), 0.0001);
+        assertEquals(Math.sqrt(0.1), loadBalance.getSlowStartFactor(30000), 0.0001);
+        assertEquals(1.0, loadBalance.getSlowStartFactor(60000), 0.0001);
+
+        loadBalance.setSlowStart(0, "linear");
+        assertEquals(1.0, loadBalance.getSlowStartFactor(0), 0.0001);
+    }
+
+    public void testNewReferer() {
+        // 首次refresh的节点不预热
+        loadBalance.onRefresh(referers(referer1, referer2));
+        int count = countSelected(referer2);
+        assertTrue(count > SELECT_TIMES / 4);
+
+        loadBalance.onRefresh(referers(referer1, referer2, referer3));
+        count = countSelected(referer3);
+        assertTrue("new referer selected " + count, count < SELECT_TIMES / 10);
+
+        // 关闭预热后新节点立即承接流量
+        loadBalance.setSlowStart(0, "linear");
+        loadBalance.onRefresh(referers(referer1, referer2, referer3));
+        count = countSelected(referer3);
+        assertTrue(count > SELECT_TIMES / 5);
+    }
+
+    public void testRecoverReferer() {
+        loadBalance.onRefresh(referers(referer1, referer2, referer3));
+        referer3.available = false;
+        countSelected(referer3);
+
+        referer3.available = true;
+        int count = countSelected(referer3);
+        assertTrue("recovered referer selected " + count, count < SELECT_TIMES / 10);
+    }
+
+    public void testOnlyWarmingAvailable() {
+        loadBalance.onRefresh(referers(referer1, referer2));
+        loadBalance.onRefresh(referers(referer1, referer2, referer3));
+        referer1.available = false;
+        referer2.available = false;
+        for (int i = 0; i < 100; i++) {
+            assertSame(referer3, loadBalance.select(new DefaultRequest()));
+            List<Referer<IHello>> holder = new ArrayList<Referer<IHello>>();
+            loadBalance.selectToHolder(new DefaultRequest(), holder);
+            assertEquals(Arrays.asList(referer3), holder);
+        }
+    }
+
+    private int countSelected(Referer<IHello> referer) {
+        int count = 0;
+        for (int i = 0; i < SELECT_TIMES; i++) {
+            if (loadBalance.select(new DefaultRequest()) == referer) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<Referer<IHello>> referers(Referer<IHello>... referers) {
+        return new ArrayList<Referer<IHello>>(Arrays.asList(referers));
+    }
+}
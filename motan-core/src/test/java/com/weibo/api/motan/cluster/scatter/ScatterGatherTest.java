@@ -0,0 +1,229 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.scatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.cluster.HaStrategy;
+import com.weibo.api.motan.cluster.LoadBalance;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IWorld;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Scatter-gather test.
+ */
+public class ScatterGatherTest extends BaseTestCase {
+
+    private URL url;
+    private List<ShardReferer> referers;
+    private LoadBalance<IWorld> loadBalance;
+    private HaStrategy<IWorld> haStrategy;
+    private int haCalls;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        RpcContext.destroy();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "get(java.util.List)." + URLParamType.scatterGather.getName(), "true");
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "get(int[])." + URLParamType.scatterGather.getName(), "true");
+        referers = new ArrayList<ShardReferer>();
+        referers.add(new ShardReferer(0));
+        referers.add(new ShardReferer(1));
+        // 按key的奇偶路由到两个节点
+        loadBalance = new LoadBalance<IWorld>() {
+            @Override
+            public void onRefresh(List<Referer<IWorld>> referers) {}
+
+            @Override
+            public Referer<IWorld> select(Request request) {
+                return referers.get(((Integer) request.getArguments()[0]) % 2);
+            }
+
+            @Override
+            public void selectToHolder(Request request, List<Referer<IWorld>> refersHolder) {}
+
+            @Override
+            public void setWeightString(String weightString) {}
+        };
+        haStrategy = new HaStrategy<IWorld>() {
+            @Override
+            public void setUrl(URL url) {}
+
+            @Override
+            public Response call(Request request, LoadBalance<IWorld> loadBalance) {
+                haCalls++;
+                return new DefaultResponse(request.getArguments()[0], request.getRequestId());
+            }
+        };
+    }
+
+    public void testMergeList() {
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(1, 2, 3, 4, 5)), haStrategy, loadBalance);
+        // 结果按参数中的位置还原顺序
+        assertEquals(Arrays.asList("v1", "v2", "v3", "v4", "v5"), response.getValue());
+        assertEquals(Arrays.asList(1, 3, 5), referers.get(1).arguments);
+        assertEquals(Arrays.asList(2, 4), referers.get(0).arguments);
+        assertEquals(0, haCalls);
+    }
+
+    public void testMergeMap() {
+        for (ShardReferer referer : referers) {
+            referer.returnMap = true;
+        }
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(1, 2, 3)), haStrategy, loadBalance);
+        Map<?, ?> result = (Map<?, ?>) response.getValue();
+        assertEquals(3, result.size());
+        assertEquals("v2", result.get(2));
+    }
+
+    public void testMergeArray() {
+        Response response = ScatterGather.call(url, newRequest("int[]", new int[] {1, 2, 3}), haStrategy, loadBalance);
+        assertTrue(Arrays.equals(new int[] {1, 2, 3}, (int[]) response.getValue()));
+    }
+
+    public void testMergeInArgumentOrder() {
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(4, 1, 2, 5, 3)), haStrategy, loadBalance);
+        assertEquals(Arrays.asList("v4", "v1", "v2", "v5", "v3"), response.getValue());
+
+        response = ScatterGather.call(url, newRequest("int[]", new int[] {4, 1, 2, 5, 3}), haStrategy, loadBalance);
+        assertTrue(Arrays.equals(new int[] {4, 1, 2, 5, 3}, (int[]) response.getValue()));
+    }
+
+    public void testMergeInOrderWithPartialFailure() {
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "get(java.util.List)." + URLParamType.scatterFailPolicy.getName(),
+                ScatterGather.FAIL_POLICY_PARTIAL);
+        referers.get(0).fail = true;
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(5, 2, 3, 4, 1)), haStrategy, loadBalance);
+        assertEquals(Arrays.asList("v5", "v3", "v1"), response.getValue());
+    }
+
+    public void testMergeByPartitionWhenSizeMismatch() {
+        // 节点返回的结果与参数数量不一致时无法按位置对应，按节点顺序拼接
+        referers.get(1).skipFirst = true;
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(4, 1, 2, 5, 3)), haStrategy, loadBalance);
+        assertEquals(Arrays.asList("v4", "v2", "v5", "v3"), response.getValue());
+    }
+
+    public void testSinglePartition() {
+        ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(2, 4)), haStrategy, loadBalance);
+        assertEquals(1, haCalls);
+        assertNull(referers.get(0).arguments);
+    }
+
+    public void testFailPolicy() {
+        referers.get(1).fail = true;
+        try {
+            ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(1, 2)), haStrategy, loadBalance);
+            fail("failfast should throw exception");
+        } catch (MotanServiceException e) {
+            assertTrue(e.getMessage().contains("mock exception"));
+        }
+
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "get(java.util.List)." + URLParamType.scatterFailPolicy.getName(),
+                ScatterGather.FAIL_POLICY_PARTIAL);
+        Response response = ScatterGather.call(url, newRequest("java.util.List", Arrays.asList(1, 2)), haStrategy, loadBalance);
+        assertEquals(Arrays.asList("v2"), response.getValue());
+    }
+
+    public void testIsScatterRequest() {
+        assertTrue(ScatterGather.isScatterRequest(url, newRequest("java.util.List", Arrays.asList(1, 2))));
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        assertFalse(ScatterGather.isScatterRequest(url, newRequest("java.util.List", Arrays.asList(1, 2))));
+        RpcContext.destroy();
+
+        DefaultRequest request = newRequest("java.util.List", Arrays.asList(1, 2));
+        request.setMethodName("other");
+        assertFalse(ScatterGather.isScatterRequest(url, request));
+    }
+
+    public void testIsScatterEnabled() {
+        assertTrue(ScatterGather.isScatterEnabled(url));
+        URL plain = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IWorld.class.getName());
+        assertFalse(ScatterGather.isScatterEnabled(plain));
+        plain.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "get(java.util.List)." + URLParamType.scatterGather.getName(), "false");
+        assertFalse(ScatterGather.isScatterEnabled(plain));
+        plain.addParameter(URLParamType.scatterGather.getName(), "true");
+        assertTrue(ScatterGather.isScatterEnabled(plain));
+        assertFalse(ScatterGather.isScatterEnabled(null));
+    }
+
+    private DefaultRequest newRequest(String paramtersDesc, Object argument) {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IWorld.class.getName());
+        request.setMethodName("get");
+        request.setParamtersDesc(paramtersDesc);
+        request.setArguments(new Object[] {argument});
+        return request;
+    }
+
+    private static class ShardReferer extends MockReferer<IWorld> {
+        private final int shard;
+        private boolean fail;
+        private boolean returnMap;
+        private boolean skipFirst;
+        private Object arguments;
+
+        ShardReferer(int shard) {
+            this.shard = shard;
+            this.desc = "shard-" + shard;
+        }
+
+        @Override
+        public Response call(Request request) {
+            assertEquals(Boolean.TRUE, RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX));
+            arguments = request.getArguments()[0];
+            MockResponseFuture future = new MockResponseFuture(request.getRequestId());
+            if (fail) {
+                future.fail(new MotanServiceException("mock exception shard-" + shard));
+            } else if (arguments instanceof int[]) {
+                future.complete(arguments);
+            } else if (returnMap) {
+                Map<Object, Object> values = new HashMap<Object, Object>();
+                for (Object id : (Collection<?>) arguments) {
+                    values.put(id, "v" + id);
+                }
+                future.complete(values);
+            } else {
+                List<Object> values = new ArrayList<Object>();
+                for (Object id : (Collection<?>) arguments) {
+                    values.add("v" + id);
+                }
+                future.complete(skipFirst ? values.subList(1, values.size()) : values);
+            }
+            return future;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.cluster.support;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * CircuitBreaker test
+ */
+public class CircuitBreakerTest extends BaseTestCase {
+
+    private long now = 100000;
+
+    public void testTripOnErrorRateAndRecover() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(50);
+        group.setSize(4);
+        CircuitBreaker breaker = newBreaker(group);
+
+        for (int i = 0; i < 6; i++) {
+            breaker.record(true, 1);
+        }
+        for (int i = 0; i < 3; i++) {
+            breaker.record(false, 1);
+        }
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        breaker.record(false, 1);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertFalse(breaker.isAllowed());
+        assertEquals(1, group.getEjected());
+
+        now += 5000;
+        assertTrue(breaker.isAllowed());
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        breaker.beforeCall();
+        breaker.beforeCall();
+        assertFalse(breaker.isAllowed());
+
+        breaker.record(true, 1);
+        breaker.record(true, 1);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertEquals(0, group.getEjected());
+    }
+
+    public void testProbeFailureReopens() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(100);
+        group.setSize(1);
+        CircuitBreaker breaker = newBreaker(group);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(false, 1);
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+
+        now += 5000;
+        assertTrue(breaker.isAllowed());
+        breaker.beforeCall();
+        breaker.record(false, 1);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertFalse(breaker.isAllowed());
+    }
+
+    public void testSlowCalls() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(100);
+        group.setSize(1);
+        CircuitBreaker breaker = newBreaker(group);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(true, 300);
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
+    public void testMaxEjection() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(50);
+        group.setSize(2);
+        CircuitBreaker first = newBreaker(group);
+        CircuitBreaker second = newBreaker(group);
+        for (int i = 0; i < 10; i++) {
+            first.record(false, 1);
+            second.record(false, 1);
+        }
+        assertEquals(CircuitBreaker.OPEN, first.getState());
+        assertEquals(CircuitBreaker.CLOSED, second.getState());
+
+        first.release();
+        assertEquals(0, group.getEjected());
+    }
+
+    public void testWindowExpire() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(100);
+        group.setSize(1);
+        CircuitBreaker breaker = newBreaker(group);
+        for (int i = 0; i < 9; i++) {
+            breaker.record(false, 1);
+        }
+        now += 20000;
+        breaker.record(false, 1);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+
+    public void testAsyncTimeoutAndCancel() {
+        CircuitBreaker.EjectionGroup group = new CircuitBreaker.EjectionGroup(100);
+        group.setSize(1);
+        CircuitBreaker breaker = newBreaker(group);
+        FutureReferer referer = new FutureReferer();
+        CircuitBreakerReferer<IHello> breakerReferer = new CircuitBreakerReferer<IHello>(referer, breaker);
+
+        // 主动取消不计入统计
+        for (int i = 0; i < 10; i++) {
+            breakerReferer.call(new DefaultRequest());
+            referer.future.cancel();
+        }
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        // 超时记为失败
+        for (int i = 0; i < 10; i++) {
+            breakerReferer.call(new DefaultRequest());
+            referer.future.timeout();
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
+    private static class FutureReferer extends MockReferer<IHello> {
+        MockResponseFuture future;
+
+        @Override
+        public Response call(Request request) {
+            future = new MockResponseFuture(request.getRequestId());
+            return future;
+        }
+    }
+
+    private CircuitBreaker newBreaker(CircuitBreaker.EjectionGroup group) {
+        URL url = new URL("motan", "localhost", 8001, "com.weibo.api.motan.protocol.example.IHello");
+        url.addParameter(URLParamType.circuitBreakerMinRequests.getName(), "10");
+        url.addParameter(URLParamType.circuitBreakerErrorRate.getName(), "40");
+        url.addParameter(URLParamType.circuitBreakerSlowCallTime.getName(), "200");
+        url.addParameter(URLParamType.circuitBreakerProbes.getName(), "2");
+        return new CircuitBreaker(url, group) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Request coalescing filter test.
+ */
+public class RequestCoalescingFilterTest extends BaseTestCase {
+
+    private static final int FOLLOWERS = 3;
+
+    private RequestCoalescingFilter filter = new RequestCoalescingFilter();
+    private BlockingReferer referer;
+    private ExecutorService executor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(MotanConstants.METHOD_CONFIG_PREFIX + "hello(java.lang.String)." + URLParamType.coalesce.getName(), "true");
+        referer = new BlockingReferer(new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IHello.class.getName(), parameters));
+        executor = Executors.newFixedThreadPool(FOLLOWERS + 1);
+        RpcContext.destroy();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        executor.shutdownNow();
+    }
+
+    public void testCoalesceConcurrentCalls() throws Exception {
+        List<Future<Object>> results = callConcurrently("a");
+        referer.release.countDown();
+        for (Future<Object> result : results) {
+            assertEquals("result-a", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, referer.calls.get());
+    }
+
+    public void testFollowersGetSeparateInstances() throws Exception {
+        referer.listValue = true;
+        List<Future<Object>> results = callConcurrently("a");
+        referer.release.countDown();
+        List<Object> values = new ArrayList<Object>();
+        for (Future<Object> result : results) {
+            Object value = result.get(5, TimeUnit.SECONDS);
+            assertEquals(listOf("result-a"), value);
+            for (Object other : values) {
+                assertNotSame(other, value);
+            }
+            values.add(value);
+        }
+        assertEquals(1, referer.calls.get());
+    }
+
+    public void testNotCoalescedByDefault() throws Exception {
+        referer = new BlockingReferer(new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IHello.class.getName()));
+        List<Future<Object>> results = callConcurrently("a");
+        referer.release.countDown();
+        for (Future<Object> result : results) {
+            assertEquals("result-a", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(FOLLOWERS + 1, referer.calls.get());
+    }
+
+    public void testLeaderFailure() throws Exception {
+        referer.exception = true;
+        List<Future<Object>> results = callConcurrently("a");
+        referer.release.countDown();
+        for (Future<Object> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("should throw leader's exception");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MotanServiceException);
+            }
+        }
+        assertEquals(1, referer.calls.get());
+    }
+
+    public void testSequentialCallsNotCoalesced() {
+        referer.release.countDown();
+        assertEquals("result-a", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals("result-a", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals(2, referer.calls.get());
+    }
+
+    public void testAsyncCallNotCoalesced() {
+        referer.release.countDown();
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        assertTrue(filter.filter(referer, newRequest("a")) instanceof MockResponseFuture);
+        assertTrue(filter.filter(referer, newRequest("a")) instanceof MockResponseFuture);
+        assertEquals(2, referer.calls.get());
+    }
+
+    private List<Future<Object>> callConcurrently(final String arg) throws Exception {
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        Callable<Object> task = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return filter.filter(referer, newRequest(arg)).getValue();
+            }
+        };
+        Future<Object> leader = executor.submit(task);
+        results.add(leader);
+        if (!referer.entered.await(5, TimeUnit.SECONDS)) {
+            // 第一个请求没有到达referer时，暴露其失败原因而不是一直等待
+            leader.get(1, TimeUnit.SECONDS);
+            fail("leader request did not reach the referer");
+        }
+        for (int i = 0; i < FOLLOWERS; i++) {
+            results.add(executor.submit(task));
+        }
+        // 等待后来的请求进入等待状态
+        Thread.sleep(100);
+        return results;
+    }
+
+    private Request newRequest(String arg) {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IHello.class.getName());
+        request.setMethodName("hello");
+        request.setParamtersDesc("java.lang.String");
+        request.setArguments(new Object[] {arg});
+        return request;
+    }
+
+    private static List<String> listOf(String value) {
+        List<String> list = new ArrayList<String>();
+        list.add(value);
+        return list;
+    }
+
+    private static class BlockingReferer extends MockReferer<IHello> {
+        private AtomicInteger calls = new AtomicInteger();
+        private CountDownLatch entered = new CountDownLatch(1);
+        private CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean exception;
+        private volatile boolean listValue;
+
+        BlockingReferer(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public Response call(Request request) {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            MockResponseFuture future = new MockResponseFuture(request.getRequestId());
+            if (exception) {
+                future.fail(new MotanServiceException("mock exception"));
+            } else {
+                String value = "result-" + request.getArguments()[0];
+                future.complete(listValue ? listOf(value) : value);
+            }
+            return future;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.mock.MockResponseFuture;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Response cache filter test.
+ */
+public class ResponseCacheFilterTest extends BaseTestCase {
+
+    private static AtomicInteger groupIndex = new AtomicInteger();
+
+    private ResponseCacheFilter filter = new ResponseCacheFilter();
+    private CountingReferer referer;
+    private URL url;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IHello.class.getName());
+        // 缓存按服务共享，每个用例使用不同的group
+        url.addParameter(URLParamType.group.getName(), "cache-test-" + groupIndex.incrementAndGet());
+        referer = new CountingReferer(url);
+        RpcContext.destroy();
+    }
+
+    public void testCacheHit() {
+        setMethodParameter(URLParamType.cacheTtl.getName(), "10000");
+
+        assertEquals("result-1", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals("result-1", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals(1, referer.calls.get());
+
+        assertEquals("result-2", filter.filter(referer, newRequest("b")).getValue());
+        assertEquals(2, referer.calls.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testHitReturnsCopy() {
+        setMethodParameter(URLParamType.cacheTtl.getName(), "10000");
+        referer.listValue = true;
+
+        List<String> first = (List<String>) filter.filter(referer, newRequest("a")).getValue();
+        first.add("modified");
+        List<String> second = (List<String>) filter.filter(referer, newRequest("a")).getValue();
+        assertEquals(Arrays.asList("result-1"), second);
+        second.add("modified");
+        assertEquals(Arrays.asList("result-1"), filter.filter(referer, newRequest("a")).getValue());
+        assertEquals(1, referer.calls.get());
+    }
+
+    public void testNoCacheWithoutTtl() {
+        filter.filter(referer, newRequest("a"));
+        filter.filter(referer, newRequest("a"));
+        assertEquals(2, referer.calls.get());
+    }
+
+    public void testExceptionNotCached() {
+        setMethodParameter(URLParamType.cacheTtl.getName(), "10000");
+        referer.exception = true;
+
+        assertNotNull(filter.filter(referer, newRequest("a")).getException());
+        assertNotNull(filter.filter(referer, newRequest("a")).getException());
+        assertEquals(2, referer.calls.get());
+    }
+
+    public void testStaleWhileRevalidate() throws Exception {
+        setMethodParameter(URLParamType.cacheTtl.getName(), "200");
+        setMethodParameter(URLParamType.cacheStaleTime.getName(), "10000");
+
+        assertEquals("result-1", filter.filter(referer, newRequest("a")).getValue());
+        Thread.sleep(250);
+
+        // 过期后返回旧值，只发起一次异步刷新
+        assertEquals("result-1", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals("result-1", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals(2, referer.calls.get());
+        assertNotNull(referer.future);
+        assertNull(RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX));
+
+        referer.future.complete("result-refresh");
+        assertEquals("result-refresh", filter.filter(referer, newRequest("a")).getValue());
+        assertEquals(2, referer.calls.get());
+    }
+
+    public void testAsyncCallBypassCache() {
+        setMethodParameter(URLParamType.cacheTtl.getName(), "10000");
+        filter.filter(referer, newRequest("a"));
+
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        Response response = filter.filter(referer, newRequest("a"));
+        assertTrue(response instanceof MockResponseFuture);
+        assertEquals(2, referer.calls.get());
+    }
+
+    private void setMethodParameter(String name, String value) {
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "hello(java.lang.String)." + name, value);
+    }
+
+    private Request newRequest(String arg) {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IHello.class.getName());
+        request.setMethodName("hello");
+        request.setParamtersDesc("java.lang.String");
+        request.setArguments(new Object[] {arg});
+        return request;
+    }
+
+    private static class CountingReferer extends MockReferer<IHello> {
+        private AtomicInteger calls = new AtomicInteger();
+        private boolean exception;
+        private boolean listValue;
+        private MockResponseFuture future;
+
+        CountingReferer(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public Response call(Request request) {
+            int count = calls.incrementAndGet();
+            if (Boolean.TRUE.equals(RpcContext.getContext().getAttribute(MotanConstants.ASYNC_SUFFIX))) {
+                future = new MockResponseFuture(request.getRequestId());
+                return future;
+            }
+            DefaultResponse response = new DefaultResponse(request.getRequestId());
+            if (exception) {
+                response.setException(new MotanServiceException("mock exception"));
+            } else if (listValue) {
+                response.setValue(new ArrayList<String>(Arrays.asList("result-" + count)));
+            } else {
+                response.setValue("result-" + count);
+            }
+            return response;
+        }
+    }
+}
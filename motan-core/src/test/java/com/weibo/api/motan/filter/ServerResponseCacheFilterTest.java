@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.codec.SerializedResponse;
+import com.weibo.api.motan.codec.SerializedValue;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+import com.weibo.api.motan.util.NetUtils;
+
+/**
+ * Server response cache filter test.
+ */
+public class ServerResponseCacheFilterTest extends BaseTestCase {
+
+    private static AtomicInteger groupIndex = new AtomicInteger();
+
+    private ServerResponseCacheFilter filter = new ServerResponseCacheFilter();
+    private CountingProvider provider;
+    private URL url;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, NetUtils.LOCALHOST, 0, IHello.class.getName());
+        // 缓存按服务共享，每个用例使用不同的group
+        url.addParameter(URLParamType.group.getName(), "server-cache-test-" + groupIndex.incrementAndGet());
+        provider = new CountingProvider(url);
+    }
+
+    public void testCacheSerializedValue() {
+        setServerCacheTtl("10000");
+
+        Response first = filter.filter(provider, newRequest("a", 1));
+        // 外层filter看到的仍是provider的返回值，序列化结果单独交给codec
+        assertEquals("result-1", first.getValue());
+        SerializedValue value = ((SerializedResponse) first).getSerializedValue();
+        assertEquals(String.class.getName(), value.getClassName());
+
+        Response second = filter.filter(provider, newRequest("a", 2));
+        assertSame(value, ((SerializedResponse) second).getSerializedValue());
+        assertEquals("result-1", second.getValue());
+        assertEquals(2, second.getRequestId());
+        assertEquals(1, provider.calls.get());
+
+        filter.filter(provider, newRequest("b", 3));
+        assertEquals(2, provider.calls.get());
+    }
+
+    public void testNoCacheWithoutTtl() {
+        Response response = filter.filter(provider, newRequest("a", 1));
+        assertEquals("result-1", response.getValue());
+        filter.filter(provider, newRequest("a", 2));
+        assertEquals(2, provider.calls.get());
+    }
+
+    public void testInvalidate() {
+        setServerCacheTtl("10000");
+        String serviceKey = MotanFrameworkUtil.getServiceKey(url);
+
+        filter.filter(provider, newRequest("a", 1));
+        ServerResponseCacheFilter.invalidate(serviceKey, "hello");
+        filter.filter(provider, newRequest("a", 2));
+        filter.filter(provider, newRequest("a", 3));
+        assertEquals(2, provider.calls.get());
+
+        ServerResponseCacheFilter.invalidate(serviceKey);
+        filter.filter(provider, newRequest("a", 4));
+        assertEquals(3, provider.calls.get());
+    }
+
+    public void testInvalidateDuringMiss() {
+        setServerCacheTtl("10000");
+        final String serviceKey = MotanFrameworkUtil.getServiceKey(url);
+
+        // 清除发生在miss的请求调用provider期间，旧的结果不能在清除后继续生效
+        provider.duringCall = new Runnable() {
+            @Override
+            public void run() {
+                ServerResponseCacheFilter.invalidate(serviceKey);
+            }
+        };
+        filter.filter(provider, newRequest("a", 1));
+        provider.duringCall = null;
+        assertEquals("result-2", filter.filter(provider, newRequest("a", 2)).getValue());
+        assertEquals("result-2", filter.filter(provider, newRequest("a", 3)).getValue());
+        assertEquals(2, provider.calls.get());
+
+        provider.duringCall = new Runnable() {
+            @Override
+            public void run() {
+                ServerResponseCacheFilter.invalidateAll();
+            }
+        };
+        filter.filter(provider, newRequest("b", 4));
+        provider.duringCall = null;
+        filter.filter(provider, newRequest("b", 5));
+        assertEquals(4, provider.calls.get());
+    }
+
+    public void testExpire() throws Exception {
+        setServerCacheTtl("50");
+
+        filter.filter(provider, newRequest("a", 1));
+        Thread.sleep(100);
+        filter.filter(provider, newRequest("a", 2));
+        assertEquals(2, provider.calls.get());
+    }
+
+    private void setServerCacheTtl(String value) {
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "hello(java.lang.String)." + URLParamType.serverCacheTtl.getName(),
+                value);
+    }
+
+    private Request newRequest(String arg, long requestId) {
+        DefaultRequest request = new DefaultRequest();
+        request.setInterfaceName(IHello.class.getName());
+        request.setMethodName("hello");
+        request.setParamtersDesc("java.lang.String");
+        request.setArguments(new Object[] {arg});
+        request.setRequestId(requestId);
+        return request;
+    }
+
+    private static class CountingProvider implements Provider<IHello> {
+        private AtomicInteger calls = new AtomicInteger();
+        private volatile Runnable duringCall;
+        private URL url;
+
+        CountingProvider(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public Class<IHello> getInterface() {
+            return IHello.class;
+        }
+
+        @Override
+        public Response call(Request request) {
+            if (duringCall != null) {
+                duringCall.run();
+            }
+            return new DefaultResponse("result-" + calls.incrementAndGet(), request.getRequestId());
+        }
+
+        @Override
+        public void init() {}
+
+        @Override
+        public void destroy() {}
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String desc() {
+            return "CountingProvider";
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.weibo.api.motan.exception.MotanErrorMsgConstant;
+import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.DefaultResponse;
+import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.ResponseFuture;
+
+/**
+ * 可以由测试代码主动完成的ResponseFuture
+ */
+public class MockResponseFuture extends DefaultResponse implements ResponseFuture {
+    private static final long serialVersionUID = 1L;
+
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private List<FutureListener> listeners = new ArrayList<FutureListener>();
+
+    public MockResponseFuture(long requestId) {
+        super(requestId);
+    }
+
+    public void complete(Object value) {
+        setValue(value);
+        finish(false);
+    }
+
+    public void fail(Exception exception) {
+        setException(exception);
+        finish(false);
+    }
+
+    // 与NettyResponseFuture一致，超时的future为CANCELLED状态
+    public void timeout() {
+        setException(new MotanServiceException("MockResponseFuture request timeout", MotanErrorMsgConstant.SERVICE_TIMEOUT));
+        finish(true);
+    }
+
+    private void finish(boolean cancel) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            cancelled = cancel;
+        }
+        for (FutureListener listener : listeners) {
+            notifyListener(listener);
+        }
+    }
+
+    private void notifyListener(FutureListener listener) {
+        try {
+            listener.operationComplete(this);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void addListener(FutureListener listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    @Override
+    public boolean cancel() {
+        if (done) {
+            return false;
+        }
+        setException(new MotanServiceException("MockResponseFuture cancel"));
+        finish(true);
+        return true;
+    }
+
+    @Override
+    public void onSuccess(Response response) {
+        complete(response.getValue());
+    }
+
+    @Override
+    public void onFailure(Response response) {
+        fail(response.getException());
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return done && getException() == null;
+    }
+
+    @Override
+    public long getCreateTime() {
+        return 0;
+    }
+}
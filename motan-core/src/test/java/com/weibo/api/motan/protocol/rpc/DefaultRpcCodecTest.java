@@ -24,10 +24,13 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.weibo.api.motan.codec.Codec;
+import com.weibo.api.motan.codec.SerializedResponse;
+import com.weibo.api.motan.codec.SerializedValue;
 import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanServiceException;
 import com.weibo.api.motan.mock.MockChannel;
 import com.weibo.api.motan.protocol.example.Model;
+import com.weibo.api.motan.serialize.Hessian2Serialization;
 import com.weibo.api.motan.rpc.DefaultRequest;
 import com.weibo.api.motan.rpc.DefaultResponse;
 import com.weibo.api.motan.rpc.Request;
@@ -172,6 +175,31 @@ public class DefaultRpcCodecTest extends TestCase {
         Assert.assertTrue(result.getException().getClass().equals(response.getException().getClass()));
     }
 
+    @Test
+    public void testSerializedValueResponse() throws Exception {
+        Model model = new Model("world", 12, Model.class);
+        DefaultResponse response = new DefaultResponse();
+        response.setValue(model);
+
+        DefaultResponse serializedResponse = new DefaultResponse();
+        serializedResponse.setValue(new SerializedValue(Model.class.getName(), new Hessian2Serialization().serialize(model)));
+
+        Assert.assertArrayEquals(rpcCodec.encode(channel, response), rpcCodec.encode(channel, serializedResponse));
+    }
+
+    @Test
+    public void testSerializedResponse() throws Exception {
+        Model model = new Model("world", 12, Model.class);
+        DefaultResponse response = new DefaultResponse();
+        response.setValue(model);
+
+        Hessian2Serialization serialization = new Hessian2Serialization();
+        SerializedValue value = new SerializedValue(Model.class.getName(), serialization.serialize(model));
+        Assert.assertArrayEquals(rpcCodec.encode(channel, response), rpcCodec.encode(channel, new SerializedResponse(model, value, 0)));
+        Assert.assertArrayEquals(rpcCodec.encode(channel, response),
+                rpcCodec.encode(channel, new SerializedResponse(value, serialization, 0)));
+    }
+
     @Test
     public void testCodecResponse(Response respose) throws Exception {
         byte[] bytes = rpcCodec.encode(channel, respose);
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.protocol.support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.Activation;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.filter.Filter;
+import com.weibo.api.motan.mock.MockReferer;
+import com.weibo.api.motan.protocol.example.IHello;
+import com.weibo.api.motan.rpc.Caller;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.Exporter;
+import com.weibo.api.motan.rpc.Protocol;
+import com.weibo.api.motan.rpc.Provider;
+import com.weibo.api.motan.rpc.Referer;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * ProtocolFilterDecorator test
+ */
+public class ProtocolFilterDecoratorTest extends BaseTestCase {
+
+    private static AtomicInteger filterCount = new AtomicInteger();
+
+    private MockReferer<IHello> referer;
+    private ProtocolFilterDecorator decorator;
+    private URL url;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp() throws Exception {
+        super.setUp();
+        ExtensionLoader loader = ExtensionLoader.getExtensionLoader(Filter.class);
+        if (loader.getExtension("decoratorCount") == null) {
+            loader.addExtensionClass(CountFilter.class);
+        }
+        filterCount.set(0);
+        referer = new MockReferer<IHello>();
+        decorator = new ProtocolFilterDecorator(new Protocol() {
+            @Override
+            public <T> Exporter<T> export(Provider<T> provider, URL url) {
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> Referer<T> refer(Class<T> clz, URL url, URL serviceUrl) {
+                return (Referer<T>) referer;
+            }
+
+            @Override
+            public void destroy() {}
+        });
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, "localhost", 18080, IHello.class.getName());
+        referer.url = url;
+    }
+
+    public void testInactiveFiltersRemoved() {
+        url.addParameter(URLParamType.filter.getName(), "access,active,mock");
+        url.addParameter(URLParamType.accessLog.getName(), "false");
+        assertSame(referer, decorator.refer(IHello.class, url, url));
+    }
+
+    public void testRetryNotFiltered() {
+        url.addParameter(URLParamType.filter.getName(), "decoratorCount,active");
+        url.addParameter(URLParamType.actives.getName(), "10");
+        Referer<IHello> chain = decorator.refer(IHello.class, url, url);
+        assertNotSame(referer, chain);
+
+        DefaultRequest request = new DefaultRequest();
+        chain.call(request);
+        assertEquals(1, filterCount.get());
+        request.setRetries(1);
+        chain.call(request);
+        assertEquals(1, filterCount.get());
+    }
+
+    @SpiMeta(name = "decoratorCount")
+    @Activation(sequence = 50, retry = false)
+    public static class CountFilter implements Filter {
+        @Override
+        public Response filter(Caller<?> caller, Request request) {
+            filterCount.incrementAndGet();
+            return caller.call(request);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.protocol.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.extension.ExtensionLoader;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.protocol.example.IWorld;
+import com.weibo.api.motan.rpc.AbstractExporter;
+import com.weibo.api.motan.rpc.DefaultProvider;
+import com.weibo.api.motan.rpc.Exporter;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * ProviderWarmup test
+ */
+public class ProviderWarmupTest extends BaseTestCase {
+
+    private CountingWorld world;
+    private URL url;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp() throws Exception {
+        super.setUp();
+        ExtensionLoader loader = ExtensionLoader.getExtensionLoader(Serialization.class);
+        if (loader.getExtension("warmupJava") == null) {
+            loader.addExtensionClass(JavaSerialization.class);
+        }
+        world = new CountingWorld();
+        url = new URL(MotanConstants.PROTOCOL_MOTAN, "localhost", 18080, IWorld.class.getName());
+        url.addParameter(URLParamType.serialize.getName(), "warmupJava");
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "world(java.lang.String)." + URLParamType.warmup.getName(), "true");
+    }
+
+    public void testWarmupCount() {
+        url.addParameter(URLParamType.warmupCount.getName(), "50");
+        ProviderWarmup.warmup(newExporter(), url);
+        assertEquals(50, world.count.get());
+        assertEquals("", world.lastArgument);
+    }
+
+    public void testWarmupTime() {
+        url.addParameter(URLParamType.warmupTime.getName(), "100");
+        long start = System.currentTimeMillis();
+        ProviderWarmup.warmup(newExporter(), url);
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertTrue(world.count.get() > 0);
+    }
+
+    public void testDisabled() {
+        ProviderWarmup.warmup(newExporter(), url);
+        assertEquals(0, world.count.get());
+
+        // 没有配置warmup的方法时不预热
+        URL noMethodUrl = new URL(MotanConstants.PROTOCOL_MOTAN, "localhost", 18080, IWorld.class.getName());
+        noMethodUrl.addParameter(URLParamType.warmupCount.getName(), "50");
+        ProviderWarmup.warmup(newExporter(), noMethodUrl);
+        assertEquals(0, world.count.get());
+    }
+
+    public void testBuildRequests() {
+        List<Request> requests = ProviderWarmup.buildRequests(IWorld.class, url);
+        assertEquals(1, requests.size());
+        assertEquals("world", requests.get(0).getMethodName());
+        assertEquals("java.lang.String", requests.get(0).getParamtersDesc());
+
+        assertEquals(0, ProviderWarmup.defaultValue(int.class));
+        assertEquals(0, ((Object[]) ProviderWarmup.defaultValue(String[].class)).length);
+        assertTrue(ProviderWarmup.defaultValue(List.class) instanceof List);
+        assertNull(ProviderWarmup.defaultValue(Runnable.class));
+    }
+
+    private Exporter<IWorld> newExporter() {
+        return new AbstractExporter<IWorld>(new DefaultProvider<IWorld>(world, url, IWorld.class), url) {
+            @Override
+            protected boolean doInit() {
+                return true;
+            }
+
+            @Override
+            public void unexport() {}
+
+            @Override
+            public void destroy() {}
+
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+        };
+    }
+
+    static class CountingWorld implements IWorld {
+        AtomicInteger count = new AtomicInteger();
+        volatile String lastArgument;
+
+        @Override
+        public String world() {
+            count.incrementAndGet();
+            return "world";
+        }
+
+        @Override
+        public String world(String world) {
+            count.incrementAndGet();
+            lastArgument = world;
+            return world;
+        }
+
+        @Override
+        public String worldSleep(String world, int sleep) {
+            count.incrementAndGet();
+            return world;
+        }
+    }
+
+    @SpiMeta(name = "warmupJava")
+    public static class JavaSerialization implements Serialization {
+        @Override
+        public byte[] serialize(Object obj) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bos);
+            out.writeObject(obj);
+            out.flush();
+            return bos.toByteArray();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T deserialize(byte[] bytes, Class<T> clz) throws IOException {
+            try {
+                return (T) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
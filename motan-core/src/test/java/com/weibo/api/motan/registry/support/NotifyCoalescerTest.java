@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.registry.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.registry.NotifyListener;
+import com.weibo.api.motan.registry.RegistryService;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * NotifyCoalescer test
+ */
+public class NotifyCoalescerTest extends BaseTestCase {
+
+    private RecordListener listener = new RecordListener();
+
+    public void testDisabled() {
+        NotifyCoalescer coalescer = new NotifyCoalescer(registryUrl(0, 0));
+        for (int i = 0; i < 5; i++) {
+            coalescer.notify(listener, "service", urls(i));
+        }
+        assertEquals(5, listener.notified.size());
+    }
+
+    public void testCoalesce() throws Exception {
+        NotifyCoalescer coalescer = new NotifyCoalescer(registryUrl(100, 1000));
+        // 第一次通知直接投递
+        coalescer.notify(listener, "service", urls(1));
+        assertEquals(1, listener.notified.size());
+
+        for (int i = 2; i <= 5; i++) {
+            coalescer.notify(listener, "service", urls(i));
+            Thread.sleep(20);
+        }
+        assertEquals(1, listener.notified.size());
+        Thread.sleep(300);
+        assertEquals(2, listener.notified.size());
+        assertEquals(5, listener.notified.get(1).get(0).getPort().intValue());
+
+        // 不同类别分别投递
+        coalescer.notify(listener, "other", urls(6));
+        assertEquals(3, listener.notified.size());
+    }
+
+    public void testMaxDelay() throws Exception {
+        NotifyCoalescer coalescer = new NotifyCoalescer(registryUrl(100, 300));
+        coalescer.notify(listener, "service", urls(0));
+        long start = System.currentTimeMillis();
+        int i = 1;
+        // 持续通知，静默期一直不满足时，最多延迟 notifyMaxDelay 后投递
+        while (listener.notified.size() < 2 && System.currentTimeMillis() - start < 2000) {
+            coalescer.notify(listener, "service", urls(i++));
+            Thread.sleep(20);
+        }
+        assertEquals(2, listener.notified.size());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    public void testCancel() throws Exception {
+        NotifyCoalescer coalescer = new NotifyCoalescer(registryUrl(50, 1000));
+        coalescer.notify(listener, "service", urls(1));
+        coalescer.notify(listener, "service", urls(2));
+        coalescer.cancel(listener);
+        Thread.sleep(150);
+        assertEquals(1, listener.notified.size());
+
+        // 取消后再次通知视为第一次通知
+        coalescer.notify(listener, "service", urls(3));
+        assertEquals(2, listener.notified.size());
+    }
+
+    private URL registryUrl(int quietPeriod, int maxDelay) {
+        URL url = new URL("mock", "127.0.0.1", 0, RegistryService.class.getName());
+        url.addParameter(URLParamType.notifyQuietPeriod.getName(), String.valueOf(quietPeriod));
+        url.addParameter(URLParamType.notifyMaxDelay.getName(), String.valueOf(maxDelay));
+        return url;
+    }
+
+    private List<URL> urls(int port) {
+        return Collections.singletonList(new URL("motan", "127.0.0.1", port, "com.weibo.Hello"));
+    }
+
+    static class RecordListener implements NotifyListener {
+        List<List<URL>> notified = Collections.synchronizedList(new ArrayList<List<URL>>());
+
+        @Override
+        public void notify(URL registryUrl, List<URL> urls) {
+            notified.add(urls);
+        }
+    }
+}
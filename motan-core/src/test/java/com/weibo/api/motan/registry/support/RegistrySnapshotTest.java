@@ -0,0 +1,249 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.registry.support;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.weibo.api.motan.BaseTestCase;
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.exception.MotanFrameworkException;
+import com.weibo.api.motan.registry.NotifyListener;
+import com.weibo.api.motan.registry.Registry;
+import com.weibo.api.motan.registry.RegistryService;
+import com.weibo.api.motan.rpc.URL;
+
+/**
+ * RegistrySnapshot test
+ */
+public class RegistrySnapshotTest extends BaseTestCase {
+
+    private File dir;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = new File(System.getProperty("java.io.tmpdir"), "motan-snapshot-" + System.nanoTime());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testDisabled() {
+        URL registryUrl = new URL("mock", "127.0.0.1", 0, RegistryService.class.getName());
+        assertNull(RegistrySnapshot.create(registryUrl));
+    }
+
+    public void testFlushAndLoad() {
+        RegistrySnapshot snapshot = RegistrySnapshot.create(registryUrl());
+        assertNull(snapshot.get(refUrl("127.0.0.1")));
+
+        snapshot.update(refUrl("127.0.0.1"), serviceUrls(8001, 8002));
+        assertEquals(2, snapshot.get(refUrl("127.0.0.1")).size());
+        snapshot.flush();
+        assertTrue(snapshot.getFile().isFile());
+        assertFalse(new File(dir, snapshot.getFile().getName() + ".tmp").exists());
+
+        // 重新加载，订阅方的ip不影响快照的匹配
+        assertSame(snapshot, RegistrySnapshot.create(registryUrl()));
+        RegistrySnapshot loaded = new RegistrySnapshot(snapshot.getFile());
+        List<URL> urls = loaded.get(refUrl("10.0.0.1"));
+        assertEquals(2, urls.size());
+        assertEquals(8001, urls.get(0).getPort().intValue());
+        assertEquals("g1", urls.get(0).getGroup());
+        assertNull(loaded.get(new URL("motan", "127.0.0.1", 0, "com.weibo.Other")));
+    }
+
+    public void testSubscribeWithSnapshot() {
+        RegistrySnapshot snapshot = RegistrySnapshot.create(registryUrl());
+        snapshot.update(refUrl("127.0.0.1"), serviceUrls(8001));
+        snapshot.flush();
+
+        // 注册中心不可用时使用快照中的节点
+        FailRegistry registry = new FailRegistry(registryUrl());
+        final List<URL> notified = new ArrayList<URL>();
+        registry.subscribe(refUrl("127.0.0.1"), new NotifyListener() {
+            @Override
+            public void notify(URL registryUrl, List<URL> urls) {
+                notified.addAll(urls);
+            }
+        });
+        assertEquals(1, notified.size());
+        assertEquals(8001, notified.get(0).getPort().intValue());
+        assertEquals(1, registry.discover(refUrl("127.0.0.1")).size());
+    }
+
+    public void testRegistryUnavailableAtStartup() {
+        RegistrySnapshot snapshot = RegistrySnapshot.create(registryUrl());
+        snapshot.update(refUrl("127.0.0.1"), serviceUrls(8001));
+
+        // 注册中心无法创建时，订阅立即以快照中的节点通知
+        MockRegistryFactory factory = new MockRegistryFactory();
+        SnapshotRegistry registry = new SnapshotRegistry(registryUrl(), factory);
+        assertNull(registry.getRegistry());
+        final List<List<URL>> notified = new ArrayList<List<URL>>();
+        registry.subscribe(refUrl("127.0.0.1"), new NotifyListener() {
+            @Override
+            public void notify(URL registryUrl, List<URL> urls) {
+                notified.add(urls);
+            }
+        });
+        assertEquals(1, notified.size());
+        assertEquals(8001, notified.get(0).get(0).getPort().intValue());
+        assertEquals(8001, registry.discover(refUrl("127.0.0.1")).get(0).getPort().intValue());
+        URL providerUrl = serviceUrls(9001).get(0);
+        registry.register(providerUrl);
+        registry.available(null);
+        assertTrue(registry.getRegisteredServiceUrls().contains(providerUrl));
+        assertFalse(registry.connect());
+
+        // 注册中心恢复后重放注册和订阅，实时数据替换快照中的节点
+        factory.fail = false;
+        assertTrue(registry.connect());
+        LiveRegistry live = (LiveRegistry) registry.getRegistry();
+        assertTrue(live.getRegisteredServiceUrls().contains(providerUrl));
+        assertTrue(live.available.contains(providerUrl));
+        assertEquals(2, notified.size());
+        assertEquals(8002, notified.get(1).get(0).getPort().intValue());
+        assertEquals(8002, registry.discover(refUrl("127.0.0.1")).get(0).getPort().intValue());
+    }
+
+    public void testRegistryUnavailableWithoutSnapshot() {
+        SnapshotRegistry registry = new SnapshotRegistry(registryUrl(), new MockRegistryFactory());
+        try {
+            registry.subscribe(refUrl("127.0.0.1"), new NotifyListener() {
+                @Override
+                public void notify(URL registryUrl, List<URL> urls) {}
+            });
+            fail("should fail without snapshot when check is true");
+        } catch (MotanFrameworkException e) {
+            assertTrue(e.getMessage().contains("no snapshot"));
+        }
+    }
+
+    private URL registryUrl() {
+        URL url = new URL("mock", "127.0.0.1", 2181, RegistryService.class.getName());
+        url.addParameter(URLParamType.registrySnapshotDir.getName(), dir.getAbsolutePath());
+        return url;
+    }
+
+    private URL refUrl(String host) {
+        URL url = new URL("motan", host, 0, "com.weibo.Hello");
+        url.addParameter(URLParamType.group.getName(), "g1");
+        return url;
+    }
+
+    private List<URL> serviceUrls(int... ports) {
+        List<URL> urls = new ArrayList<URL>();
+        for (int port : ports) {
+            URL url = new URL("motan", "127.0.0.1", port, "com.weibo.Hello");
+            url.addParameter(URLParamType.group.getName(), "g1");
+            url.addParameter(URLParamType.nodeType.getName(), "service");
+            urls.add(url);
+        }
+        return urls;
+    }
+
+    static class MockRegistryFactory extends AbstractRegistryFactory {
+        private volatile boolean fail = true;
+
+        @Override
+        protected Registry createRegistry(URL url) {
+            if (fail) {
+                throw new MotanFrameworkException("connect registry timeout");
+            }
+            return new LiveRegistry(url);
+        }
+    }
+
+    static class LiveRegistry extends FailRegistry {
+        private Set<URL> available = new HashSet<URL>();
+
+        public LiveRegistry(URL url) {
+            super(url);
+        }
+
+        @Override
+        protected void doSubscribe(URL url, NotifyListener listener) {
+            notify(url, listener, doDiscover(url));
+        }
+
+        @Override
+        protected List<URL> doDiscover(URL url) {
+            return serviceUrls(8002);
+        }
+
+        @Override
+        protected void doAvailable(URL url) {
+            available.add(url);
+        }
+
+        private List<URL> serviceUrls(int port) {
+            URL url = new URL("motan", "127.0.0.1", port, "com.weibo.Hello");
+            url.addParameter(URLParamType.group.getName(), "g1");
+            url.addParameter(URLParamType.nodeType.getName(), "service");
+            List<URL> urls = new ArrayList<URL>();
+            urls.add(url);
+            return urls;
+        }
+    }
+
+    static class FailRegistry extends FailbackRegistry {
+
+        public FailRegistry(URL url) {
+            super(url);
+        }
+
+        @Override
+        protected void doRegister(URL url) {}
+
+        @Override
+        protected void doUnregister(URL url) {}
+
+        @Override
+        protected void doSubscribe(URL url, NotifyListener listener) {
+            throw new IllegalStateException("registry unavailable");
+        }
+
+        @Override
+        protected void doUnsubscribe(URL url, NotifyListener listener) {}
+
+        @Override
+        protected List<URL> doDiscover(URL url) {
+            throw new IllegalStateException("registry unavailable");
+        }
+
+        @Override
+        protected void doAvailable(URL url) {}
+
+        @Override
+        protected void doUnavailable(URL url) {}
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.weibo.api.motan.registry.support.command;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.weibo.api.motan.rpc.URL;
+
+public class RpcCommandRouterTest {
+
+    private static final String PATH = "com.weibo.motan.demo.service.MotanDemoService";
+    private static final String LOCAL_IP = "10.75.0.180";
+
+    @Test
+    public void testNotHit() {
+        RpcCommandRouter router = RpcCommandRouter.compile(command(command("com.weibo.other.*", null, null)), PATH, LOCAL_IP);
+        assertFalse(router.isHit());
+
+        router = RpcCommandRouter.compile(null, PATH, LOCAL_IP);
+        assertFalse(router.isHit());
+    }
+
+    @Test
+    public void testWeights() {
+        RpcCommandRouter router = RpcCommandRouter.compile(
+                command(command("com.weibo.motan.*", Arrays.asList("aaa:1", "bbb:2"), null)), PATH, LOCAL_IP);
+        assertTrue(router.isHit());
+        assertTrue(router.isMergeGroups());
+        assertEquals(2, router.getWeights().size());
+        assertEquals(Integer.valueOf(2), router.getWeights().get("bbb"));
+        assertTrue(router.getWeightsString().contains("aaa:1"));
+
+        // 权重不合法的指令被忽略，匹配的指令都不合法时结果为空
+        router = RpcCommandRouter.compile(command(command("com.weibo.motan.*", Arrays.asList("aaa:101"), null)), PATH, LOCAL_IP);
+        assertTrue(router.isHit());
+        assertTrue(router.isEmptyResult());
+    }
+
+    @Test
+    public void testRoute() {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(new URL("rule", "127.0.0.1", 0, PATH));
+        urls.add(new URL("motan", "10.75.0.1", 8001, PATH));
+        urls.add(new URL("motan", "10.75.1.1", 8001, PATH));
+        urls.add(new URL("motan", "10.77.0.1", 8001, PATH));
+
+        // from不匹配本机ip的规则在编译时被忽略
+        RpcCommandRouter router = RpcCommandRouter.compile(
+                command(command(PATH, null, Arrays.asList("10.75.0.180 to 10.75.*", "10.73.* to 10.75.0.*", "bad rule"))), PATH, LOCAL_IP);
+        List<URL> result = router.route(urls);
+        assertEquals(3, result.size());
+        assertEquals("rule", result.get(0).getProtocol());
+        assertEquals("10.75.1.1", result.get(2).getHost());
+
+        router = RpcCommandRouter.compile(command(command(PATH, null, Arrays.asList("!10.73.* to !10.75.0.*"))), PATH, LOCAL_IP);
+        result = router.route(urls);
+        assertEquals(3, result.size());
+        assertEquals("10.77.0.1", result.get(2).getHost());
+
+        // 多条规则依次过滤
+        router = RpcCommandRouter.compile(command(command(PATH, null, Arrays.asList("10.75.* to 10.75.*", "* to !10.75.1.1"))), PATH,
+                LOCAL_IP);
+        result = router.route(urls);
+        assertEquals(2, result.size());
+        assertEquals("10.75.0.1", result.get(1).getHost());
+    }
+
+    private RpcCommand command(RpcCommand.ClientCommand... clientCommands) {
+        RpcCommand command = new RpcCommand();
+        command.setClientCommandList(new ArrayList<RpcCommand.ClientCommand>(Arrays.asList(clientCommands)));
+        command.sort();
+        return command;
+    }
+
+    private RpcCommand.ClientCommand command(String pattern, List<String> mergeGroups, List<String> routeRules) {
+        RpcCommand.ClientCommand clientCommand = new RpcCommand.ClientCommand();
+        clientCommand.setIndex(0);
+        clientCommand.setPattern(pattern);
+        clientCommand.setMergeGroups(mergeGroups);
+        clientCommand.setRouteRules(routeRules);
+        return clientCommand;
+    }
+}
@@ -17,6 +17,9 @@
 package com.weibo.api.motan.rpc;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -41,4 +44,55 @@ public class URLTest extends TestCase {
             }
         }
     }
+
+    public void testSharedParametersCopy() {
+        URL clientUrl = URL.valueOf("motan://127.0.0.1:0/com.weibo.Hello?group=g1&requestTimeout=300&application=client");
+        URL serviceUrl = URL.valueOf("motan://10.0.0.1:8001/com.weibo.Hello?group=g2&weight=5&application=server");
+        SharedParameters shared = new SharedParameters(clientUrl.getParameters());
+
+        URL refererUrl = serviceUrl.createCopy(shared, Collections.singletonMap("application", "server"));
+        Map<String, String> expected = new HashMap<String, String>(serviceUrl.getParameters());
+        expected.putAll(clientUrl.getParameters());
+        expected.put("application", "server");
+        assertEquals(expected, refererUrl.getParameters());
+        assertEquals(expected.hashCode(), refererUrl.getParameters().hashCode());
+        assertEquals(new URL("motan", "10.0.0.1", 8001, "com.weibo.Hello", expected), refererUrl);
+        assertEquals("g1", refererUrl.getGroup());
+        assertEquals("5", refererUrl.getParameter("weight"));
+
+        // 数值解析结果在共享者之间复用
+        URL other = URL.valueOf("motan://10.0.0.2:8001/com.weibo.Hello").createCopy(shared, new HashMap<String, String>());
+        assertEquals(300, refererUrl.getIntParameter("requestTimeout", 0).intValue());
+        assertEquals(300, shared.getNumbers().get("requestTimeout").intValue());
+        assertEquals(300, other.getIntParameter("requestTimeout", 0).intValue());
+
+        // 修改后展开为独立参数，不影响共享参数及其他副本
+        refererUrl.addParameter("requestTimeout", "500");
+        refererUrl.getParameters().remove("group");
+        assertEquals(500, refererUrl.getIntParameter("requestTimeout", 0).intValue());
+        assertNull(refererUrl.getParameter("group"));
+        assertEquals("g1", other.getGroup());
+        assertEquals(300, other.getIntParameter("requestTimeout", 0).intValue());
+        assertEquals("300", shared.getParameters().get("requestTimeout"));
+    }
+
+    public void testMethodSettings() {
+        URL url = URL.valueOf("motan://127.0.0.1:8001/com.weibo.Hello?requestTimeout=200&retries=1"
+                + "&methodconfig.hello(java.lang.String).requestTimeout=500&methodconfig.hello(java.lang.String).coalesce=true"
+                + "&cacheTtl=1000");
+        MethodSettings settings = url.getMethodSettings("hello", "java.lang.String");
+        assertEquals(500, settings.getRequestTimeout());
+        assertEquals(1, settings.getRetries());
+        assertTrue(settings.isCoalesce());
+        assertEquals(1000, settings.getCacheTtl());
+        assertFalse(settings.isScatterGather());
+        assertSame(settings, url.getMethodSettings("hello", "java.lang.String"));
+        assertFalse(url.getMethodSettings("other", "java.lang.String").isCoalesce());
+        assertEquals(200, url.getMethodSettings("hello", null).getRequestTimeout());
+        assertEquals(200, url.getMethodSettings("other", "java.lang.String").getRequestTimeout());
+
+        // 参数修改后重新解析
+        url.addParameter("retries", "3");
+        assertEquals(3, url.getMethodSettings("hello", "java.lang.String").getRetries());
+    }
 }
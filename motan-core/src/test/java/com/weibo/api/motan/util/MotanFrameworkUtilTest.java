@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.rpc.DefaultRequest;
+import com.weibo.api.motan.rpc.RpcContext;
+
+/**
+ * MotanFrameworkUtil test
+ */
+public class MotanFrameworkUtilTest {
+
+    @Test
+    public void testGetDeadline() {
+        DefaultRequest request = new DefaultRequest();
+        Assert.assertEquals(0, MotanFrameworkUtil.getDeadline(request, 1000));
+
+        request.setAttachment(URLParamType.remainingTime.getName(), "200");
+        Assert.assertEquals(1200, MotanFrameworkUtil.getDeadline(request, 1000));
+
+        request.setAttachment(URLParamType.remainingTime.getName(), "bad");
+        Assert.assertEquals(0, MotanFrameworkUtil.getDeadline(request, 1000));
+    }
+
+    @Test
+    public void testRemainingTime() {
+        try {
+            RpcContext context = RpcContext.init(new DefaultRequest());
+            Assert.assertEquals(Long.MAX_VALUE, context.getRemainingTime());
+
+            context.setDeadline(System.currentTimeMillis() + 1000);
+            long remaining = context.getRemainingTime();
+            Assert.assertTrue(remaining > 0 && remaining <= 1000);
+
+            context.setDeadline(System.currentTimeMillis() - 1);
+            Assert.assertTrue(context.getRemainingTime() < 0);
+        } finally {
+            RpcContext.destroy();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.util;
+
+import com.weibo.api.motan.BaseTestCase;
+
+/**
+ * Segmented lru cache test.
+ */
+public class SegmentedLruCacheTest extends BaseTestCase {
+
+    public void testPutAndGet() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(1600);
+        assertTrue(cache.put("a", "1", 1));
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+
+        cache.put("a", "2", 1);
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+
+        assertEquals("2", cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.weight());
+    }
+
+    public void testWeightLimit() {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<Integer, String>(160);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "v" + i, 1);
+        }
+        assertTrue(cache.weight() <= 160);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        // 超过单个分片容量的数据不缓存
+        assertFalse(cache.put(-1, "big", 1000));
+        assertNull(cache.get(-1));
+    }
+
+    public void testHotEntrySurvivesScan() {
+        // key都落在同一个分片，便于观察淘汰顺序
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<Integer, String>(16 * 10);
+        int hot = 0;
+        cache.put(hot, "hot", 1);
+        cache.get(hot);
+        for (int i = 1; i < 4000; i++) {
+            cache.put(i * 16, "scan", 1);
+        }
+        assertEquals("hot", cache.get(hot));
+    }
+
+    public void testClear() {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<Integer, String>(1000);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v", 3);
+        }
+        assertEquals(300, cache.weight());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+}
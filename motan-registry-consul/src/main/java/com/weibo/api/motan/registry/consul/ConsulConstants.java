@@ -54,6 +54,12 @@ public class ConsulConstants {
 	 */
 	public static int SWITCHER_CHECK_CIRCLE = HEARTBEAT_CIRCLE / MAX_SWITCHER_CHECK_TIMES;
 
+	/**
+	 * 每次检测（SWITCHER_CHECK_CIRCLE）最多发送的心跳数，限制check pass对consul server的写入速率。
+	 * 超出的serviceid顺延到之后的检测，心跳周期为ttl的2/3，顺延不超过ttl的1/3时不会导致service过期。
+	 */
+	public static int MAX_HEARTBEATS_PER_CHECK = 100;
+
 	/**
 	 * consul服务查询默认间隔时间。单位毫秒
 	 */
@@ -74,4 +80,15 @@ public class ConsulConstants {
 	 * consul block 查询时 block的最长时间,单位，秒
 	 */
 	public static long CONSUL_BLOCK_TIME_SECONDS = CONSUL_BLOCK_TIME_MINUTES * 60;
+
+	/**
+	 * 服务和command查询线程数默认值，所有group共用，可通过注册中心url的registryLookupThreads参数修改
+	 */
+	public static int LOOKUP_THREADS = 8;
+
+	/**
+	 * 共用查询线程时，block 查询的最长时间默认值,单位，秒。避免少数group长时间占用查询线程，
+	 * 可通过注册中心url的registryLookupBlockSeconds参数修改
+	 */
+	public static long CONSUL_LOOKUP_BLOCK_SECONDS = 1;
 }
@@ -1,14 +1,16 @@
 package com.weibo.api.motan.registry.consul;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.weibo.api.motan.registry.consul.client.MotanConsulClient;
-import com.weibo.api.motan.util.ConcurrentHashSet;
 import com.weibo.api.motan.util.LoggerUtil;
 import com.weibo.api.motan.util.MotanSwitcherUtil;
 
@@ -17,30 +19,26 @@ import com.weibo.api.motan.util.MotanSwitcherUtil;
  * 此类会定时对注册的serviceid设置passing状态（实际是对servcieid对应对checkid设置passing状态），
  * 从而完成servivce的心跳。
  * 开关开启后会进行心跳，开关关闭则停止心跳。
+ * 开关变更时立即对所有serviceid设置状态；之后每个serviceid按各自的时间每HEARTBEAT_CIRCLE发送一次心跳，
+ * 各serviceid的心跳时间错开，避免所有心跳集中在同一时刻写consul。
+ * 每次检测最多发送MAX_HEARTBEATS_PER_CHECK个心跳，超出的按到期先后顺延到之后的检测，限制写consul的速率。
  * 
  * @author zhanglei
  *
  */
 public class ConsulHeartbeatManager {
 	private MotanConsulClient client;
-	// 所有需要进行心跳的serviceid.
-	private ConcurrentHashSet<String> serviceIds = new ConcurrentHashSet<String>();
+	// 所有需要进行心跳的serviceid，value为下次发送心跳的时间
+	private ConcurrentHashMap<String, Long> serviceIds = new ConcurrentHashMap<String, Long>();
 
-	private ThreadPoolExecutor jobExecutor;
 	private ScheduledExecutorService heartbeatExecutor;
 	// 上一次心跳开关的状态
 	private boolean lastHeartBeatSwitcherStatus = false;
 	private volatile boolean currentHeartBeatSwitcherStatus = false;
-	// 开关检查次数。
-	private int switcherCheckTimes = 0;
 
 	public ConsulHeartbeatManager(MotanConsulClient client) {
 		this.client = client;
 		heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
-		ArrayBlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(
-				10000);
-		jobExecutor = new ThreadPoolExecutor(5, 30, 30 * 1000,
-				TimeUnit.MILLISECONDS, workQueue);
 	}
 
 	public void start() {
@@ -51,19 +49,15 @@ public class ConsulHeartbeatManager {
 						// 由于consul的check set pass会导致consul
 						// server的写磁盘操作，过于频繁的心跳会导致consul
 						// 性能问题，只能将心跳方式改为较长的周期进行一次探测。又因为想在关闭心跳开关后尽快感知
-						// 就将心跳改为以较小周期检测心跳开关是否变动，连续检测多次后给consul server发送一次心跳。
+						// 就将心跳改为以较小周期检测心跳开关是否变动，每个serviceid每HEARTBEAT_CIRCLE给consul server发送一次心跳。
 						// TODO 改为开关listener方式。
 						try {
 							boolean switcherStatus = isHeartbeatOpen();
 							if (isSwitcherChange(switcherStatus)) { // 心跳开关状态变更
 								processHeartbeat(switcherStatus);
 							} else {// 心跳开关状态未变更
-								if (switcherStatus) {// 开关为开启状态，则连续检测超过MAX_SWITCHER_CHECK_TIMES次发送一次心跳
-									switcherCheckTimes++;
-									if (switcherCheckTimes >= ConsulConstants.MAX_SWITCHER_CHECK_TIMES) {
-										processHeartbeat(true);
-										switcherCheckTimes = 0;
-									}
+								if (switcherStatus) {// 开关为开启状态，对到期的serviceid发送心跳
+									processDueHeartbeat(System.currentTimeMillis());
 								}
 							}
 
@@ -92,30 +86,99 @@ public class ConsulHeartbeatManager {
 		return ret;
 	}
 
+	/**
+	 * 对所有serviceid设置状态。设置为fail时立即全部设置，尽快摘除服务；
+	 * 设置为pass时受MAX_HEARTBEATS_PER_CHECK限制，超出的serviceid在之后的检测中发送，
+	 * 已发送的serviceid下次心跳的时间错开在半个心跳周期内
+	 * 
+	 * @param isPass
+	 */
 	protected void processHeartbeat(boolean isPass) {
-		for (String serviceid : serviceIds) {
-			try {
-				jobExecutor.execute(new HeartbeatJob(serviceid, isPass));
-			} catch (RejectedExecutionException ree) {
-				LoggerUtil.error("execute heartbeat job fail! serviceid:"
-						+ serviceid + " is rejected");
+		long now = System.currentTimeMillis();
+		if (!isPass) {
+			for (String serviceid : serviceIds.keySet()) {
+				heartbeat(serviceid, false);
+			}
+			return;
+		}
+		int limit = Math.max(ConsulConstants.MAX_HEARTBEATS_PER_CHECK, 1);
+		int size = Math.max(Math.min(serviceIds.size(), limit), 1);
+		int index = 0;
+		for (String serviceid : serviceIds.keySet()) {
+			if (index < limit) {
+				heartbeat(serviceid, true);
+				serviceIds.replace(serviceid, now + ConsulConstants.HEARTBEAT_CIRCLE
+						- (long) ConsulConstants.HEARTBEAT_CIRCLE * index / (2 * size));
+			} else {
+				serviceIds.replace(serviceid, now);
+			}
+			index++;
+		}
+	}
+
+	/**
+	 * 对到达心跳时间的serviceid发送心跳，最多发送MAX_HEARTBEATS_PER_CHECK个，到期早的优先
+	 * 
+	 * @param now
+	 */
+	protected void processDueHeartbeat(long now) {
+		List<Map.Entry<String, Long>> dueEntries = new ArrayList<Map.Entry<String, Long>>();
+		for (Map.Entry<String, Long> entry : serviceIds.entrySet()) {
+			if (entry.getValue() <= now) {
+				dueEntries.add(entry);
+			}
+		}
+		int limit = Math.max(ConsulConstants.MAX_HEARTBEATS_PER_CHECK, 1);
+		if (dueEntries.size() > limit) {
+			Collections.sort(dueEntries, new Comparator<Map.Entry<String, Long>>() {
+				@Override
+				public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+					return o1.getValue().compareTo(o2.getValue());
+				}
+			});
+			LoggerUtil.warn("consul heartbeat exceed limit, due:" + dueEntries.size() + ", limit:" + limit
+					+ ", the rest are delayed to next check");
+			dueEntries = dueEntries.subList(0, limit);
+		}
+		for (Map.Entry<String, Long> entry : dueEntries) {
+			heartbeat(entry.getKey(), true);
+			serviceIds.replace(entry.getKey(), now + ConsulConstants.HEARTBEAT_CIRCLE);
+		}
+	}
+
+	private void heartbeat(String serviceid, boolean isPass) {
+		try {
+			if (isPass) {
+				client.checkPass(serviceid);
+			} else {
+				client.checkFail(serviceid);
 			}
+		} catch (Exception e) {
+			LoggerUtil.error(
+					"consul heartbeat-set check pass error!serviceid:"
+							+ serviceid, e);
 		}
 	}
 
 	public void close() {
 		heartbeatExecutor.shutdown();
-		jobExecutor.shutdown();
 		LoggerUtil.info("Consul heartbeatManager closed.");
 	}
 
 	/**
 	 * 添加consul serviceid，添加后的serviceid会通过定时设置passing状态保持心跳。
+	 * 心跳开关已开启时，在下一次检测时发送心跳。
 	 * 
 	 * @param serviceid
 	 */
 	public void addHeartbeatServcieId(String serviceid) {
-		serviceIds.add(serviceid);
+		serviceIds.put(serviceid, 0L);
+		// 每个心跳周期内能发送的心跳数不足时，部分service的心跳会顺延超过ttl而过期
+		long capacity = (long) ConsulConstants.MAX_HEARTBEATS_PER_CHECK * ConsulConstants.MAX_SWITCHER_CHECK_TIMES;
+		if (serviceIds.size() > capacity) {
+			LoggerUtil.warn("consul heartbeat services(" + serviceIds.size() + ") exceed capacity(" + capacity
+					+ ") of one heartbeat circle, increase ConsulConstants.MAX_HEARTBEATS_PER_CHECK");
+		}
 	}
 
 	/**
@@ -136,34 +199,6 @@ public class ConsulHeartbeatManager {
 		currentHeartBeatSwitcherStatus = open;
 	}
 
-	class HeartbeatJob implements Runnable {
-		private String serviceid;
-		private boolean isPass;
-
-		public HeartbeatJob(String serviceid, boolean isPass) {
-			super();
-			this.serviceid = serviceid;
-			this.isPass = isPass;
-		}
-
-		@Override
-		public void run() {
-			try {
-				if (isPass) {
-					client.checkPass(serviceid);
-				} else {
-					client.checkFail(serviceid);
-				}
-			} catch (Exception e) {
-				LoggerUtil.error(
-						"consul heartbeat-set check pass error!serviceid:"
-								+ serviceid, e);
-			}
-
-		}
-
-	}
-
 	public void setClient(MotanConsulClient client) {
 		this.client = client;
 	}
@@ -1,6 +1,7 @@
 package com.weibo.api.motan.registry.consul;
 
 import com.weibo.api.motan.common.URLParamType;
+import com.weibo.api.motan.core.DefaultThreadFactory;
 import com.weibo.api.motan.registry.consul.client.MotanConsulClient;
 import com.weibo.api.motan.registry.support.command.CommandFailbackRegistry;
 import com.weibo.api.motan.registry.support.command.CommandListener;
@@ -9,10 +10,15 @@ import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.util.LoggerUtil;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -20,15 +26,20 @@ public class ConsulRegistry extends CommandFailbackRegistry {
     private MotanConsulClient client;
     private ConsulHeartbeatManager heartbeatManager;
     private int lookupInterval;
+    private int lookupThreads;
+    private int lookupBlockSeconds;
 
     // service local cache. key: group, value: <service interface name, url list>
     private ConcurrentHashMap<String, ConcurrentHashMap<String, List<URL>>> serviceCache = new ConcurrentHashMap<String, ConcurrentHashMap<String, List<URL>>>();
     // command local cache. key: group, value: command content
     private ConcurrentHashMap<String, String> commandCache = new ConcurrentHashMap<String, String>();
 
-    // record lookup service thread, insure each group start only one thread, <group, lastConsulIndexId>
+    // consul service entries of each group, only changed entries are rebuilt to url. key: group, value: <service id, entry>
+    private ConcurrentHashMap<String, Map<String, ServiceEntry>> serviceEntries = new ConcurrentHashMap<String, Map<String, ServiceEntry>>();
+
+    // record lookup service task, insure each group schedule only one task, <group, lastConsulIndexId>
     private ConcurrentHashMap<String, Long> lookupGroupServices = new ConcurrentHashMap<String, Long>();
-    // record lookup command thread, <group, command>
+    // record lookup command task, <group, command>
     // TODO: 2016/6/17 change value to consul index
     private ConcurrentHashMap<String, String> lookupGroupCommands = new ConcurrentHashMap<String, String>();
 
@@ -38,6 +49,8 @@ public class ConsulRegistry extends CommandFailbackRegistry {
     // record subscribers command callback listeners, listener was called when corresponding command changes
     private ConcurrentHashMap<String, ConcurrentHashMap<URL, CommandListener>> commandListeners = new ConcurrentHashMap<String, ConcurrentHashMap<URL, CommandListener>>();
     private ThreadPoolExecutor notifyExecutor;
+    // all groups share the lookup threads
+    private ScheduledExecutorService lookupExecutor;
 
     public ConsulRegistry(URL url, MotanConsulClient client) {
         super(url);
@@ -49,9 +62,18 @@ public class ConsulRegistry extends CommandFailbackRegistry {
 
         ArrayBlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(20000);
         notifyExecutor = new ThreadPoolExecutor(10, 30, 30 * 1000, TimeUnit.MILLISECONDS, workQueue);
+        // group较多时调大线程数，避免各group的查询在共用线程上排队；或调小block时间，让每次查询尽快让出线程
+        lookupThreads = Math.max(1, getUrl().getIntParameter(URLParamType.registryLookupThreads.getName(), ConsulConstants.LOOKUP_THREADS));
+        lookupBlockSeconds = Math.max(0, getUrl().getIntParameter(URLParamType.registryLookupBlockSeconds.getName(),
+                (int) ConsulConstants.CONSUL_LOOKUP_BLOCK_SECONDS));
+        lookupExecutor = Executors.newScheduledThreadPool(lookupThreads, new DefaultThreadFactory("consulLookup", true));
         LoggerUtil.info("ConsulRegistry init finish.");
     }
 
+    public int getLookupThreads() {
+        return lookupThreads;
+    }
+
     public ConcurrentHashMap<String, ConcurrentHashMap<URL, ServiceListener>> getServiceListeners() {
         return serviceListeners;
     }
@@ -99,8 +121,8 @@ public class ConsulRegistry extends CommandFailbackRegistry {
     }
 
     /**
-     * if new group registed, start a new lookup thread
-     * each group start a lookup thread to discover service
+     * if new group registed, schedule a new lookup task
+     * each group schedule a lookup task to discover service, all tasks share the lookup threads
      *
      * @param url
      */
@@ -109,9 +131,9 @@ public class ConsulRegistry extends CommandFailbackRegistry {
         if (!lookupGroupServices.containsKey(group)) {
             Long value = lookupGroupServices.putIfAbsent(group, 0L);
             if (value == null) {
-                ServiceLookupThread lookupThread = new ServiceLookupThread(group);
-                lookupThread.setDaemon(true);
-                lookupThread.start();
+                LoggerUtil.info("schedule group service lookup. lookup interval: " + lookupInterval + "ms, group: " + group);
+                lookupExecutor.scheduleWithFixedDelay(new ServiceLookup(group), lookupInterval, lookupInterval, TimeUnit.MILLISECONDS);
+                checkLookupThreads();
             }
         }
     }
@@ -139,13 +161,25 @@ public class ConsulRegistry extends CommandFailbackRegistry {
         if (!lookupGroupCommands.containsKey(group)) {
             String command = lookupGroupCommands.putIfAbsent(group, "");
             if (command == null) {
-                CommandLookupThread lookupThread = new CommandLookupThread(group);
-                lookupThread.setDaemon(true);
-                lookupThread.start();
+                LoggerUtil.info("schedule group command lookup. lookup interval: " + lookupInterval + "ms, group: " + group);
+                lookupExecutor.scheduleWithFixedDelay(new CommandLookup(group), lookupInterval, lookupInterval, TimeUnit.MILLISECONDS);
+                checkLookupThreads();
             }
         }
     }
 
+    /**
+     * 查询任务数超过线程数时，每轮查询最多要等待 任务数/线程数 次block查询，提示调整registryLookupThreads
+     */
+    private void checkLookupThreads() {
+        int tasks = lookupGroupServices.size() + lookupGroupCommands.size();
+        if (tasks > lookupThreads) {
+            LoggerUtil.warn(String.format("consul lookup tasks(%d) exceed lookup threads(%d), each lookup may be delayed up to %d seconds, "
+                    + "consider increasing %s", tasks, lookupThreads, (tasks - 1) / lookupThreads * lookupBlockSeconds,
+                    URLParamType.registryLookupThreads.getName()));
+        }
+    }
+
     private void addCommandListener(URL url, CommandListener commandListener) {
         String group = url.getGroup();
         ConcurrentHashMap<URL, CommandListener> map = commandListeners.get(group);
@@ -215,21 +249,7 @@ public class ConsulRegistry extends CommandFailbackRegistry {
             List<ConsulService> services = response.getValue();
             if (services != null && !services.isEmpty()
                     && response.getConsulIndex() > lastConsulIndexId) {
-                ConcurrentHashMap<String, List<URL>> groupUrls = new ConcurrentHashMap<String, List<URL>>();
-                for (ConsulService service : services) {
-                    try {
-                        URL url = ConsulUtils.buildUrl(service);
-                        String cluster = ConsulUtils.getUrlClusterInfo(url);
-                        List<URL> urlList = groupUrls.get(cluster);
-                        if (urlList == null) {
-                            urlList = new ArrayList<URL>();
-                            groupUrls.put(cluster, urlList);
-                        }
-                        urlList.add(url);
-                    } catch (Exception e) {
-                        LoggerUtil.error("convert consul service to url fail! service:" + service, e);
-                    }
-                }
+                ConcurrentHashMap<String, List<URL>> groupUrls = diffServices(group, services);
                 lookupGroupServices.put(group, response.getConsulIndex());
                 return groupUrls;
             } else {
@@ -239,6 +259,64 @@ public class ConsulRegistry extends CommandFailbackRegistry {
         return null;
     }
 
+    /**
+     * diff consul services with last lookup result by service id and tags,
+     * only changed services are converted to url.
+     *
+     * @param group
+     * @param services
+     * @return full url list of the changed clusters
+     */
+    private ConcurrentHashMap<String, List<URL>> diffServices(String group, List<ConsulService> services) {
+        synchronized (group.intern()) {
+            Map<String, ServiceEntry> oldEntries = serviceEntries.get(group);
+            if (oldEntries == null) {
+                oldEntries = new HashMap<String, ServiceEntry>();
+            }
+            Map<String, ServiceEntry> newEntries = new HashMap<String, ServiceEntry>(services.size() * 2);
+            List<ServiceEntry> orderedEntries = new ArrayList<ServiceEntry>(services.size());
+            Set<String> changedClusters = new HashSet<String>();
+            for (ConsulService service : services) {
+                ServiceEntry old = oldEntries.get(service.getId());
+                ServiceEntry entry = old;
+                if (old == null || !old.isSame(service)) {
+                    try {
+                        entry = new ServiceEntry(service);
+                    } catch (Exception e) {
+                        LoggerUtil.error("convert consul service to url fail! service:" + service, e);
+                        continue;
+                    }
+                    changedClusters.add(entry.cluster);
+                    if (old != null) {
+                        changedClusters.add(old.cluster);
+                    }
+                }
+                if (newEntries.put(service.getId(), entry) == null) {
+                    orderedEntries.add(entry);
+                }
+            }
+            for (Map.Entry<String, ServiceEntry> old : oldEntries.entrySet()) {
+                if (!newEntries.containsKey(old.getKey())) {
+                    changedClusters.add(old.getValue().cluster);
+                }
+            }
+            serviceEntries.put(group, newEntries);
+
+            ConcurrentHashMap<String, List<URL>> groupUrls = new ConcurrentHashMap<String, List<URL>>();
+            for (ServiceEntry entry : orderedEntries) {
+                if (changedClusters.contains(entry.cluster)) {
+                    List<URL> urlList = groupUrls.get(entry.cluster);
+                    if (urlList == null) {
+                        urlList = new ArrayList<URL>();
+                        groupUrls.put(entry.cluster, urlList);
+                    }
+                    urlList.add(entry.url);
+                }
+            }
+            return groupUrls;
+        }
+    }
+
     private String lookupCommandUpdate(String group) {
         String command = client.lookupCommand(group);
         lookupGroupCommands.put(group, command);
@@ -254,7 +332,7 @@ public class ConsulRegistry extends CommandFailbackRegistry {
     private ConsulResponse<List<ConsulService>> lookupConsulService(String serviceName, Long lastConsulIndexId) {
         ConsulResponse<List<ConsulService>> response = client.lookupHealthService(
                 ConsulUtils.convertGroupToServiceName(serviceName),
-                lastConsulIndexId);
+                lastConsulIndexId, lookupBlockSeconds);
         return response;
     }
 
@@ -273,12 +351,12 @@ public class ConsulRegistry extends CommandFailbackRegistry {
             if (groupMap == null) {
                 serviceCache.put(group, groupUrls);
             }
+            // groupUrls only contains changed clusters, see diffServices
             for (Map.Entry<String, List<URL>> entry : groupUrls.entrySet()) {
                 boolean change = true;
                 if (groupMap != null) {
-                    List<URL> oldUrls = groupMap.get(entry.getKey());
                     List<URL> newUrls = entry.getValue();
-                    if (newUrls == null || newUrls.isEmpty() || ConsulUtils.isSame(entry.getValue(), oldUrls)) {
+                    if (newUrls == null || newUrls.isEmpty()) {
                         change = false;
                     } else {
                         groupMap.put(entry.getKey(), newUrls);
@@ -319,58 +397,63 @@ public class ConsulRegistry extends CommandFailbackRegistry {
         }
     }
 
-    private class ServiceLookupThread extends Thread {
+    private class ServiceLookup implements Runnable {
         private String group;
 
-        public ServiceLookupThread(String group) {
+        public ServiceLookup(String group) {
             this.group = group;
         }
 
         @Override
         public void run() {
-            LoggerUtil.info("start group lookup thread. lookup interval: " + lookupInterval + "ms, group: " + group);
-            while (true) {
-                try {
-                    sleep(lookupInterval);
+            try {
+                synchronized (group.intern()) {
                     ConcurrentHashMap<String, List<URL>> groupUrls = lookupServiceUpdate(group);
                     updateServiceCache(group, groupUrls, true);
-                } catch (Throwable e) {
-                    LoggerUtil.error("group lookup thread fail!", e);
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {
-                    }
                 }
+            } catch (Throwable e) {
+                LoggerUtil.error("group lookup fail! group: " + group, e);
             }
         }
     }
 
-    private class CommandLookupThread extends Thread {
+    private class CommandLookup implements Runnable {
         private String group;
 
-        public CommandLookupThread(String group) {
+        public CommandLookup(String group) {
             this.group = group;
         }
 
         @Override
         public void run() {
-            LoggerUtil.info("start command lookup thread. lookup interval: " + lookupInterval + "ms, group: " + group);
-            while (true) {
-                try {
-                    sleep(lookupInterval);
-                    String command = lookupCommandUpdate(group);
-                    updateCommandCache(group, command, true);
-                } catch (Throwable e) {
-                    LoggerUtil.error("group lookup thread fail!", e);
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {
-                    }
-                }
+            try {
+                String command = lookupCommandUpdate(group);
+                updateCommandCache(group, command, true);
+            } catch (Throwable e) {
+                LoggerUtil.error("group command lookup fail! group: " + group, e);
             }
         }
     }
 
+    /**
+     * consul service and its url, tags contain the full motan url, so same tags means same url.
+     */
+    private static class ServiceEntry {
+        private List<String> tags;
+        private URL url;
+        private String cluster;
+
+        public ServiceEntry(ConsulService service) {
+            this.tags = service.getTags();
+            this.url = ConsulUtils.buildUrl(service);
+            this.cluster = ConsulUtils.getUrlClusterInfo(url);
+        }
+
+        public boolean isSame(ConsulService service) {
+            return tags != null && tags.equals(service.getTags());
+        }
+    }
+
     private class NotifyService implements Runnable {
         private String service;
         private List<URL> urls;
@@ -44,9 +44,8 @@ public class ConsulEcwidClient extends MotanConsulClient {
 
 	@Override
 	public ConsulResponse<List<ConsulService>> lookupHealthService(
-			String serviceName, long lastConsulIndex) {
-		QueryParams queryParams = new QueryParams(
-				ConsulConstants.CONSUL_BLOCK_TIME_SECONDS, lastConsulIndex);
+			String serviceName, long lastConsulIndex, long waitSeconds) {
+		QueryParams queryParams = new QueryParams(waitSeconds, lastConsulIndex);
 		Response<List<HealthService>> orgResponse = client.getHealthServices(
 				serviceName, true, queryParams);
 		ConsulResponse<List<ConsulService>> newResponse = null;
@@ -2,6 +2,7 @@ package com.weibo.api.motan.registry.consul.client;
 
 import java.util.List;
 
+import com.weibo.api.motan.registry.consul.ConsulConstants;
 import com.weibo.api.motan.registry.consul.ConsulResponse;
 import com.weibo.api.motan.registry.consul.ConsulService;
 
@@ -52,8 +53,22 @@ public abstract class MotanConsulClient {
 	 * @param lastConsulIndex
 	 * @return
 	 */
+	public ConsulResponse<List<ConsulService>> lookupHealthService(
+			String serviceName, long lastConsulIndex) {
+		return lookupHealthService(serviceName, lastConsulIndex,
+				ConsulConstants.CONSUL_BLOCK_TIME_SECONDS);
+	}
+
+	/**
+	 * 获取最新的可用服务列表，最多block waitSeconds秒。
+	 *
+	 * @param serviceName
+	 * @param lastConsulIndex
+	 * @param waitSeconds
+	 * @return
+	 */
 	public abstract ConsulResponse<List<ConsulService>> lookupHealthService(
-			String serviceName, long lastConsulIndex);
+			String serviceName, long lastConsulIndex, long waitSeconds);
 
 	public abstract String lookupCommand(String group);
 
@@ -1,5 +1,6 @@
 package com.weibo.api.motan.registry.consul;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
@@ -35,6 +36,7 @@ public class ConsulHeartbeatManagerTest {
     @After
     public void tearDown() throws Exception {
         heartbeatManager = null;
+        ConsulConstants.MAX_HEARTBEATS_PER_CHECK = 100;
     }
 
     @Test
@@ -60,6 +62,66 @@ public class ConsulHeartbeatManagerTest {
 
     }
 
+    @Test
+    public void testSpreadHeartbeat() {
+        int serviceNum = 10;
+        for (int i = 0; i < serviceNum; i++) {
+            heartbeatManager.addHeartbeatServcieId("service" + i);
+        }
+        // 开关变更时所有serviceid立即心跳
+        heartbeatManager.processHeartbeat(true);
+        assertEquals(serviceNum, totalCheckPassTimes(serviceNum));
+
+        // 之后的心跳时间错开在半个周期内
+        long now = System.currentTimeMillis();
+        heartbeatManager.processDueHeartbeat(now + ConsulConstants.HEARTBEAT_CIRCLE / 2 - 50);
+        assertEquals(serviceNum, totalCheckPassTimes(serviceNum));
+        heartbeatManager.processDueHeartbeat(now + ConsulConstants.HEARTBEAT_CIRCLE * 3 / 4);
+        long passTimes = totalCheckPassTimes(serviceNum);
+        assertTrue(passTimes > serviceNum && passTimes < serviceNum * 2);
+        heartbeatManager.processDueHeartbeat(now + ConsulConstants.HEARTBEAT_CIRCLE + 50);
+        assertEquals(serviceNum * 2, totalCheckPassTimes(serviceNum));
+    }
+
+    @Test
+    public void testHeartbeatRateLimit() {
+        ConsulConstants.MAX_HEARTBEATS_PER_CHECK = 4;
+        int serviceNum = 10;
+        for (int i = 0; i < serviceNum; i++) {
+            heartbeatManager.addHeartbeatServcieId("service" + i);
+        }
+        // 开关打开时最多发送limit个心跳，其余的顺延到之后的检测
+        heartbeatManager.processHeartbeat(true);
+        assertEquals(4, totalCheckPassTimes(serviceNum));
+        long now = System.currentTimeMillis();
+        heartbeatManager.processDueHeartbeat(now);
+        assertEquals(8, totalCheckPassTimes(serviceNum));
+        heartbeatManager.processDueHeartbeat(now);
+        assertEquals(serviceNum, totalCheckPassTimes(serviceNum));
+        for (int i = 0; i < serviceNum; i++) {
+            assertEquals(1, client.getCheckPassTimes("service" + i));
+        }
+
+        // 所有serviceid同时到期时，每次检测最多发送limit个心跳
+        long later = now + ConsulConstants.HEARTBEAT_CIRCLE * 2;
+        heartbeatManager.processDueHeartbeat(later);
+        assertEquals(serviceNum + 4, totalCheckPassTimes(serviceNum));
+
+        // 关闭心跳不受限制，立即全部设置
+        heartbeatManager.processHeartbeat(false);
+        for (int i = 0; i < serviceNum; i++) {
+            assertTrue(!client.isWorking("service" + i));
+        }
+    }
+
+    private long totalCheckPassTimes(int serviceNum) {
+        long times = 0;
+        for (int i = 0; i < serviceNum; i++) {
+            times += client.getCheckPassTimes("service" + i);
+        }
+        return times;
+    }
+
     private void checkHeartbeat(Map<String, Long> services, boolean start, int times) throws InterruptedException {
         // 检查times次心跳
         for (int i = 0; i < times; i++) {
@@ -142,6 +142,41 @@ public class ConsulRegistryTest {
         Assert.assertTrue(urls.contains(serviceUrl));
     }
 
+    @Test
+    public void lookupOnlyChangedServices() throws Exception {
+        registry.subscribeService(clientUrl, createNewServiceListener(serviceUrl));
+        registry.doRegister(serviceUrl);
+        registry.doAvailable(null);
+        Thread.sleep(sleepTime);
+        List<URL> urls = registry.discoverService(serviceUrl);
+        Assert.assertEquals(1, urls.size());
+
+        // another service in the same group changed, urls of unchanged service are not rebuilt
+        URL otherUrl = new URL(serviceUrl.getProtocol(), serviceUrl.getHost(), 8003, "otherService", serviceUrl.getParameters());
+        registry.doRegister(otherUrl);
+        client.checkPass(ConsulUtils.convertConsulSerivceId(otherUrl));
+        Thread.sleep(interval * 2 + 500);
+        Assert.assertTrue(registry.discoverService(otherUrl).contains(otherUrl));
+        List<URL> newUrls = registry.discoverService(serviceUrl);
+        Assert.assertEquals(1, newUrls.size());
+        Assert.assertSame(urls.get(0), newUrls.get(0));
+    }
+
+    @Test
+    public void lookupSettingsFromUrl() throws Exception {
+        Assert.assertEquals(ConsulConstants.LOOKUP_THREADS, registry.getLookupThreads());
+        registry.discoverService(clientUrl);
+        Assert.assertEquals(ConsulConstants.CONSUL_LOOKUP_BLOCK_SECONDS, client.getLastWaitSeconds());
+
+        URL url = registerUrl.createCopy();
+        url.addParameter(URLParamType.registryLookupThreads.getName(), "32");
+        url.addParameter(URLParamType.registryLookupBlockSeconds.getName(), "5");
+        ConsulRegistry customRegistry = new ConsulRegistry(url, client);
+        Assert.assertEquals(32, customRegistry.getLookupThreads());
+        customRegistry.discoverService(clientUrl);
+        Assert.assertEquals(5, client.getLastWaitSeconds());
+    }
+
     @Test
     public void discoverCommand() throws Exception {
         String result = registry.discoverCommand(clientUrl);
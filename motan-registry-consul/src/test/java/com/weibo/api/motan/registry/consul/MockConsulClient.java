@@ -26,6 +26,8 @@ public class MockConsulClient extends MotanConsulClient {
 
     private int mockServiceNum = 10;// 获取服务时，返回的mock service数量
     private long mockIndex = 10;
+    // 最近一次服务查询的block时间
+    private volatile long lastWaitSeconds = -1;
 
     public MockConsulClient(String host, int port) {
         super(host, port);
@@ -61,7 +63,8 @@ public class MockConsulClient extends MotanConsulClient {
     }
 
     @Override
-    public ConsulResponse<List<ConsulService>> lookupHealthService(String serviceName, long lastConsulIndex) {
+    public ConsulResponse<List<ConsulService>> lookupHealthService(String serviceName, long lastConsulIndex, long waitSeconds) {
+        lastWaitSeconds = waitSeconds;
         ConsulResponse<List<ConsulService>> res = new ConsulResponse<List<ConsulService>>();
         res.setConsulIndex(lastConsulIndex + 1);
         res.setConsulKnownLeader(true);
@@ -94,6 +97,10 @@ public class MockConsulClient extends MotanConsulClient {
         return times.get();
     }
 
+    public long getLastWaitSeconds() {
+        return lastWaitSeconds;
+    }
+
     public int getMockServiceNum() {
         return mockServiceNum;
     }
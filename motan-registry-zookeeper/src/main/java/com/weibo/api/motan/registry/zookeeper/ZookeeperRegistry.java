@@ -18,19 +18,29 @@ package com.weibo.api.motan.registry.zookeeper;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.IZkDataListener;
 import org.I0Itec.zkclient.IZkStateListener;
 import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.exception.ZkNoNodeException;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 
 import com.weibo.api.motan.common.MotanConstants;
+import com.weibo.api.motan.core.DefaultThreadFactory;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.registry.support.command.CommandFailbackRegistry;
 import com.weibo.api.motan.registry.support.command.CommandListener;
@@ -40,16 +50,27 @@ import com.weibo.api.motan.util.ConcurrentHashSet;
 import com.weibo.api.motan.util.LoggerUtil;
 
 public class ZookeeperRegistry extends CommandFailbackRegistry {
+    // 新增子节点数或批量变更的节点数超过此值时并行访问zookeeper
+    private static final int PARALLEL_THRESHOLD = 4;
+    private static final ExecutorService zkExecutor = Executors.newFixedThreadPool(8, new DefaultThreadFactory("zkRegistryWorker", true));
+
     private ZkClient zkClient;
+    // 服务节点路径 -> (子节点名 -> url) 的缓存，子节点的mzxid未变化时不再解析url
+    private final ConcurrentHashMap<String, Map<String, ChildNode>> childUrlCache = new ConcurrentHashMap<String, Map<String, ChildNode>>();
     private Set<URL> availableServices = new ConcurrentHashSet<URL>();
     private ConcurrentHashMap<URL, ConcurrentHashMap<ServiceListener, IZkChildListener>> serviceListeners = new ConcurrentHashMap<URL, ConcurrentHashMap<ServiceListener, IZkChildListener>>();
     private ConcurrentHashMap<URL, ConcurrentHashMap<CommandListener, IZkDataListener>> commandListeners = new ConcurrentHashMap<URL, ConcurrentHashMap<CommandListener, IZkDataListener>>();
     private final ReentrantLock clientLock = new ReentrantLock();
-    private final ReentrantLock serverLock = new ReentrantLock();
+    // 单个服务的节点操作共享读锁并按url加锁，不同服务可以并发注册；批量切换和重连时独占写锁
+    private final ReentrantReadWriteLock serverLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] serverUrlLocks = new ReentrantLock[16];
     
     public ZookeeperRegistry(URL url, ZkClient client) {
         super(url);
         this.zkClient = client;
+        for (int i = 0; i < serverUrlLocks.length; i++) {
+            serverUrlLocks[i] = new ReentrantLock();
+        }
         IZkStateListener zkStateListener = new IZkStateListener() {
             @Override
             public void handleStateChanged(Watcher.Event.KeeperState state) throws Exception {
@@ -59,6 +80,7 @@ public class ZookeeperRegistry extends CommandFailbackRegistry {
             @Override
             public void handleNewSession() throws Exception {
                 LoggerUtil.info("zkRegistry get new session notify.");
+                childUrlCache.clear();
                 reconnectService();
                 reconnectClient();
             }
@@ -214,128 +236,301 @@ public class ZookeeperRegistry extends CommandFailbackRegistry {
 
     @Override
     protected void doRegister(URL url) {
+        ReentrantLock urlLock = lockServerUrl(url);
         try {
-            serverLock.lock();
             // 防止旧节点未正常注销
-            removeNode(url, ZkNodeType.AVAILABLE_SERVER);
-            removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+            removeServerNodes(url);
             createNode(url, ZkNodeType.UNAVAILABLE_SERVER);
         } catch (Throwable e) {
             throw new MotanFrameworkException(String.format("Failed to register %s to zookeeper(%s), cause: %s", url, getUrl(), e.getMessage()), e);
         } finally {
-            serverLock.unlock();
+            unlockServerUrl(urlLock);
         }
     }
 
     @Override
     protected void doUnregister(URL url) {
+        ReentrantLock urlLock = lockServerUrl(url);
         try {
-            serverLock.lock();
-            removeNode(url, ZkNodeType.AVAILABLE_SERVER);
-            removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+            removeServerNodes(url);
         } catch (Throwable e) {
             throw new MotanFrameworkException(String.format("Failed to unregister %s to zookeeper(%s), cause: %s", url, getUrl(), e.getMessage()), e);
         } finally {
-            serverLock.unlock();
+            unlockServerUrl(urlLock);
         }
     }
 
     @Override
     protected void doAvailable(URL url) {
-        try{
-            serverLock.lock();
-            if (url == null) {
+        if (url == null) {
+            try {
+                serverLock.writeLock().lock();
                 availableServices.addAll(getRegisteredServiceUrls());
-                for (URL u : getRegisteredServiceUrls()) {
-                    removeNode(u, ZkNodeType.AVAILABLE_SERVER);
-                    removeNode(u, ZkNodeType.UNAVAILABLE_SERVER);
-                    createNode(u, ZkNodeType.AVAILABLE_SERVER);
-                }
-            } else {
+                switchNodes(getRegisteredServiceUrls(), ZkNodeType.AVAILABLE_SERVER);
+            } finally {
+                serverLock.writeLock().unlock();
+            }
+        } else {
+            ReentrantLock urlLock = lockServerUrl(url);
+            try {
                 availableServices.add(url);
-                removeNode(url, ZkNodeType.AVAILABLE_SERVER);
-                removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
-                createNode(url, ZkNodeType.AVAILABLE_SERVER);
+                switchNode(url, ZkNodeType.AVAILABLE_SERVER);
+            } finally {
+                unlockServerUrl(urlLock);
             }
-        } finally {
-            serverLock.unlock();
         }
     }
 
     @Override
     protected void doUnavailable(URL url) {
-        try{
-            serverLock.lock();
-            if (url == null) {
+        if (url == null) {
+            try {
+                serverLock.writeLock().lock();
                 availableServices.removeAll(getRegisteredServiceUrls());
-                for (URL u : getRegisteredServiceUrls()) {
-                    removeNode(u, ZkNodeType.AVAILABLE_SERVER);
-                    removeNode(u, ZkNodeType.UNAVAILABLE_SERVER);
-                    createNode(u, ZkNodeType.UNAVAILABLE_SERVER);
-                }
-            } else {
+                switchNodes(getRegisteredServiceUrls(), ZkNodeType.UNAVAILABLE_SERVER);
+            } finally {
+                serverLock.writeLock().unlock();
+            }
+        } else {
+            ReentrantLock urlLock = lockServerUrl(url);
+            try {
                 availableServices.remove(url);
-                removeNode(url, ZkNodeType.AVAILABLE_SERVER);
-                removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
-                createNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+                switchNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+            } finally {
+                unlockServerUrl(urlLock);
             }
-        } finally {
-            serverLock.unlock();
         }
     }
 
+    private ReentrantLock lockServerUrl(URL url) {
+        serverLock.readLock().lock();
+        ReentrantLock urlLock = serverUrlLocks[(url.hashCode() & Integer.MAX_VALUE) % serverUrlLocks.length];
+        urlLock.lock();
+        return urlLock;
+    }
+
+    private void unlockServerUrl(ReentrantLock urlLock) {
+        urlLock.unlock();
+        serverLock.readLock().unlock();
+    }
+
+    /**
+     * 把子节点转换为url列表。每个子节点都读取一次以取得其Stat，
+     * mzxid与缓存相同（节点未被重建、数据未被修改）时直接使用缓存的url，否则重新解析
+     */
     private List<URL> nodeChildsToUrls(String parentPath, List<String> currentChilds) {
         List<URL> urls = new ArrayList<URL>();
-        if (currentChilds != null) {
-            for (String node : currentChilds) {
-                String nodePath = parentPath + MotanConstants.PATH_SEPARATOR + node;
-                String data = zkClient.readData(nodePath, true);
+        if (currentChilds == null || currentChilds.isEmpty()) {
+            childUrlCache.remove(parentPath);
+            return urls;
+        }
+        Map<String, ChildNode> cachedNodes = childUrlCache.get(parentPath);
+        if (cachedNodes == null) {
+            cachedNodes = new HashMap<String, ChildNode>();
+        }
+
+        Map<String, ChildNode> childNodes = readChildNodes(parentPath, currentChilds, cachedNodes);
+        childUrlCache.put(parentPath, childNodes);
+
+        int parsed = 0;
+        for (String node : currentChilds) {
+            ChildNode childNode = childNodes.get(node);
+            if (childNode != null) {
+                urls.add(childNode.url);
+                if (childNode != cachedNodes.get(node)) {
+                    parsed++;
+                }
+            }
+        }
+        LoggerUtil.info(String.format("[ZookeeperRegistry] child urls refresh: path=%s, parsed=%d, cached=%d, total=%d", parentPath,
+                parsed, urls.size() - parsed, urls.size()));
+        return urls;
+    }
+
+    private Map<String, ChildNode> readChildNodes(final String parentPath, List<String> nodes, final Map<String, ChildNode> cachedNodes) {
+        Map<String, ChildNode> childNodes = new HashMap<String, ChildNode>(nodes.size() * 4 / 3 + 1);
+        if (nodes.size() <= PARALLEL_THRESHOLD) {
+            for (String node : nodes) {
+                ChildNode childNode = readChildNode(parentPath, node, cachedNodes.get(node));
+                if (childNode != null) {
+                    childNodes.put(node, childNode);
+                }
+            }
+            return childNodes;
+        }
+
+        List<Callable<ChildNode>> tasks = new ArrayList<Callable<ChildNode>>(nodes.size());
+        for (final String node : nodes) {
+            tasks.add(new Callable<ChildNode>() {
+                @Override
+                public ChildNode call() {
+                    return readChildNode(parentPath, node, cachedNodes.get(node));
+                }
+            });
+        }
+        try {
+            List<Future<ChildNode>> futures = zkExecutor.invokeAll(tasks);
+            for (int i = 0; i < nodes.size(); i++) {
                 try {
-                    URL url = URL.valueOf(data);
-                    urls.add(url);
+                    ChildNode childNode = futures.get(i).get();
+                    if (childNode != null) {
+                        childNodes.put(nodes.get(i), childNode);
+                    }
                 } catch (Exception e) {
-                    LoggerUtil.warn(String.format("Found malformed urls from ZookeeperRegistry, path=%s", nodePath), e);
+                    LoggerUtil.warn(String.format("Failed to read node from ZookeeperRegistry, path=%s, node=%s", parentPath, nodes.get(i)), e);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MotanFrameworkException(String.format("Interrupted when read nodes from ZookeeperRegistry, path=%s", parentPath), e);
         }
-        return urls;
+        return childNodes;
     }
 
-    private void createNode(URL url, ZkNodeType nodeType) {
-        String nodeTypePath = ZkUtils.toNodeTypePath(url, nodeType);
-        if (!zkClient.exists(nodeTypePath)) {
-            zkClient.createPersistent(nodeTypePath, true);
+    /**
+     * 读取子节点的数据和Stat。节点被删除后重建或数据被修改时mzxid都会变化，mzxid与缓存相同时返回缓存的节点
+     */
+    private ChildNode readChildNode(String parentPath, String node, ChildNode cached) {
+        String nodePath = parentPath + MotanConstants.PATH_SEPARATOR + node;
+        Stat stat = new Stat();
+        String data;
+        try {
+            data = zkClient.readData(nodePath, stat);
+        } catch (ZkNoNodeException e) {
+            return null;
+        }
+        if (cached != null && cached.mzxid == stat.getMzxid()) {
+            return cached;
+        }
+        try {
+            return new ChildNode(URL.valueOf(data), stat.getMzxid());
+        } catch (Exception e) {
+            LoggerUtil.warn(String.format("Found malformed urls from ZookeeperRegistry, path=%s", nodePath), e);
         }
-        zkClient.createEphemeral(ZkUtils.toNodePath(url, nodeType), url.toFullStr());
+        return null;
     }
 
-    private void removeNode(URL url, ZkNodeType nodeType) {
+    /**
+     * 批量切换服务节点的类型，节点较多时并行执行。所有节点都执行完后，如有失败抛出第一个异常
+     */
+    private void switchNodes(Collection<URL> urls, final ZkNodeType nodeType) {
+        if (urls.size() <= PARALLEL_THRESHOLD) {
+            for (URL url : urls) {
+                switchNode(url, nodeType);
+            }
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(urls.size());
+        for (final URL url : urls) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    switchNode(url, nodeType);
+                    return null;
+                }
+            });
+        }
+        try {
+            Throwable cause = null;
+            int failed = 0;
+            for (Future<Object> future : zkExecutor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (cause == null) {
+                        cause = e.getCause();
+                    }
+                }
+            }
+            if (cause != null) {
+                throw new MotanFrameworkException(String.format("Failed to switch %d of %d nodes to %s in zookeeper(%s), cause: %s", failed,
+                        urls.size(), nodeType.getValue(), getUrl(), cause.getMessage()), cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MotanFrameworkException(String.format("Interrupted when switch nodes to %s in zookeeper(%s)", nodeType.getValue(),
+                    getUrl()), e);
+        }
+    }
+
+    /**
+     * 删除服务的旧节点，并创建指定类型的节点
+     */
+    private void switchNode(URL url, ZkNodeType nodeType) {
+        removeNode(url, ZkNodeType.AVAILABLE_SERVER);
+        removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+        createNode(url, nodeType);
+    }
+
+    private void createNode(URL url, ZkNodeType nodeType) {
         String nodePath = ZkUtils.toNodePath(url, nodeType);
-        if (zkClient.exists(nodePath)) {
-            zkClient.delete(nodePath);
+        try {
+            zkClient.createEphemeral(nodePath, url.toFullStr());
+        } catch (ZkNoNodeException e) {
+            // 父节点不存在时才创建父节点，节省一次exists的网络交互
+            zkClient.createPersistent(ZkUtils.toNodeTypePath(url, nodeType), true);
+            zkClient.createEphemeral(nodePath, url.toFullStr());
         }
     }
+
+    /**
+     * 同时删除服务的available和unavailable节点，其中一个在zkExecutor上执行，单个服务注册、注销时节省一次zookeeper的往返。
+     * zkExecutor上的任务（如switchNodes）不能调用，避免zkExecutor的线程互相等待
+     */
+    private void removeServerNodes(final URL url) {
+        Future<Object> future = zkExecutor.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                removeNode(url, ZkNodeType.AVAILABLE_SERVER);
+                return null;
+            }
+        });
+        removeNode(url, ZkNodeType.UNAVAILABLE_SERVER);
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw new MotanFrameworkException(String.format("Failed to remove node %s in zookeeper(%s), cause: %s", url, getUrl(),
+                    e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MotanFrameworkException(String.format("Interrupted when remove node %s in zookeeper(%s)", url, getUrl()), e);
+        }
+    }
+
+    private void removeNode(URL url, ZkNodeType nodeType) {
+        // 节点不存在时delete返回false，不需要先判断exists
+        zkClient.delete(ZkUtils.toNodePath(url, nodeType));
+    }
     
     private void reconnectService() {
         Collection<URL> allRegisteredServices = getRegisteredServiceUrls();
         if (allRegisteredServices != null && !allRegisteredServices.isEmpty()) {
             try {
-                serverLock.lock();
-                for (URL url : getRegisteredServiceUrls()) {
-                    doRegister(url);
+                serverLock.writeLock().lock();
+                // 每个服务直接恢复为断开前的节点类型
+                List<URL> unavailableUrls = new ArrayList<URL>();
+                for (URL url : allRegisteredServices) {
+                    if (!availableServices.contains(url)) {
+                        unavailableUrls.add(url);
+                    }
                 }
-                LoggerUtil.info("[{}] reconnect: register services {}", registryClassName, allRegisteredServices);
-
+                List<URL> availableUrls = new ArrayList<URL>();
                 for (URL url : availableServices) {
-                    if (!getRegisteredServiceUrls().contains(url)) {
+                    if (!allRegisteredServices.contains(url)) {
                         LoggerUtil.warn("reconnect url not register. url:{}", url);
                         continue;
                     }
-                    doAvailable(url);
+                    availableUrls.add(url);
                 }
+                switchNodes(unavailableUrls, ZkNodeType.UNAVAILABLE_SERVER);
+                LoggerUtil.info("[{}] reconnect: register services {}", registryClassName, allRegisteredServices);
+
+                switchNodes(availableUrls, ZkNodeType.AVAILABLE_SERVER);
                 LoggerUtil.info("[{}] reconnect: available services {}", registryClassName, availableServices);
             } finally {
-                serverLock.unlock();
+                serverLock.writeLock().unlock();
             }
         }
     }
@@ -369,4 +564,14 @@ public class ZookeeperRegistry extends CommandFailbackRegistry {
             }
         }
     }
+
+    private static class ChildNode {
+        private final URL url;
+        private final long mzxid;
+
+        ChildNode(URL url, long mzxid) {
+            this.url = url;
+            this.mzxid = mzxid;
+        }
+    }
 }
@@ -11,8 +11,14 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class ZookeeperRegistryTest {
     private ZookeeperRegistry registry;
@@ -115,6 +121,73 @@ public class ZookeeperRegistryTest {
         Assert.assertTrue(results.contains(serviceUrl));
     }
 
+    @Test
+    public void serviceChildChange() throws Exception {
+        final List<List<URL>> notified = new CopyOnWriteArrayList<List<URL>>();
+        ServiceListener serviceListener = new ServiceListener() {
+            @Override
+            public void notifyService(URL refUrl, URL registryUrl, List<URL> urls) {
+                notified.add(urls);
+            }
+        };
+        registry.subscribeService(clientUrl, serviceListener);
+        registry.doRegister(serviceUrl);
+        registry.doAvailable(serviceUrl);
+        URL serviceUrl2 = new URL(MotanConstants.PROTOCOL_MOTAN, "127.0.0.1", 8002, service);
+        serviceUrl2.addParameter("group", "aaa");
+        registry.doRegister(serviceUrl2);
+        registry.doAvailable(serviceUrl2);
+        Thread.sleep(2000);
+        List<URL> urls = notified.get(notified.size() - 1);
+        Assert.assertEquals(2, urls.size());
+        Assert.assertTrue(urls.contains(serviceUrl) && urls.contains(serviceUrl2));
+
+        // 节点删除后以新的数据重建，通知中应为新的url
+        URL changedUrl = serviceUrl.createCopy();
+        changedUrl.addParameter("weight", "2");
+        registry.doAvailable(changedUrl);
+        Thread.sleep(2000);
+        urls = notified.get(notified.size() - 1);
+        Assert.assertEquals(2, urls.size());
+        Assert.assertTrue(urls.contains(changedUrl) && urls.contains(serviceUrl2));
+
+        registry.doUnavailable(serviceUrl2);
+        Thread.sleep(2000);
+        urls = notified.get(notified.size() - 1);
+        Assert.assertEquals(1, urls.size());
+        Assert.assertTrue(urls.contains(changedUrl));
+        registry.unsubscribeService(clientUrl, serviceListener);
+    }
+
+    @Test
+    public void discoverChangedNode() throws Exception {
+        registry.doRegister(serviceUrl);
+        registry.doAvailable(serviceUrl);
+        Assert.assertTrue(registry.discoverService(clientUrl).contains(serviceUrl));
+
+        // 同时新增一个节点并重建已缓存的节点，子节点集合发生了变化，重建的节点仍应读到新数据
+        String nodePath = ZkUtils.toNodePath(serviceUrl, ZkNodeType.AVAILABLE_SERVER);
+        URL recreatedUrl = serviceUrl.createCopy();
+        recreatedUrl.addParameter("weight", "2");
+        zkClient.delete(nodePath);
+        zkClient.createEphemeral(nodePath, recreatedUrl.toFullStr());
+        URL serviceUrl2 = new URL(MotanConstants.PROTOCOL_MOTAN, "127.0.0.1", 8002, service);
+        serviceUrl2.addParameter("group", "aaa");
+        registry.doRegister(serviceUrl2);
+        registry.doAvailable(serviceUrl2);
+        List<URL> results = registry.discoverService(clientUrl);
+        Assert.assertEquals(2, results.size());
+        Assert.assertTrue(results.contains(recreatedUrl) && results.contains(serviceUrl2));
+
+        // 节点数据被直接修改
+        URL updatedUrl = serviceUrl.createCopy();
+        updatedUrl.addParameter("weight", "3");
+        zkClient.writeData(nodePath, updatedUrl.toFullStr());
+        results = registry.discoverService(clientUrl);
+        Assert.assertEquals(2, results.size());
+        Assert.assertTrue(results.contains(updatedUrl) && results.contains(serviceUrl2));
+    }
+
     @Test
     public void discoverCommand() throws Exception {
         String result = registry.discoverCommand(clientUrl);
@@ -160,4 +233,62 @@ public class ZookeeperRegistryTest {
         Assert.assertFalse(available.contains(node));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void batchAvailable() throws Exception {
+        List<URL> urls = new ArrayList<URL>();
+        for (int i = 0; i < 10; i++) {
+            URL url = serviceUrl.createCopy();
+            url.setPort(8001 + i);
+            urls.add(url);
+            registry.register(url);
+        }
+        String unavailablePath = ZkUtils.toNodeTypePath(serviceUrl, ZkNodeType.UNAVAILABLE_SERVER);
+        String availablePath = ZkUtils.toNodeTypePath(serviceUrl, ZkNodeType.AVAILABLE_SERVER);
+
+        registry.doAvailable(null);
+        Assert.assertEquals(urls.size(), zkClient.getChildren(availablePath).size());
+        Assert.assertTrue(zkClient.getChildren(unavailablePath).isEmpty());
+
+        registry.doUnavailable(null);
+        Assert.assertTrue(zkClient.getChildren(availablePath).isEmpty());
+        List<String> unavailable = zkClient.getChildren(unavailablePath);
+        Assert.assertEquals(urls.size(), unavailable.size());
+        for (URL url : urls) {
+            Assert.assertTrue(unavailable.contains(url.getServerPortStr()));
+        }
+    }
+
+    @Test
+    public void concurrentRegister() throws Exception {
+        final List<URL> urls = new ArrayList<URL>();
+        for (int i = 0; i < 20; i++) {
+            URL url = serviceUrl.createCopy();
+            url.setPort(8001 + i);
+            urls.add(url);
+        }
+        // 不同服务的注册并发执行，注册后都只有unavailable节点
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final URL url : urls) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    registry.doRegister(url);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        String unavailablePath = ZkUtils.toNodeTypePath(serviceUrl, ZkNodeType.UNAVAILABLE_SERVER);
+        String availablePath = ZkUtils.toNodeTypePath(serviceUrl, ZkNodeType.AVAILABLE_SERVER);
+        Assert.assertEquals(urls.size(), zkClient.getChildren(unavailablePath).size());
+        Assert.assertFalse(zkClient.exists(availablePath) && !zkClient.getChildren(availablePath).isEmpty());
+
+        for (URL url : urls) {
+            registry.doUnregister(url);
+        }
+        Assert.assertTrue(zkClient.getChildren(unavailablePath).isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.transport.netty;
+
+import java.util.List;
+
+/**
+ * 
+ * 多个request合并成的一个netty消息，server端各个请求单独返回response。
+ * 
+ * <pre>
+ * 	body:  count(4 bytes) + [requestId(8 bytes) + length(4 bytes) + codec编码后的消息] * count
+ * </pre>
+ *
+ */
+class BatchMessage {
+	private final List<Object> messages;
+
+	BatchMessage(List<Object> messages) {
+		this.messages = messages;
+	}
+
+	List<Object> getMessages() {
+		return messages;
+	}
+}
@@ -17,19 +17,26 @@
 package com.weibo.api.motan.transport.netty;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 
 import com.weibo.api.motan.common.ChannelState;
 import com.weibo.api.motan.common.URLParamType;
 import com.weibo.api.motan.exception.MotanErrorMsgConstant;
 import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.exception.MotanServiceException;
+import com.weibo.api.motan.rpc.DefaultRequest;
 import com.weibo.api.motan.rpc.Future;
 import com.weibo.api.motan.rpc.FutureListener;
+import com.weibo.api.motan.rpc.MethodSettings;
 import com.weibo.api.motan.rpc.Request;
 import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.rpc.RpcContext;
 import com.weibo.api.motan.rpc.URL;
 import com.weibo.api.motan.transport.TransportException;
 import com.weibo.api.motan.util.ExceptionUtil;
@@ -58,32 +65,44 @@ public class NettyChannel implements com.weibo.api.motan.transport.Channel {
 
 	@Override
 	public Response request(Request request) throws TransportException {
-	    int timeout = nettyClient.getUrl().getMethodParameter(request.getMethodName(), request.getParamtersDesc(),
-	            URLParamType.requestTimeout.getName(), URLParamType.requestTimeout.getIntValue());
+		MethodSettings methodSettings = nettyClient.getUrl().getMethodSettings(request.getMethodName(), request.getParamtersDesc());
+		int timeout = methodSettings.getRequestTimeout();
 		if (timeout <= 0) {
                throw new MotanFrameworkException("NettyClient init Error: timeout(" + timeout + ") <= 0 is forbid.",
                        MotanErrorMsgConstant.FRAMEWORK_INIT_ERROR);
            }
+		// 在provider中发起的下游调用，超时时间不超过上游请求的剩余时间
+		long remaining = RpcContext.getContext().getRemainingTime();
+		if (remaining <= 0) {
+			throw new MotanServiceException("NettyChannel request deadline exceeded: url=" + nettyClient.getUrl().getUri() + " "
+					+ MotanFrameworkUtil.toString(request), MotanErrorMsgConstant.SERVICE_TIMEOUT);
+		}
+		if (remaining < timeout) {
+			timeout = (int) remaining;
+		}
+		request.setAttachment(URLParamType.remainingTime.getName(), String.valueOf(timeout));
+
 		NettyResponseFuture response = new NettyResponseFuture(request, timeout, this.nettyClient);
 		this.nettyClient.registerCallback(request.getRequestId(), response);
 
+		int batchSize = methodSettings.getBatchSize();
+		if (batchSize > 1) {
+			// 合并后异步发送，发送失败时在writeBatch中通知future。
+			// 编码在发送时才进行，ha策略可能继续修改同一个request（retries、attachment），因此入队的是快照
+			watchResponse(response);
+			nettyClient.getBatcher().add(snapshot(request), this, batchSize);
+			return response;
+		}
+
 		ChannelFuture writeFuture = this.channel.write(request);
 
 		boolean result = writeFuture.awaitUninterruptibly(timeout, TimeUnit.MILLISECONDS);
 
 		if (result && writeFuture.isSuccess()) {
-			response.addListener(new FutureListener() {
-				@Override
-				public void operationComplete(Future future) throws Exception {
-					if (future.isSuccess() || (future.isDone() && ExceptionUtil.isBizException(future.getException()))) {
-						// 成功的调用 
-						nettyClient.resetErrorCount();
-					} else {
-						// 失败的调用 
-						nettyClient.incrErrorCount();
-					}
-				}
-			});
+			if (nettyClient.isRequestCancel()) {
+				response.setCancelChannel(this);
+			}
+			watchResponse(response);
 			return response;
 		}
 
@@ -108,6 +127,75 @@ public class NettyChannel implements com.weibo.api.motan.transport.Channel {
 		}
 	}
 
+	private void watchResponse(NettyResponseFuture response) {
+		response.addListener(new FutureListener() {
+			@Override
+			public void operationComplete(Future future) throws Exception {
+				if (future.isSuccess() || (future.isDone() && ExceptionUtil.isBizException(future.getException()))) {
+					// 成功的调用 
+					nettyClient.resetErrorCount();
+				} else {
+					// 失败的调用 
+					nettyClient.incrErrorCount();
+				}
+			}
+		});
+	}
+
+	private Request snapshot(Request request) {
+		DefaultRequest copy = new DefaultRequest();
+		copy.setInterfaceName(request.getInterfaceName());
+		copy.setMethodName(request.getMethodName());
+		copy.setParamtersDesc(request.getParamtersDesc());
+		copy.setArguments(request.getArguments());
+		copy.setAttachments(new HashMap<String, String>(request.getAttachments()));
+		copy.setRequestId(request.getRequestId());
+		copy.setRetries(request.getRetries());
+		copy.setRpcProtocolVersion(request.getRpcProtocolVersion());
+		return copy;
+	}
+
+	/**
+	 * 发送合并后的请求，只有一个请求时按普通请求发送
+	 */
+	void writeBatch(final List<Request> requests) {
+		Object message = requests.size() == 1 ? requests.get(0) : new BatchMessage(new ArrayList<Object>(requests));
+		ChannelFuture writeFuture;
+		try {
+			writeFuture = this.channel.write(message);
+		} catch (Exception e) {
+			nettyClient.failBatch(requests, e);
+			return;
+		}
+		writeFuture.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (!future.isSuccess()) {
+					nettyClient.failBatch(requests, future.getCause());
+				} else if (nettyClient.isRequestCancel()) {
+					for (Request request : requests) {
+						NettyResponseFuture response = nettyClient.getCallback(request.getRequestId());
+						if (response != null) {
+							response.setCancelChannel(NettyChannel.this);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 通知server取消请求，只发送消息，不等待结果
+	 * 
+	 * @param requestId
+	 */
+	void cancel(long requestId) {
+		org.jboss.netty.channel.Channel nettyChannel = this.channel;
+		if (nettyChannel != null && nettyChannel.isConnected()) {
+			nettyChannel.write(new CancelMessage(requestId));
+		}
+	}
+
 	@Override
 	public synchronized boolean open() {
 		if (isAvailable()) {
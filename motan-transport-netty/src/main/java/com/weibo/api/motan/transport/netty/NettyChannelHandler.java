@@ -16,6 +16,8 @@
 
 package com.weibo.api.motan.transport.netty;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -36,6 +38,7 @@ import com.weibo.api.motan.rpc.RpcContext;
 import com.weibo.api.motan.transport.Channel;
 import com.weibo.api.motan.transport.MessageHandler;
 import com.weibo.api.motan.util.LoggerUtil;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
 import com.weibo.api.motan.util.NetUtils;
 
 /**
@@ -48,6 +51,8 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 	private ThreadPoolExecutor threadPoolExecutor;
 	private MessageHandler messageHandler;
 	private Channel serverChannel;
+	// 排队或处理中的请求，用于响应client的cancel消息
+	private ConcurrentMap<RequestKey, RequestTask> processingTasks = new ConcurrentHashMap<RequestKey, RequestTask>();
 
 	public NettyChannelHandler(Channel serverChannel) {
 		this.serverChannel = serverChannel;
@@ -82,9 +87,13 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 		Object message = e.getMessage();
 
 		if (message instanceof Request) {
-			processRequest(ctx, e);
+			processRequest(ctx, (Request) message);
 		} else if (message instanceof Response) {
-			processResponse(ctx, e);
+			processResponse(ctx, message);
+		} else if (message instanceof CancelMessage) {
+			processCancel(ctx, (CancelMessage) message);
+		} else if (message instanceof BatchMessage) {
+			processBatch(ctx, (BatchMessage) message);
 		} else {
 			LoggerUtil.error("NettyChannelHandler messageReceived type not support: class=" + message.getClass());
 			throw new MotanFrameworkException("NettyChannelHandler messageReceived type not support: class="
@@ -98,34 +107,53 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 	 * </pre>
 	 * 
 	 * @param ctx
-	 * @param e
+	 * @param request
 	 */
-	private void processRequest(final ChannelHandlerContext ctx, MessageEvent e) {
-		final Request request = (Request) e.getMessage();
+	private void processRequest(final ChannelHandlerContext ctx, final Request request) {
 		request.setAttachment(URLParamType.host.getName(), NetUtils.getHostName(ctx.getChannel().getRemoteAddress()));
 
 		final long processStartTime = System.currentTimeMillis();
+		final long deadline = MotanFrameworkUtil.getDeadline(request, processStartTime);
+		final RequestKey key = new RequestKey(ctx.getChannel(), request.getRequestId());
+		final RequestTask task = new RequestTask();
+		processingTasks.put(key, task);
 
 		// 使用线程池方式处理
 		try {
 			threadPoolExecutor.execute(new Runnable() {
 				@Override
                 public void run() {
+				    Response response = null;
 				    try{
-				        RpcContext.init(request);
-	                    processRequest(ctx, request, processStartTime);
+				        // 在队列中等待时已经超过client的超时时间，client不再等待结果，直接丢弃
+				        if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+				            response = rejectExpiredRequest(request, processStartTime);
+				            return;
+				        }
+				        // client已经取消请求，不再处理
+				        if (task.cancelled) {
+				            LoggerUtil.debug("request cancelled in process queue, drop: requestId={}", request.getRequestId());
+				            return;
+				        }
+				        RpcContext context = RpcContext.init(request);
+				        context.setDeadline(deadline);
+				        task.start(context);
+	                    response = processRequest(request, processStartTime);
 				    }finally{
+				        processingTasks.remove(key);
 				        RpcContext.destroy();
+				        writeResponse(ctx, response);
 				    }
                 }
             });
 		} catch (RejectedExecutionException rejectException) {
+			processingTasks.remove(key);
 			DefaultResponse response = new DefaultResponse();
 			response.setRequestId(request.getRequestId());
 			response.setException(new MotanServiceException("process thread pool is full, reject",
 					MotanErrorMsgConstant.SERVICE_REJECT));
 			response.setProcessTime(System.currentTimeMillis() - processStartTime);
-			e.getChannel().write(response);
+			writeResponse(ctx, response);
 
 			LoggerUtil
 					.debug("process thread pool is full, reject, active={} poolSize={} corePoolSize={} maxPoolSize={} taskCount={} requestId={}",
@@ -135,7 +163,7 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 		}
 	}
 
-	private void processRequest(ChannelHandlerContext ctx, Request request, long processStartTime) {
+	private Response processRequest(Request request, long processStartTime) {
 		// 跟踪可以得出,handle方法就是ProviderMessageRouter的handle方法
 		// 最终会调用Provider的call方法
 		Object result = messageHandler.handle(serverChannel, request);
@@ -151,13 +179,48 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 		response.setRequestId(request.getRequestId());
 		response.setProcessTime(System.currentTimeMillis() - processStartTime);
 
-		if (ctx.getChannel().isConnected()) {
+		return response;
+	}
+
+	/**
+	 * batch请求中的每个request单独提交到线程池并行处理，各自处理完后立即返回response，慢请求不会拖慢同一batch中的其他请求
+	 */
+	private void processBatch(ChannelHandlerContext ctx, BatchMessage message) {
+		for (Object request : message.getMessages()) {
+			processRequest(ctx, (Request) request);
+		}
+	}
+
+	private void writeResponse(ChannelHandlerContext ctx, Response response) {
+		if (response != null && ctx.getChannel().isConnected()) {
 			ctx.getChannel().write(response);
 		}
 	}
 
-	private void processResponse(ChannelHandlerContext ctx, MessageEvent e) {
-		messageHandler.handle(serverChannel, e.getMessage());
+	/**
+	 * client取消请求：还在队列中的请求出队时直接丢弃，正在处理的请求通过RpcContext.isCancelled()通知provider
+	 */
+	private void processCancel(ChannelHandlerContext ctx, CancelMessage message) {
+		RequestTask task = processingTasks.get(new RequestKey(ctx.getChannel(), message.getRequestId()));
+		if (task != null) {
+			task.cancel();
+		}
+	}
+
+	private Response rejectExpiredRequest(Request request, long processStartTime) {
+		DefaultResponse response = new DefaultResponse();
+		response.setRequestId(request.getRequestId());
+		response.setException(new MotanServiceException("request expired in process queue, drop",
+				MotanErrorMsgConstant.SERVICE_TIMEOUT));
+		response.setProcessTime(System.currentTimeMillis() - processStartTime);
+
+		LoggerUtil.debug("request expired in process queue, drop: requestId={} waitTime={}", request.getRequestId(),
+				System.currentTimeMillis() - processStartTime);
+		return response;
+	}
+
+	private void processResponse(ChannelHandlerContext ctx, Object response) {
+		messageHandler.handle(serverChannel, response);
 	}
 
 	@Override
@@ -167,4 +230,48 @@ public class NettyChannelHandler extends SimpleChannelHandler {
 
 		ctx.getChannel().close();
 	}
+
+	private static class RequestTask {
+		private volatile boolean cancelled = false;
+		private volatile RpcContext context;
+
+		void start(RpcContext context) {
+			this.context = context;
+			if (cancelled) {
+				context.cancel();
+			}
+		}
+
+		void cancel() {
+			cancelled = true;
+			RpcContext current = context;
+			if (current != null) {
+				current.cancel();
+			}
+		}
+	}
+
+	private static class RequestKey {
+		private final org.jboss.netty.channel.Channel channel;
+		private final long requestId;
+
+		RequestKey(org.jboss.netty.channel.Channel channel, long requestId) {
+			this.channel = channel;
+			this.requestId = requestId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * channel.hashCode() + (int) (requestId ^ (requestId >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RequestKey)) {
+				return false;
+			}
+			RequestKey other = (RequestKey) obj;
+			return requestId == other.requestId && channel == other.channel;
+		}
+	}
 }
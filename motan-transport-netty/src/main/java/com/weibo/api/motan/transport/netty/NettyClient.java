@@ -16,6 +16,7 @@
 
 package com.weibo.api.motan.transport.netty;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -91,6 +92,10 @@ public class NettyClient extends AbstractPoolClient implements StatisticCallback
 	private AtomicLong errorCount = new AtomicLong(0);
 	// 最大连接数
 	private int maxClientConnection = 0;
+	// 请求超时或被cancel时是否通知server
+	private boolean requestCancel = false;
+	// 合并小请求，连接池中的所有channel共用一个
+	private volatile RequestBatcher batcher = null;
 
 	private ClientBootstrap bootstrap;
 
@@ -99,6 +104,8 @@ public class NettyClient extends AbstractPoolClient implements StatisticCallback
 
 		maxClientConnection = url.getIntParameter(URLParamType.maxClientConnection.getName(),
 				URLParamType.maxClientConnection.getIntValue());
+		requestCancel = url.getBooleanParameter(URLParamType.requestCancel.getName(),
+				URLParamType.requestCancel.getBooleanValue());
 
 		timeMonitorFuture = scheduledExecutor.scheduleWithFixedDelay(
 				new TimeoutMonitor("timeout_monitor_" + url.getHost() + "_" + url.getPort()),
@@ -455,6 +462,60 @@ public class NettyClient extends AbstractPoolClient implements StatisticCallback
 		return callbackMap.remove(requestId);
 	}
 
+	boolean isRequestCancel() {
+		return requestCancel;
+	}
+
+	NettyResponseFuture getCallback(long requestId) {
+		return callbackMap.get(requestId);
+	}
+
+	static ScheduledExecutorService getScheduledExecutor() {
+		return scheduledExecutor;
+	}
+
+	RequestBatcher getBatcher() {
+		if (batcher == null) {
+			synchronized (this) {
+				if (batcher == null) {
+					batcher = new RequestBatcher(this, url.getIntParameter(URLParamType.batchWindow.getName(),
+							URLParamType.batchWindow.getIntValue()));
+				}
+			}
+		}
+		return batcher;
+	}
+
+	/**
+	 * batchWindow到期时发送未凑满的batch，从连接池中取一个channel发送
+	 */
+	void writeBatch(List<Request> requests) {
+		Channel channel = null;
+		try {
+			channel = borrowObject();
+			if (channel == null) {
+				throw new MotanServiceException("NettyClient borrowObject null: url=" + url.getUri());
+			}
+			((NettyChannel) channel).writeBatch(requests);
+			returnObject(channel);
+		} catch (Exception e) {
+			invalidateObject(channel);
+			failBatch(requests, e);
+		}
+	}
+
+	void failBatch(List<Request> requests, Throwable cause) {
+		for (Request request : requests) {
+			NettyResponseFuture response = removeCallback(request.getRequestId());
+			if (response != null) {
+				DefaultResponse failure = new DefaultResponse(request.getRequestId());
+				failure.setException(new MotanServiceException("NettyClient send batch request to server Error: url="
+						+ url.getUri() + " " + MotanFrameworkUtil.toString(request), cause));
+				response.onFailure(failure);
+			}
+		}
+	}
+
 	public ClientBootstrap getBootstrap() {
 		return bootstrap;
 	}
@@ -19,6 +19,8 @@ package com.weibo.api.motan.transport.netty;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
@@ -31,6 +33,7 @@ import com.weibo.api.motan.exception.MotanFrameworkException;
 import com.weibo.api.motan.exception.MotanServiceException;
 import com.weibo.api.motan.rpc.DefaultResponse;
 import com.weibo.api.motan.rpc.Response;
+import com.weibo.api.motan.util.ByteUtil;
 import com.weibo.api.motan.util.LoggerUtil;
 
 /**
@@ -54,7 +57,8 @@ public class NettyDecoder extends FrameDecoder {
 
 	@Override
 	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-		if (buffer.readableBytes() <= MotanConstants.NETTY_HEADER) {
+		// cancel消息只有header，因此header完整即可开始解析
+		if (buffer.readableBytes() < MotanConstants.NETTY_HEADER) {
 			return null;
 		}
 
@@ -78,6 +82,11 @@ public class NettyDecoder extends FrameDecoder {
 			return null;
 		}
 
+		if (messageType == MotanConstants.FLAG_CANCEL) {
+			buffer.skipBytes(dataLength);
+			return new CancelMessage(requestId);
+		}
+
 		if (maxContentLength > 0 && dataLength > maxContentLength) {
 			LoggerUtil.warn(
 					"NettyDecoder transport data content length over of limit, size: {}  > {}. remote={} local={}",
@@ -100,6 +109,10 @@ public class NettyDecoder extends FrameDecoder {
 
 		buffer.readBytes(data);
 
+		if (messageType == MotanConstants.FLAG_BATCH_REQUEST) {
+			return decodeBatch(channel, data);
+		}
+
 		try {
 		    String remoteIp = getRemoteIp(channel);
 			return codec.decode(client, remoteIp, data);
@@ -116,6 +129,28 @@ public class NettyDecoder extends FrameDecoder {
 		}
 	}
 
+	private Object decodeBatch(Channel channel, byte[] data) {
+		int count = ByteUtil.bytes2int(data, 0);
+		int offset = 4;
+		String remoteIp = getRemoteIp(channel);
+		List<Object> messages = new ArrayList<Object>(count);
+		for (int i = 0; i < count; i++) {
+			long requestId = ByteUtil.bytes2long(data, offset);
+			int length = ByteUtil.bytes2int(data, offset + 8);
+			offset += 12;
+			byte[] message = new byte[length];
+			System.arraycopy(data, offset, message, 0, length);
+			offset += length;
+
+			try {
+				messages.add(codec.decode(client, remoteIp, message));
+			} catch (Exception e) {
+				channel.write(buildExceptionResponse(requestId, e));
+			}
+		}
+		return messages.isEmpty() ? null : new BatchMessage(messages);
+	}
+
 	private Response buildExceptionResponse(long requestId, Exception e) {
 		DefaultResponse response = new DefaultResponse();
 		response.setRequestId(requestId);
@@ -16,6 +16,9 @@
 
 package com.weibo.api.motan.transport.netty;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -46,19 +49,14 @@ public class NettyEncoder extends OneToOneEncoder {
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel nettyChannel, Object message) throws Exception {
 		
-		long requestId = getRequestId(message);
 		byte[] data = null;
 		
-		if (message instanceof Response) {
-			try {
-				data = codec.encode(client, message);
-			} catch (Exception e) {
-				LoggerUtil.error("NettyEncoder encode error, identity=" + client.getUrl().getIdentity(), e);
-				Response response = buildExceptionResponse(requestId, e);
-				data = codec.encode(client, response);
-			}
+		if (message instanceof CancelMessage) {
+			data = new byte[0];
+		} else if (message instanceof BatchMessage) {
+			data = encodeBatch((BatchMessage) message);
 		} else {
-			data = codec.encode(client, message);
+			data = encodeMessage(message);
 		}
 
 		byte[] transportHeader = new byte[MotanConstants.NETTY_HEADER];
@@ -70,11 +68,49 @@ public class NettyEncoder extends OneToOneEncoder {
 		return ChannelBuffers.wrappedBuffer(transportHeader, data);
 	}
 
+	private byte[] encodeMessage(Object message) throws Exception {
+		if (message instanceof Response) {
+			try {
+				return codec.encode(client, message);
+			} catch (Exception e) {
+				LoggerUtil.error("NettyEncoder encode error, identity=" + client.getUrl().getIdentity(), e);
+				Response response = buildExceptionResponse(getRequestId(message), e);
+				return codec.encode(client, response);
+			}
+		}
+		return codec.encode(client, message);
+	}
+
+	private byte[] encodeBatch(BatchMessage batch) throws Exception {
+		List<Object> messages = batch.getMessages();
+		List<byte[]> encoded = new ArrayList<byte[]>(messages.size());
+		int length = 4;
+		for (Object message : messages) {
+			byte[] data = encodeMessage(message);
+			encoded.add(data);
+			length += 12 + data.length;
+		}
+
+		byte[] body = new byte[length];
+		ByteUtil.int2bytes(messages.size(), body, 0);
+		int offset = 4;
+		for (int i = 0; i < messages.size(); i++) {
+			byte[] data = encoded.get(i);
+			ByteUtil.long2bytes(getRequestId(messages.get(i)), body, offset);
+			ByteUtil.int2bytes(data.length, body, offset + 8);
+			System.arraycopy(data, 0, body, offset + 12, data.length);
+			offset += 12 + data.length;
+		}
+		return body;
+	}
+
 	private long getRequestId(Object message) {
 		if (message instanceof Request) {
 			return ((Request) message).getRequestId();
 		} else if (message instanceof Response) {
 			return ((Response) message).getRequestId();
+		} else if (message instanceof CancelMessage) {
+			return ((CancelMessage) message).getRequestId();
 		} else {
 			return 0;
 		}
@@ -85,6 +121,10 @@ public class NettyEncoder extends OneToOneEncoder {
 			return MotanConstants.FLAG_REQUEST;
 		} else if (message instanceof Response) {
 			return MotanConstants.FLAG_RESPONSE;
+		} else if (message instanceof CancelMessage) {
+			return MotanConstants.FLAG_CANCEL;
+		} else if (message instanceof BatchMessage) {
+			return MotanConstants.FLAG_BATCH_REQUEST;
 		} else {
 			return MotanConstants.FLAG_OTHER;
 		}
@@ -72,6 +72,8 @@ public class NettyResponseFuture implements ResponseFuture {
 	private Request request;
 	private List<FutureListener> listeners;
 	private Channel channel;
+	// 发送请求的连接，超时或cancel时通过它通知server，为null时不通知
+	private volatile NettyChannel cancelChannel;
 
 	public NettyResponseFuture(Request requestObj, int timeout, Channel channel) {
 		this.request = requestObj;
@@ -166,6 +168,7 @@ public class NettyResponseFuture implements ResponseFuture {
 		}
 
 		notifyListeners();
+		notifyServerCancel();
 		return true;
 	}
 
@@ -239,6 +242,23 @@ public class NettyResponseFuture implements ResponseFuture {
 		}
 
 		notifyListeners();
+		notifyServerCancel();
+	}
+
+	void setCancelChannel(NettyChannel cancelChannel) {
+		this.cancelChannel = cancelChannel;
+	}
+
+	private void notifyServerCancel() {
+		NettyChannel nettyChannel = cancelChannel;
+		if (nettyChannel == null) {
+			return;
+		}
+		try {
+			nettyChannel.cancel(request.getRequestId());
+		} catch (Exception e) {
+			LoggerUtil.warn("NettyResponseFuture notify server cancel Error: " + MotanFrameworkUtil.toString(request), e);
+		}
 	}
 
 	private void notifyListeners() {
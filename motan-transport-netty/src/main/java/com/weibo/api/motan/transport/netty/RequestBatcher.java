@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2009-2016 Weibo, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.weibo.api.motan.transport.netty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.util.MotanFrameworkUtil;
+
+/**
+ * 
+ * 合并同一个client上同一方法的请求：凑够batchSize个或者等待batchWindow后，作为一个batch消息发送。
+ * 每个client只有一个batcher，连接池中各个channel上的请求合并到一起。
+ *
+ */
+class RequestBatcher {
+	private final NettyClient client;
+	private final int window;
+	private final Map<String, PendingBatch> pendingBatches = new HashMap<String, PendingBatch>();
+
+	RequestBatcher(NettyClient client, int window) {
+		this.client = client;
+		this.window = window;
+	}
+
+	/**
+	 * @param request 入队时的请求快照，之后对原request的修改不会影响发送的内容
+	 * @param channel 凑够batchSize时使用当前调用方持有的channel发送
+	 * @param batchSize
+	 */
+	void add(Request request, NettyChannel channel, int batchSize) {
+		String method = MotanFrameworkUtil.getFullMethodString(request);
+		PendingBatch full = null;
+		PendingBatch created = null;
+		synchronized (this) {
+			PendingBatch batch = pendingBatches.get(method);
+			if (batch == null) {
+				batch = new PendingBatch(method);
+				pendingBatches.put(method, batch);
+				created = batch;
+			}
+			batch.requests.add(request);
+			if (batch.requests.size() >= batchSize) {
+				pendingBatches.remove(method);
+				full = batch;
+			}
+		}
+		if (full != null) {
+			channel.writeBatch(full.requests);
+		} else if (created != null) {
+			scheduleFlush(created);
+		}
+	}
+
+	private void scheduleFlush(final PendingBatch batch) {
+		try {
+			NettyClient.getScheduledExecutor().schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush(batch);
+				}
+			}, window, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			flush(batch);
+		}
+	}
+
+	private void flush(PendingBatch batch) {
+		synchronized (this) {
+			// 已经因为凑够batchSize发送过了
+			if (pendingBatches.get(batch.method) != batch) {
+				return;
+			}
+			pendingBatches.remove(batch.method);
+		}
+		client.writeBatch(batch.requests);
+	}
+
+	private static class PendingBatch {
+		private final String method;
+		private final List<Request> requests = new ArrayList<Request>();
+
+		PendingBatch(String method) {
+			this.method = method;
+		}
+	}
+}
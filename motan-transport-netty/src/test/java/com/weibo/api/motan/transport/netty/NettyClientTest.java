@@ -121,6 +121,35 @@ public class NettyClientTest {
 
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        url.addParameter(MotanConstants.METHOD_CONFIG_PREFIX + "hello(void)." + URLParamType.batchSize.getName(), "2");
+        url.addParameter(URLParamType.batchWindow.getName(), "10");
+        nettyClient = new NettyClient(url);
+        nettyClient.open();
+        RpcContext.getContext().putAttribute(MotanConstants.ASYNC_SUFFIX, true);
+        try {
+            // 前两个请求凑够batchSize后发送，第三个请求等待batchWindow后单独发送
+            DefaultRequest[] requests = new DefaultRequest[3];
+            Response[] responses = new Response[3];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new DefaultRequest();
+                requests[i].setRequestId(RequestIdGenerator.getRequestId());
+                requests[i].setInterfaceName(request.getInterfaceName());
+                requests[i].setMethodName(request.getMethodName());
+                requests[i].setParamtersDesc(request.getParamtersDesc());
+                responses[i] = nettyClient.request(requests[i]);
+                Assert.assertTrue(responses[i] instanceof ResponseFuture);
+            }
+            for (int i = 0; i < requests.length; i++) {
+                Assert.assertEquals("method: " + requests[i].getMethodName() + " requestId: " + requests[i].getRequestId(),
+                        responses[i].getValue());
+            }
+        } finally {
+            RpcContext.destroy();
+        }
+    }
+
     @Test
     public void testAbNormal() {
         // requestTimeout 不可以小于等于0